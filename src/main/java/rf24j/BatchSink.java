@@ -0,0 +1,14 @@
+package rf24j;
+
+/**
+ * Destination of frame batches produced by UplinkAggregator, e.g. cloud connection of the gateway.
+ */
+public interface BatchSink {
+    /**
+     * Publish batch. Batch and its frames are reused once the method returns,
+     * so implementation has to copy anything it keeps.
+     * @param batch batch to publish
+     * @throws Exception if batch could not be published - it is counted as failed and dropped
+     */
+    void publish(FrameBatch batch) throws Exception;
+}
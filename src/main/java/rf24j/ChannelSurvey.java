@@ -0,0 +1,206 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.Arrays;
+
+/**
+ * Channel survey based on RPD (Received Power Detector) sampling.<br/>
+ * Sweeps all channels in RX mode, counts how often a signal stronger than -64dBm was present
+ * and builds an occupancy map which is used to pick the least congested channel.<br/>
+ * Two peers can agree on a channel by exchanging their best candidates (see candidates and agree),
+ * because both sides compute the same result from the same two candidate lists.
+ */
+public class ChannelSurvey {
+    /**
+     * Number of channels available (2400 - 2525 MHz)
+     */
+    public static final int CHANNELS = 126;
+
+    /**
+     * Max number of candidates fitting into one 32 byte payload (1 byte count + 2 bytes per candidate)
+     */
+    public static final int MAX_CANDIDATES = 15;
+
+    private final RF24 rf24;
+    private final int[] hits = new int[CHANNELS];
+    private final int[] samples = new int[CHANNELS];
+    private final byte[] buff = new byte[1];
+    private final boolean[] used = new boolean[CHANNELS];
+
+    public ChannelSurvey(RF24 rf24) {
+        this.rf24 = rf24;
+    }
+
+    /**
+     * Sweep all channels and add results to occupancy map.<br/>
+     * Radio is locked for one channel at a time - it is switched to RX mode for sampling and its
+     * channel and mode are restored right after, so other threads can use the radio between
+     * channels of the sweep.
+     * @param passes number of sweeps over all channels
+     * @param samplesPerChannel number of RPD reads on each channel per sweep
+     * @throws PigpioException
+     */
+    public void survey(int passes, int samplesPerChannel) throws PigpioException {
+        for (int p = 0; p < passes; p++)
+            for (int ch = 0; ch < CHANNELS; ch++) {
+                synchronized (rf24) {
+                    int original = rf24.getChannel();
+                    boolean listening = rf24.getState() == RadioState.RX;
+                    rf24.startListening();
+                    try {
+                        hits[ch] += rf24.sampleRPD(ch, samplesPerChannel, buff);
+                        samples[ch] += samplesPerChannel;
+                    } finally {
+                        rf24.setChannel(original);
+                        if (listening)
+                            rf24.startListening();
+                        else
+                            rf24.stopListening();
+                    }
+                }
+            }
+    }
+
+    /**
+     * Clear collected occupancy map
+     */
+    public void clear() {
+        for (int i = 0; i < CHANNELS; i++) {
+            hits[i] = 0;
+            samples[i] = 0;
+        }
+    }
+
+    /**
+     * Return occupancy of the channel
+     * @param ch channel 0-125
+     * @return fraction of samples where carrier was detected (0.0 - 1.0), 0 if channel was not surveyed
+     */
+    public double getOccupancy(int ch) {
+        return samples[ch] == 0 ? 0 : (double) hits[ch] / samples[ch];
+    }
+
+    /**
+     * Return occupancy scaled to 0-255, as it is exchanged between peers
+     * @param ch channel 0-125
+     * @return occupancy 0-255
+     */
+    public int getOccupancyByte(int ch) {
+        return samples[ch] == 0 ? 0 : (int)((long) hits[ch] * 255 / samples[ch]);
+    }
+
+    /**
+     * Return least occupied channel. Lower channel wins if occupancy is equal.
+     * @param minCh lowest channel to consider
+     * @param maxCh highest channel to consider
+     * @return channel number
+     */
+    public int getQuietestChannel(int minCh, int maxCh) {
+        int best = minCh;
+        for (int ch = minCh + 1; ch <= maxCh && ch < CHANNELS; ch++)
+            if (getOccupancyByte(ch) < getOccupancyByte(best))
+                best = ch;
+        return best;
+    }
+
+    /**
+     * Return least occupied channel from all channels.
+     * @return channel number
+     */
+    public int getQuietestChannel() {
+        return getQuietestChannel(0, CHANNELS - 1);
+    }
+
+    /**
+     * Switch radio to the least occupied channel.
+     * @return channel selected
+     * @throws PigpioException
+     */
+    public int selectQuietestChannel() throws PigpioException {
+        int ch = getQuietestChannel();
+        rf24.setChannel(ch);
+        return ch;
+    }
+
+    /**
+     * Write best candidate channels into payload, which can be sent to peer.<br/>
+     * Format: [count] followed by count times [channel, occupancy 0-255], quietest first.
+     * @param payload buffer to write into, at least 1 + 2 * count bytes long
+     * @param count number of candidates, max MAX_CANDIDATES
+     * @return number of bytes written
+     */
+    public synchronized int candidates(byte[] payload, int count) {
+        count = Math.min(Math.min(count, MAX_CANDIDATES), (payload.length - 1) / 2);
+        Arrays.fill(used, false);
+        for (int i = 0; i < count; i++) {
+            int best = -1;
+            for (int ch = 0; ch < CHANNELS; ch++)
+                if (!used[ch] && (best < 0 || getOccupancyByte(ch) < getOccupancyByte(best)))
+                    best = ch;
+            used[best] = true;
+            payload[1 + 2 * i] = (byte) best;
+            payload[2 + 2 * i] = (byte) getOccupancyByte(best);
+        }
+        payload[0] = (byte) count;
+        return 1 + 2 * count;
+    }
+
+    /**
+     * Pick channel both peers agree on from two candidate lists created by method candidates.<br/>
+     * The result does not depend on order of arguments, so both peers end up on the same channel.
+     * Channels listed by both sides win; the one with lowest summed occupancy is selected.
+     * If lists have nothing in common, channel missing on one side is counted as fully occupied there.
+     * @param local candidates of this side
+     * @param peer candidates received from peer
+     * @return agreed channel, -1 if both lists are empty
+     */
+    public static int agree(byte[] local, byte[] peer) {
+        int[] a = occupancyOf(local);
+        int[] b = occupancyOf(peer);
+
+        int best = -1;
+        int bestScore = Integer.MAX_VALUE;
+        for (int ch = 0; ch < CHANNELS; ch++) {
+            if (a[ch] < 0 && b[ch] < 0)
+                continue;
+            int score = (a[ch] < 0 ? 256 : a[ch]) + (b[ch] < 0 ? 256 : b[ch]);
+            if (score < bestScore) {
+                bestScore = score;
+                best = ch;
+            }
+        }
+        return best;
+    }
+
+    private static int[] occupancyOf(byte[] candidates) {
+        int[] occ = new int[CHANNELS];
+        for (int i = 0; i < CHANNELS; i++)
+            occ[i] = -1;
+        int count = candidates.length == 0 ? 0 : Math.min(candidates[0] & 0xFF, (candidates.length - 1) / 2);
+        for (int i = 0; i < count; i++) {
+            int ch = candidates[1 + 2 * i] & 0xFF;
+            if (ch < CHANNELS)
+                occ[ch] = candidates[2 + 2 * i] & 0xFF;
+        }
+        return occ;
+    }
+
+    /**
+     * Return occupancy map as text - one line per group of channels, one character per channel.<br/>
+     * ' ' = free, '.' < 5%, ':' < 25%, '*' < 50%, '#' >= 50%
+     * @return heatmap
+     */
+    public String heatmap() {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < CHANNELS; row += 32) {
+            sb.append(String.format("%3d |", row));
+            for (int ch = row; ch < row + 32 && ch < CHANNELS; ch++) {
+                double o = getOccupancy(ch);
+                sb.append(o == 0 ? ' ' : o < 0.05 ? '.' : o < 0.25 ? ':' : o < 0.5 ? '*' : '#');
+            }
+            sb.append("|\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+/**
+ * JPigpio implementation which can queue commands and execute them at once
+ * (see PipelinedPigpioSocket). RF24 wraps every SPI transaction into a batch.
+ */
+public interface CommandBatch {
+    /**
+     * Start queueing commands. Results of queued commands (e.g. data received by spiXfer)
+     * are not available before endBatch returns.
+     */
+    void beginBatch();
+
+    /**
+     * Execute queued commands and wait for all their results
+     * @throws PigpioException if any of the commands failed
+     */
+    void endBatch() throws PigpioException;
+
+    /**
+     * Queue delay executed in order with the commands, by the side which executes them
+     * (e.g. pigpiod). Outside of a batch the delay is executed right away.
+     * @param micros delay in microseconds
+     * @throws PigpioException
+     */
+    void queueDelay(long micros) throws PigpioException;
+}
@@ -0,0 +1,120 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+/**
+ * Full-duplex link built from two radios - one of them is always listening, the other one only sends.<br/>
+ * Single nRF24 can not receive while it is sending and every switch between TX and RX costs
+ * a CONFIG write and 130us of settling. With two radios (each with its own CE, CSN and SPI channel)
+ * sending never interrupts receiving and no turnaround is needed.<br/>
+ * <br/>
+ * Each direction uses its own RF channel, so the radios next to each other do not disturb each other.
+ * Local RX radio listens on pipe 1 with local address on rxChannel, local TX radio sends to remote
+ * address on txChannel. Peer opens its link with both addresses and both channels swapped:
+ * <pre>
+ * A: open(addrA, addrB, 10, 40)      B: open(addrB, addrA, 40, 10)
+ * </pre>
+ * Acknowledgements of frames sent by local TX radio are sent back by remote RX radio on txChannel,
+ * so auto-ACK works unchanged.<br/>
+ * send and read may be called from different threads at the same time.
+ */
+public class DuplexLink {
+    /**
+     * Minimal distance of RX and TX channel, 2Mbps signal occupies 2MHz
+     */
+    public static final int MIN_CHANNEL_SPACING = 2;
+
+    private final RF24 rx;
+    private final RF24 tx;
+
+    /**
+     * @param rx initialized radio used for receiving only
+     * @param tx initialized radio used for sending only
+     */
+    public DuplexLink(RF24 rx, RF24 tx) {
+        this.rx = rx;
+        this.tx = tx;
+    }
+
+    /**
+     * Configure both radios and start listening.
+     * @param localAddress address frames for this node are sent to (LSB first)
+     * @param remoteAddress address of the peer (LSB first)
+     * @param rxChannel channel of incoming direction, peer sends on it
+     * @param txChannel channel of outgoing direction, peer listens on it
+     * @throws PigpioException
+     */
+    public void open(byte[] localAddress, byte[] remoteAddress, int rxChannel, int txChannel) throws PigpioException {
+        if (Math.abs(rxChannel - txChannel) < MIN_CHANNEL_SPACING)
+            throw new RF24Exception("RX and TX channels have to be at least " + MIN_CHANNEL_SPACING + " apart");
+
+        synchronized (rx) {
+            rx.stopListening();
+            rx.setChannel(rxChannel);
+            rx.clearRegisterBits(RF24.EN_RXADDR_REGISTER, (byte) 1);  // pipe 0 is used for ACKs on TX side only
+            rx.openReadingPipe(1, localAddress);
+            rx.startListening();
+        }
+
+        synchronized (tx) {
+            tx.stopListening();
+            tx.setChannel(txChannel);
+            tx.openWritingPipe(remoteAddress);
+            // TX radio never listens, keep it in standby so the next frame goes out right away
+            tx.setPowerPolicy(PowerPolicy.LATENCY, 0);
+        }
+    }
+
+    /**
+     * Send data to the peer. Receiving is not interrupted.
+     * @param data data to send
+     * @return result of RF24.write - 0 if OK, 1 if number of retries reached, 2 if timeout occurred
+     * @throws PigpioException
+     */
+    public int send(byte[] data) throws PigpioException {
+        return tx.write(data);
+    }
+
+    /**
+     * @return true if there is a frame from the peer waiting
+     * @throws PigpioException
+     */
+    public boolean available() throws PigpioException {
+        return rx.available();
+    }
+
+    /**
+     * Read frame received from the peer. Read should be repeated until method returns false.
+     * @param frame frame to fill
+     * @return true if there is more data available
+     * @throws PigpioException
+     */
+    public boolean read(RxFrame frame) throws PigpioException {
+        return rx.read(frame);
+    }
+
+    /**
+     * Stop listening and power down both radios
+     * @throws PigpioException
+     */
+    public void close() throws PigpioException {
+        rx.stopListening();
+        rx.powerDown();
+        tx.setPowerPolicy(PowerPolicy.ENERGY, 0);
+        tx.powerDown();
+    }
+
+    /**
+     * @return radio used for receiving
+     */
+    public RF24 getRxRadio() {
+        return rx;
+    }
+
+    /**
+     * @return radio used for sending
+     */
+    public RF24 getTxRadio() {
+        return tx;
+    }
+}
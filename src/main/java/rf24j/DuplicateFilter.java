@@ -0,0 +1,141 @@
+package rf24j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drops frames received more than once.<br/>
+ * When acknowledgement gets lost, sender retransmits the frame and it is received again. The chip
+ * recognises only a retransmission which comes right after the original frame (PID), so frames need
+ * a node id and a sequence number in the payload to be deduplicated reliably.<br/>
+ * <br/>
+ * For every node the highest sequence number seen and a bitmap of the preceding 64 numbers is kept
+ * (same scheme as anti-replay window of IPsec), so reordered frames are still accepted once.
+ * State of a node expires when nothing was heard from it for configured time, so a restarted node
+ * is not taken for a duplicate. Frame far behind the window can not be a retransmission - it means
+ * the node restarted its counter, so window is reset.<br/>
+ * State is kept in arrays indexed by node id, nothing is allocated per frame.
+ */
+public class DuplicateFilter {
+    public static final int WINDOW = 64;
+
+    private static final int NODES = 256;
+
+    private final int nodeOffset;
+    private final int seqOffset;
+    private final int seqBytes;
+    private final long expiryNanos;
+    private final int seqMask;
+
+    private final boolean[] known = new boolean[NODES];
+    private final int[] highest = new int[NODES];
+    private final long[] window = new long[NODES];
+    private final long[] lastSeen = new long[NODES];
+
+    private long accepted = 0;
+    private long duplicates = 0;
+    private long resets = 0;
+
+    /**
+     * @param nodeOffset position of node id (1 byte) in payload, -1 to use pipe as node id
+     * @param seqOffset position of sequence number in payload
+     * @param seqBytes size of sequence number, 1 or 2 bytes (LSB first)
+     * @param expiryMillis time after which state of silent node is forgotten
+     */
+    public DuplicateFilter(int nodeOffset, int seqOffset, int seqBytes, long expiryMillis) {
+        if (seqBytes < 1 || seqBytes > 2)
+            throw new IllegalArgumentException("Sequence number has to be 1 or 2 bytes");
+        this.nodeOffset = nodeOffset;
+        this.seqOffset = seqOffset;
+        this.seqBytes = seqBytes;
+        this.seqMask = (1 << (8 * seqBytes)) - 1;
+        this.expiryNanos = TimeUnit.MILLISECONDS.toNanos(expiryMillis);
+    }
+
+    /**
+     * Check frame and remember its sequence number
+     * @param frame received frame
+     * @return true if frame is seen for the first time (or carries no sequence number), false if it is a duplicate
+     */
+    public synchronized boolean accept(RxFrame frame) {
+        if (frame.length < seqOffset + seqBytes || frame.length <= nodeOffset) {
+            accepted++;
+            return true;
+        }
+        int node = nodeOffset >= 0 ? frame.data[nodeOffset] & 0xFF : frame.pipe;
+        int seq = frame.data[seqOffset] & 0xFF;
+        if (seqBytes == 2)
+            seq |= (frame.data[seqOffset + 1] & 0xFF) << 8;
+        long now = System.nanoTime();
+
+        if (!known[node] || now - lastSeen[node] > expiryNanos) {
+            reset(node, seq, now);
+            return true;
+        }
+
+        int diff = (seq - highest[node]) & seqMask;
+        if (diff == 0) {
+            duplicates++;
+            return false;
+        }
+        if (diff <= seqMask / 2) {
+            // ahead of the window - shift it
+            window[node] = diff >= WINDOW ? 1 : window[node] << diff | 1;
+            highest[node] = seq;
+        } else {
+            int back = seqMask + 1 - diff;
+            if (back >= WINDOW) {
+                reset(node, seq, now);  // sender restarted its sequence
+                return true;
+            }
+            long bit = 1L << back;
+            if ((window[node] & bit) != 0) {
+                duplicates++;
+                return false;
+            }
+            window[node] |= bit;
+        }
+        lastSeen[node] = now;
+        accepted++;
+        return true;
+    }
+
+    private void reset(int node, int seq, long now) {
+        if (known[node])
+            resets++;
+        known[node] = true;
+        highest[node] = seq;
+        window[node] = 1;
+        lastSeen[node] = now;
+        accepted++;
+    }
+
+    /**
+     * Forget all nodes
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < NODES; i++)
+            known[i] = false;
+    }
+
+    /**
+     * @return number of frames accepted
+     */
+    public synchronized long getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * @return number of duplicate frames dropped
+     */
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return number of times window of a node was reset because its sequence number jumped back
+     * or the node was silent for longer than expiry time
+     */
+    public synchronized long getResets() {
+        return resets;
+    }
+}
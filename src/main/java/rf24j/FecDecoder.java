@@ -0,0 +1,189 @@
+package rf24j;
+
+import java.util.Arrays;
+
+/**
+ * Receiving side of forward error correction (see FecEncoder).<br/>
+ * Decoder is a FrameSink - frames read from the radio (RF24.read(RxFrame) or RF24.drainRx) are
+ * passed to accept, data frames are forwarded to the application sink right away with the FEC
+ * header removed. When a frame of the group is missing and the parity frame of its class arrives
+ * with all other frames of the class, the missing frame is rebuilt and forwarded, i.e. after
+ * frames which were sent after it. Frames received twice (e.g. repeated multicast) are forwarded
+ * once.<br/>
+ * Only the current group is kept - group is finished when a frame of the next group arrives.
+ * Frames are kept in buffers of the decoder, nothing is allocated per frame.
+ */
+public class FecDecoder implements FrameSink {
+    private final int k;
+    private final int m;
+    private final FrameSink sink;
+
+    private final byte[][] data;
+    private final int[] lengths;
+    private final byte[][] parity;
+    private final RxFrame out = new RxFrame();
+
+    private int group = -1;
+    private int received;      // bit per data frame index
+    private int parityReceived; // bit per parity class
+    private int count;          // number of data frames in the group, k until a parity frame tells
+    private int highest;        // highest data frame index seen
+
+    private long delivered = 0;
+    private long recovered = 0;
+    private long lost = 0;
+    private long duplicates = 0;
+
+    /**
+     * @param k number of data frames in a group, same as on the sending side
+     * @param m number of parity frames per group, same as on the sending side
+     * @param sink receiver of data frames, frame given to it is reused
+     */
+    public FecDecoder(int k, int m, FrameSink sink) {
+        if (k < 1 || k > FecEncoder.MAX_GROUP || m < 1 || m > FecEncoder.MAX_PARITY || m > k)
+            throw new IllegalArgumentException("Invalid FEC group: k=" + k + ", m=" + m);
+        this.k = k;
+        this.m = m;
+        this.sink = sink;
+        this.data = new byte[k][FecEncoder.MAX_DATA_SIZE];
+        this.lengths = new int[k];
+        this.parity = new byte[m][FecEncoder.MAX_DATA_SIZE + 1];  // XOR of lengths, XOR of data
+    }
+
+    /**
+     * Process frame received from the radio
+     * @param frame received frame
+     */
+    @Override
+    public synchronized void accept(RxFrame frame) {
+        if (frame.length < FecEncoder.HEADER_SIZE)
+            return;
+        byte[] b = frame.data;
+        int g = b[0] & 0xFF;
+        int index = b[1] & 0xFF;
+        int length = Math.min(frame.length - FecEncoder.HEADER_SIZE, FecEncoder.MAX_DATA_SIZE);
+
+        if (g != group) {
+            finish();
+            group = g;
+            received = 0;
+            parityReceived = 0;
+            count = k;
+            highest = -1;
+        }
+
+        if ((index & FecEncoder.PARITY) != 0) {
+            int j = index >> 4 & 0x07;
+            if (j >= m || (parityReceived & 1 << j) != 0)
+                return;
+            count = Math.min(k, (index & 0x0F) + 1);
+            byte[] p = parity[j];
+            p[0] = b[2];
+            System.arraycopy(b, FecEncoder.HEADER_SIZE, p, 1, length);
+            Arrays.fill(p, 1 + length, p.length, (byte) 0);
+            parityReceived |= 1 << j;
+            for (int c = 0; c < m; c++)
+                recover(c, frame);  // count may have shrunk, any class can be complete now
+            return;
+        }
+
+        if (index >= k)
+            return;
+        if ((received & 1 << index) != 0) {
+            duplicates++;
+            return;
+        }
+        length = Math.min(length, b[2] & 0xFF);
+        System.arraycopy(b, FecEncoder.HEADER_SIZE, data[index], 0, length);
+        lengths[index] = length;
+        received |= 1 << index;
+        highest = Math.max(highest, index);
+        deliver(index, frame);
+        recover(index % m, frame);
+    }
+
+    /**
+     * Rebuild the missing frame of class j if it is the only one missing and parity is there
+     */
+    private void recover(int j, RxFrame trigger) {
+        if ((parityReceived & 1 << j) == 0)
+            return;
+        int missing = -1;
+        for (int i = j; i < count; i += m) {
+            if ((received & 1 << i) == 0) {
+                if (missing >= 0)
+                    return;  // two missing, can not be repaired
+                missing = i;
+            }
+        }
+        if (missing < 0)
+            return;
+
+        byte[] p = parity[j];
+        byte[] d = data[missing];
+        int length = p[0];
+        for (int i = 0; i < FecEncoder.MAX_DATA_SIZE; i++)
+            d[i] = p[i + 1];
+        for (int i = j; i < count; i += m) {
+            if (i == missing)
+                continue;
+            length ^= lengths[i];
+            for (int n = 0; n < lengths[i]; n++)
+                d[n] ^= data[i][n];
+        }
+        length &= 0xFF;
+        if (length > FecEncoder.MAX_DATA_SIZE)
+            return;  // parity does not match frames received - should not happen
+        lengths[missing] = length;
+        received |= 1 << missing;
+        recovered++;
+        deliver(missing, trigger);
+    }
+
+    private void deliver(int index, RxFrame from) {
+        System.arraycopy(data[index], 0, out.data, 0, lengths[index]);
+        out.length = lengths[index];
+        out.pipe = from.pipe;
+        out.captureTick = from.captureTick;
+        out.captureNanos = from.captureNanos;
+        out.deliveredNanos = from.deliveredNanos;
+        delivered++;
+        sink.accept(out);
+    }
+
+    private void finish() {
+        if (group < 0)
+            return;
+        // without parity the decoder knows only about frames up to the highest one received
+        int sent = parityReceived != 0 ? count : highest + 1;
+        lost += sent - Integer.bitCount(received & ((1 << sent) - 1));
+    }
+
+    /**
+     * @return number of data frames forwarded, including recovered
+     */
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * @return number of frames rebuilt from parity
+     */
+    public synchronized long getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * @return number of frames of finished groups which could not be rebuilt
+     */
+    public synchronized long getLost() {
+        return lost;
+    }
+
+    /**
+     * @return number of data frames received more than once
+     */
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+}
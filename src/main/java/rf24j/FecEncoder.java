@@ -0,0 +1,143 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.Arrays;
+
+/**
+ * Adds forward error correction to a stream of frames, so frames lost on a link without
+ * acknowledgements can be rebuilt by the receiver (see FecDecoder).<br/>
+ * Frames are sent in groups of k data frames followed by m parity frames. Parity frame j is XOR of
+ * data frames j, j+m, j+2m, ... of the group (interleaved parity), so any loss of up to m frames
+ * which hit different parity classes can be repaired - including a burst of m consecutive frames.
+ * Overhead is m/k, e.g. k=8, m=2 costs 25% more airtime.<br/>
+ * <br/>
+ * Every frame starts with a header [group, index, length]. Index of parity frame has bit 7 set,
+ * parity class in bits 4-6 and number of data frames in the group - 1 in bits 0-3, so a group cut
+ * short by flush can be repaired as well. Length of parity frame is XOR of lengths of its class.<br/>
+ * Frames are built in buffers kept by the encoder, nothing is allocated per frame.
+ */
+public class FecEncoder {
+    public static final int HEADER_SIZE = 3;
+    public static final int MAX_DATA_SIZE = RxFrame.MAX_PAYLOAD_SIZE - HEADER_SIZE;
+    public static final int MAX_GROUP = 16;
+    public static final int MAX_PARITY = 8;
+
+    static final int PARITY = 0x80;
+
+    private final RF24 rf24;
+    private final int k;
+    private final int m;
+    private final boolean multicast;
+
+    private final byte[] frame = new byte[RxFrame.MAX_PAYLOAD_SIZE];
+    private final byte[][] parity;
+    private final int[] parityLength;
+    private int group = 0;
+    private int index = 0;
+
+    private long dataFrames = 0;
+    private long parityFrames = 0;
+
+    /**
+     * @param rf24 initialized radio with writing pipe opened
+     * @param k number of data frames in a group (1 - MAX_GROUP)
+     * @param m number of parity frames per group (1 - MAX_PARITY, at most k)
+     * @param multicast true to send frames without acknowledgement (see RF24.write(byte[], boolean))
+     */
+    public FecEncoder(RF24 rf24, int k, int m, boolean multicast) {
+        if (k < 1 || k > MAX_GROUP || m < 1 || m > MAX_PARITY || m > k)
+            throw new IllegalArgumentException("Invalid FEC group: k=" + k + ", m=" + m);
+        this.rf24 = rf24;
+        this.k = k;
+        this.m = m;
+        this.multicast = multicast;
+        this.parity = new byte[m][RxFrame.MAX_PAYLOAD_SIZE];
+        this.parityLength = new int[m];
+    }
+
+    /**
+     * Send data frame, and parity frames once the group is complete
+     * @param data data to send, at most MAX_DATA_SIZE bytes
+     * @return result of RF24.write of the data frame - 0 if OK, 1 if number of retries reached,
+     * 2 if timeout occurred
+     * @throws PigpioException
+     */
+    public int write(byte[] data) throws PigpioException {
+        return write(data, data.length);
+    }
+
+    /**
+     * Send data frame, and parity frames once the group is complete
+     * @param data data to send
+     * @param length number of bytes to send, at most MAX_DATA_SIZE
+     * @return result of RF24.write of the data frame - 0 if OK, 1 if number of retries reached,
+     * 2 if timeout occurred
+     * @throws PigpioException
+     */
+    public synchronized int write(byte[] data, int length) throws PigpioException {
+        if (length > MAX_DATA_SIZE)
+            throw new RF24Exception("Data too long: " + length);
+
+        frame[0] = (byte) group;
+        frame[1] = (byte) index;
+        frame[2] = (byte) length;
+        System.arraycopy(data, 0, frame, HEADER_SIZE, length);
+
+        // add into parity of the class
+        byte[] p = parity[index % m];
+        p[2] ^= (byte) length;
+        for (int i = 0; i < length; i++)
+            p[HEADER_SIZE + i] ^= data[i];
+        parityLength[index % m] = Math.max(parityLength[index % m], length);
+
+        int result = rf24.write(frame, HEADER_SIZE + length, multicast);
+        dataFrames++;
+        if (++index == k)
+            sendParity();
+        return result;
+    }
+
+    /**
+     * Send parity frames of incomplete group, e.g. when the stream pauses, so its last frames can be
+     * repaired as well. Does nothing if there is no data frame in the group.
+     * @throws PigpioException
+     */
+    public synchronized void flush() throws PigpioException {
+        if (index > 0)
+            sendParity();
+    }
+
+    private void sendParity() throws PigpioException {
+        try {
+            for (int j = 0; j < m && j < index; j++) {
+                byte[] p = parity[j];
+                p[0] = (byte) group;
+                p[1] = (byte) (PARITY | j << 4 | (index - 1));
+                rf24.write(p, HEADER_SIZE + parityLength[j], multicast);
+                parityFrames++;
+            }
+        } finally {
+            for (int j = 0; j < m; j++) {
+                Arrays.fill(parity[j], (byte) 0);
+                parityLength[j] = 0;
+            }
+            group = (group + 1) & 0xFF;
+            index = 0;
+        }
+    }
+
+    /**
+     * @return number of data frames sent
+     */
+    public synchronized long getDataFrames() {
+        return dataFrames;
+    }
+
+    /**
+     * @return number of parity frames sent
+     */
+    public synchronized long getParityFrames() {
+        return parityFrames;
+    }
+}
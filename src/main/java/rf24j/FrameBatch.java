@@ -0,0 +1,63 @@
+package rf24j;
+
+/**
+ * Group of frames received from the same node (see UplinkAggregator).
+ * Batches and frames in them are pooled and reused.
+ */
+public class FrameBatch {
+    final RxFrame[] frames;
+    int key;
+    int size;
+    long openedNanos;
+
+    FrameBatch(int capacity) {
+        frames = new RxFrame[capacity];
+        for (int i = 0; i < capacity; i++)
+            frames[i] = new RxFrame();
+    }
+
+    /**
+     * @return grouping key - pipe or node id, depending on aggregator configuration
+     */
+    public int getKey() {
+        return key;
+    }
+
+    /**
+     * @return number of frames in batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index frame index 0 - size()-1
+     * @return frame
+     */
+    public RxFrame get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        return frames[index];
+    }
+
+    /**
+     * @return System.nanoTime() when the first frame was added
+     */
+    public long getOpenedNanos() {
+        return openedNanos;
+    }
+
+    boolean isFull() {
+        return size == frames.length;
+    }
+
+    void add(RxFrame frame) {
+        if (size == 0)
+            openedNanos = System.nanoTime();
+        frames[size++].copyFrom(frame);
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
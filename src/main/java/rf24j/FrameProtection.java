@@ -0,0 +1,326 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * Authenticated encryption of payloads - AES-CCM (RFC 3610) with 4 byte MIC, sized for 32 byte
+ * payload.<br/>
+ * Every node has its own key, shared by the node and the gateway. Frame is
+ * [node, sequence number (3 bytes, LSB first), length, encrypted data, MIC], so up to 23 bytes of
+ * data fit in a frame. Nonce is built from node, direction and sequence number, which is why it
+ * does not have to be sent - sides are told apart by direction, so both of them can use the
+ * same key. Header is covered by the MIC through the nonce and the length.<br/>
+ * Receiver keeps the highest sequence number of every node and a bitmap of the preceding 64 ones
+ * (same as DuplicateFilter) and rejects frames replayed or too old, after the MIC was checked.<br/>
+ * <br/>
+ * Sequence number must never repeat with the same key - a restarted sender has to continue
+ * with the sequence number it stopped at (see setKey(int, byte[], int)) or get a new key, and the
+ * key has to be changed before 2^24 frames were sent with it.<br/>
+ * AES runs on cipher contexts created by setKey (AES/ECB, one block per call) and blocks are kept in
+ * buffers of this object, so frames are encrypted and decrypted without allocation. Received frame
+ * is decrypted in place, in the buffer of RxFrame, frame sent by write is sealed into a buffer of
+ * the calling thread.
+ */
+public class FrameProtection {
+    public static final int HEADER_SIZE = 5;
+    public static final int MIC_SIZE = 4;
+    public static final int MAX_DATA_SIZE = RxFrame.MAX_PAYLOAD_SIZE - HEADER_SIZE - MIC_SIZE;
+    public static final int WINDOW = 64;
+    public static final int SEQUENCE_LIMIT = 1 << 24;
+
+    private static final int NODES = 256;
+    private static final int BLOCK = 16;
+    private static final int FLAGS_MAC = (MIC_SIZE - 2) / 2 << 3 | 1;  // no associated data, M = 4, L = 2
+    private static final int FLAGS_CTR = 1;  // L = 2
+
+    private final int direction;
+
+    private final Cipher[] ciphers = new Cipher[NODES];
+    private final int[] txSequence = new int[NODES];
+    private final boolean[] known = new boolean[NODES];
+    private final int[] highest = new int[NODES];
+    private final long[] window = new long[NODES];
+
+    private final byte[] block = new byte[BLOCK];
+    private final byte[] mac = new byte[BLOCK];
+    private final byte[] counter = new byte[BLOCK];
+    private final byte[] stream = new byte[BLOCK];
+    private final ThreadLocal<byte[]> frames = ThreadLocal.withInitial(() -> new byte[RxFrame.MAX_PAYLOAD_SIZE]);
+
+    private long sealed = 0;
+    private long opened = 0;
+    private long rejected = 0;
+    private long replayed = 0;
+
+    /**
+     * @param gateway true on the gateway, false on nodes - frames of the other side are accepted only
+     */
+    public FrameProtection(boolean gateway) {
+        this.direction = gateway ? 1 : 0;
+    }
+
+    /**
+     * Set key of the node, starting with sequence number 0
+     * @param node node id (0 - 255)
+     * @param key AES key, 16, 24 or 32 bytes
+     */
+    public void setKey(int node, byte[] key) {
+        setKey(node, key, 0);
+    }
+
+    /**
+     * Set key of the node. Forgets sequence numbers received from the node.
+     * @param node node id (0 - 255)
+     * @param key AES key, 16, 24 or 32 bytes
+     * @param txSequence sequence number of the next frame sent with the key
+     */
+    public synchronized void setKey(int node, byte[] key, int txSequence) {
+        Cipher cipher;
+        try {
+            cipher = Cipher.getInstance("AES/ECB/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid key of node " + node, e);
+        }
+        ciphers[node & 0xFF] = cipher;
+        this.txSequence[node & 0xFF] = txSequence;
+        known[node & 0xFF] = false;
+    }
+
+    /**
+     * Remove key of the node, frames of the node are rejected afterwards
+     * @param node node id (0 - 255)
+     */
+    public synchronized void removeKey(int node) {
+        ciphers[node & 0xFF] = null;
+        known[node & 0xFF] = false;
+    }
+
+    /**
+     * Encrypt data into a frame
+     * @param node node id (0 - 255) - own id on a node, destination on the gateway
+     * @param data data to encrypt
+     * @param length number of bytes, at most MAX_DATA_SIZE
+     * @param out buffer for the frame, at least HEADER_SIZE + length + MIC_SIZE bytes
+     * @return length of the frame
+     * @throws RF24Exception if there is no key for the node, data is too long or sequence numbers of
+     * the key are used up
+     */
+    public synchronized int seal(int node, byte[] data, int length, byte[] out) throws RF24Exception {
+        node &= 0xFF;
+        Cipher cipher = ciphers[node];
+        if (cipher == null)
+            throw new RF24Exception("No key for node " + node);
+        if (length > MAX_DATA_SIZE)
+            throw new RF24Exception("Data too long: " + length);
+        int seq = txSequence[node];
+        if (seq >= SEQUENCE_LIMIT)
+            throw new RF24Exception("Sequence numbers of node " + node + " used up, key has to be changed");
+        txSequence[node] = seq + 1;
+
+        out[0] = (byte) node;
+        out[1] = (byte) seq;
+        out[2] = (byte) (seq >> 8);
+        out[3] = (byte) (seq >> 16);
+        out[4] = (byte) length;
+
+        authenticate(cipher, node, direction, seq, data, 0, length);
+        crypt(cipher, node, direction, seq, data, 0, out, HEADER_SIZE, length);
+        for (int i = 0; i < MIC_SIZE; i++)
+            out[HEADER_SIZE + length + i] = mac[i];
+        sealed++;
+        return HEADER_SIZE + length + MIC_SIZE;
+    }
+
+    /**
+     * Encrypt data and send it. Object is locked only while the frame is sealed, not while the radio
+     * sends it - frames of threads sending at the same time may go out of sequence order, which the
+     * receiver accepts within WINDOW.
+     * @param rf24 radio with writing pipe opened
+     * @param node node id (0 - 255) - own id on a node, destination on the gateway
+     * @param data data to send
+     * @param length number of bytes, at most MAX_DATA_SIZE
+     * @return result of RF24.write - 0 if OK, 1 if number of retries reached, 2 if timeout occurred
+     * @throws PigpioException
+     */
+    public int write(RF24 rf24, int node, byte[] data, int length) throws PigpioException {
+        byte[] frame = frames.get();
+        int n = seal(node, data, length, frame);
+        return rf24.write(frame, n, false);
+    }
+
+    /**
+     * Check and decrypt received frame in place. If the frame is accepted, data starts at the
+     * beginning of the frame and length of the frame is the length of data. If the MIC does not
+     * match, the decrypted bytes are cleared.
+     * @param frame received frame
+     * @return node id, -1 if the frame was rejected (unknown node, wrong MIC, replayed)
+     */
+    public synchronized int open(RxFrame frame) {
+        byte[] b = frame.data;
+        int length = b[4] & 0xFF;
+        if (frame.length < HEADER_SIZE + MIC_SIZE || length > frame.length - HEADER_SIZE - MIC_SIZE) {
+            rejected++;
+            return -1;
+        }
+        int node = b[0] & 0xFF;
+        int seq = (b[1] & 0xFF) | (b[2] & 0xFF) << 8 | (b[3] & 0xFF) << 16;
+        Cipher cipher = ciphers[node];
+        if (cipher == null) {
+            rejected++;
+            return -1;
+        }
+        if (replay(node, seq)) {
+            replayed++;
+            return -1;
+        }
+
+        crypt(cipher, node, 1 - direction, seq, b, HEADER_SIZE, b, HEADER_SIZE, length);
+        authenticate(cipher, node, 1 - direction, seq, b, HEADER_SIZE, length);
+        int diff = 0;
+        for (int i = 0; i < MIC_SIZE; i++)
+            diff |= mac[i] ^ b[HEADER_SIZE + length + i];  // no early exit - timing does not tell the MIC
+        if (diff != 0) {
+            // data was decrypted in place - keystream of a sequence number not used yet must not leak
+            Arrays.fill(b, HEADER_SIZE, HEADER_SIZE + length, (byte) 0);
+            rejected++;
+            return -1;
+        }
+
+        remember(node, seq);
+        System.arraycopy(b, HEADER_SIZE, b, 0, length);
+        frame.length = length;
+        opened++;
+        return node;
+    }
+
+    /**
+     * @param sink receiver of decrypted frames
+     * @return sink decrypting frames (see open) and passing accepted ones to the given sink, e.g.
+     * for RF24.drainRx
+     */
+    public FrameSink sink(FrameSink sink) {
+        return frame -> {
+            if (open(frame) >= 0)
+                sink.accept(frame);
+        };
+    }
+
+    /**
+     * @param node node id (0 - 255)
+     * @return sequence number of the next frame sent to/by the node, to be stored so a restart does
+     * not reuse it
+     */
+    public synchronized int getTxSequence(int node) {
+        return txSequence[node & 0xFF];
+    }
+
+    /**
+     * CBC-MAC of the data, encrypted by counter block 0, is left in mac
+     */
+    private void authenticate(Cipher cipher, int node, int dir, int seq, byte[] data, int offset, int length) {
+        nonce(block, FLAGS_MAC, node, dir, seq);
+        block[14] = 0;
+        block[15] = (byte) length;
+        aes(cipher, block, mac);
+        for (int off = 0; off < length; off += BLOCK) {
+            for (int i = 0; i < BLOCK; i++)
+                block[i] = (byte) (mac[i] ^ (off + i < length ? data[offset + off + i] : 0));
+            aes(cipher, block, mac);
+        }
+
+        nonce(counter, FLAGS_CTR, node, dir, seq);
+        counter[14] = 0;
+        counter[15] = 0;
+        aes(cipher, counter, stream);
+        for (int i = 0; i < MIC_SIZE; i++)
+            mac[i] ^= stream[i];
+    }
+
+    /**
+     * Encrypt or decrypt by counter blocks 1, 2, ..., input and output may be the same
+     */
+    private void crypt(Cipher cipher, int node, int dir, int seq, byte[] in, int inOffset, byte[] out, int outOffset, int length) {
+        nonce(counter, FLAGS_CTR, node, dir, seq);
+        for (int off = 0, n = 1; off < length; off += BLOCK, n++) {
+            counter[14] = (byte) (n >> 8);
+            counter[15] = (byte) n;
+            aes(cipher, counter, stream);
+            for (int i = 0; i < BLOCK && off + i < length; i++)
+                out[outOffset + off + i] = (byte) (in[inOffset + off + i] ^ stream[i]);
+        }
+    }
+
+    private static void nonce(byte[] b, int flags, int node, int dir, int seq) {
+        b[0] = (byte) flags;
+        b[1] = (byte) node;
+        b[2] = (byte) dir;
+        b[3] = (byte) seq;
+        b[4] = (byte) (seq >> 8);
+        b[5] = (byte) (seq >> 16);
+        for (int i = 6; i < 14; i++)
+            b[i] = 0;
+    }
+
+    private static void aes(Cipher cipher, byte[] in, byte[] out) {
+        try {
+            cipher.update(in, 0, BLOCK, out, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);  // output block is always big enough
+        }
+    }
+
+    private boolean replay(int node, int seq) {
+        if (!known[node] || seq > highest[node])
+            return false;
+        int back = highest[node] - seq;
+        return back >= WINDOW || (window[node] & 1L << back) != 0;
+    }
+
+    private void remember(int node, int seq) {
+        if (!known[node]) {
+            known[node] = true;
+            highest[node] = seq;
+            window[node] = 1;
+        } else if (seq > highest[node]) {
+            int shift = seq - highest[node];
+            window[node] = shift >= WINDOW ? 1 : window[node] << shift | 1;
+            highest[node] = seq;
+        } else
+            window[node] |= 1L << (highest[node] - seq);
+    }
+
+    /**
+     * @return number of frames encrypted
+     */
+    public synchronized long getSealed() {
+        return sealed;
+    }
+
+    /**
+     * @return number of frames accepted
+     */
+    public synchronized long getOpened() {
+        return opened;
+    }
+
+    /**
+     * @return number of frames rejected because of unknown node, length or MIC
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return number of frames rejected as replayed or too old
+     */
+    public synchronized long getReplayed() {
+        return replayed;
+    }
+}
@@ -0,0 +1,282 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes received frames to subscribers with demand based delivery.<br/>
+ * Subscriber and Subscription follow the contract of java.util.concurrent.Flow (Reactive Streams),
+ * so the publisher can be adapted to Flow or any Reactive Streams library with a thin wrapper,
+ * while the driver stays on Java 8.<br/>
+ * <br/>
+ * Every subscriber gets a ring of preallocated frames and its own delivery thread, so subscribers
+ * consume at their own speed. Receiving thread only copies frames into rings. When a ring is full,
+ * overflow strategy decides whether the oldest frame is overwritten, the new frame is dropped or
+ * the receiving thread waits (slowest subscriber then throttles the radio).<br/>
+ * Frame passed to onNext is reused once onNext returns - subscriber has to copy what it keeps.
+ * Subscriber whose onNext throws is cancelled and gets the exception in onError.
+ */
+public class FramePublisher {
+
+    /**
+     * Receiver of frames, same contract as java.util.concurrent.Flow.Subscriber
+     */
+    public interface Subscriber {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(RxFrame frame);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Link between publisher and subscriber, same contract as java.util.concurrent.Flow.Subscription
+     */
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+
+    public enum OverflowStrategy {
+        DROP_OLDEST,
+        DROP_NEWEST,
+        BLOCK
+    }
+
+    private final RF24 rf24;
+    private final int bufferSize;
+    private final OverflowStrategy strategy;
+    private final CopyOnWriteArrayList<Ring> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile DuplicateFilter filter;
+    private volatile boolean running = false;
+    private Thread pump;
+
+    /**
+     * @param rf24 radio to read frames from
+     * @param bufferSize number of frames buffered per subscriber
+     * @param strategy what to do when subscriber's buffer is full
+     */
+    public FramePublisher(RF24 rf24, int bufferSize, OverflowStrategy strategy) {
+        this.rf24 = rf24;
+        this.bufferSize = bufferSize;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Add subscriber. onSubscribe is called before this method returns.
+     * @param subscriber subscriber to add
+     */
+    public void subscribe(Subscriber subscriber) {
+        Ring ring = new Ring(subscriber);
+        subscriptions.add(ring);
+        subscriber.onSubscribe(ring);
+        ring.thread.start();
+    }
+
+    /**
+     * Drop duplicate frames read from radio before they are published
+     * @param filter duplicate filter, null to publish all frames
+     */
+    public void setDuplicateFilter(DuplicateFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Start thread reading frames from radio. Radio should be listening already.
+     */
+    public synchronized void start() {
+        if (pump != null)
+            return;
+        running = true;
+        pump = new Thread(this::pumpLoop, "RF24 publisher");
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    /**
+     * Stop reading frames and complete all subscriptions once their buffers are delivered.
+     * @throws InterruptedException
+     */
+    public void close() throws InterruptedException {
+        Thread p;
+        synchronized (this) {
+            running = false;
+            p = pump;
+            pump = null;
+        }
+        if (p != null) {
+            p.interrupt();
+            p.join();
+        }
+        for (Ring ring : subscriptions)
+            ring.complete(null);
+    }
+
+    /**
+     * Offer frame to all subscribers. Used by the reading thread, can be used to publish
+     * frames read elsewhere.
+     * @param frame frame to publish, it is copied
+     * @throws InterruptedException if interrupted while waiting for BLOCK subscriber
+     */
+    public void publish(RxFrame frame) throws InterruptedException {
+        for (Ring ring : subscriptions)
+            ring.offer(frame);
+    }
+
+    private void pumpLoop() {
+        RxFrame frame = new RxFrame();
+        try {
+            while (running) {
+                if (rf24.available()) {
+                    boolean more;
+                    do {
+                        more = rf24.read(frame);
+                        DuplicateFilter f = filter;
+                        if (f == null || f.accept(frame))
+                            publish(frame);
+                    } while (more && running);
+                } else
+                    Thread.sleep(1);
+            }
+        } catch (InterruptedException e) {
+            // closing
+        } catch (PigpioException e) {
+            running = false;
+            for (Ring ring : subscriptions)
+                ring.complete(e);
+        }
+    }
+
+    /**
+     * @return total number of frames dropped for all subscribers
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Buffer and delivery thread of one subscriber
+     */
+    private class Ring implements Subscription {
+        private final Subscriber subscriber;
+        private final RxFrame[] frames = new RxFrame[bufferSize];
+        private final RxFrame delivering = new RxFrame();
+        private final Thread thread;
+
+        private int head = 0;
+        private int size = 0;
+        private long demand = 0;
+        private boolean cancelled = false;
+        private boolean completed = false;
+        private Throwable error;
+
+        Ring(Subscriber subscriber) {
+            this.subscriber = subscriber;
+            for (int i = 0; i < bufferSize; i++)
+                frames[i] = new RxFrame();
+            thread = new Thread(this::deliverLoop, "RF24 subscriber");
+            thread.setDaemon(true);
+        }
+
+        synchronized void offer(RxFrame frame) throws InterruptedException {
+            if (cancelled || completed)
+                return;
+            if (size == bufferSize) {
+                switch (strategy) {
+                    case DROP_NEWEST:
+                        dropped.incrementAndGet();
+                        return;
+                    case DROP_OLDEST:
+                        head = (head + 1) % bufferSize;
+                        size--;
+                        dropped.incrementAndGet();
+                        break;
+                    case BLOCK:
+                        while (size == bufferSize && !cancelled)
+                            wait();
+                        if (cancelled)
+                            return;
+                }
+            }
+            frames[(head + size) % bufferSize].copyFrom(frame);
+            size++;
+            notifyAll();
+        }
+
+        synchronized void complete(Throwable error) {
+            completed = true;
+            this.error = error;
+            notifyAll();
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    // rule 3.9 of Reactive Streams specification
+                    completed = true;
+                    size = 0;
+                    error = new IllegalArgumentException("Non-positive request: " + n);
+                } else
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;  // saturate, rule 3.17
+                notifyAll();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                notifyAll();
+            }
+            subscriptions.remove(this);
+        }
+
+        private void deliverLoop() {
+            while (true) {
+                synchronized (this) {
+                    try {
+                        while (!cancelled && !(size > 0 && demand > 0) && !(completed && size == 0))
+                            wait();
+                    } catch (InterruptedException e) {
+                        cancel();  // nobody delivers any more, BLOCK publisher must not wait for it
+                        return;
+                    }
+                    if (cancelled)
+                        return;
+                    if (size == 0) {
+                        subscriptions.remove(this);
+                        break;  // completed
+                    }
+                    delivering.copyFrom(frames[head]);
+                    head = (head + 1) % bufferSize;
+                    size--;
+                    if (demand != Long.MAX_VALUE)
+                        demand--;
+                    notifyAll();  // wake up BLOCK publisher
+                }
+                try {
+                    subscriber.onNext(delivering);
+                } catch (Throwable t) {
+                    // rule 2.13 - subscription is treated as cancelled, so a BLOCK publisher does not
+                    // wait for this thread forever
+                    cancel();
+                    subscriber.onError(t);
+                    return;
+                }
+            }
+
+            if (error != null)
+                subscriber.onError(error);
+            else
+                subscriber.onComplete();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package rf24j;
+
+/**
+ * Receiver of frames drained from RX FIFO by RF24.drainRx.
+ */
+public interface FrameSink {
+    /**
+     * Take received frame. Called with radio locked, so it should return quickly.
+     * Frame is reused once the method returns, implementation has to copy anything it keeps.
+     * @param frame received frame
+     */
+    void accept(RxFrame frame);
+}
@@ -0,0 +1,206 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+/**
+ * Synchronized frequency hopping between peers.<br/>
+ * Time is split into slots of fixed length. In every slot the radio operates on the channel
+ * given by hop sequence, which is derived from a seed shared by all peers.
+ * Sequence is a permutation of allowed channels shuffled by Fisher-Yates algorithm driven
+ * by xorshift64* generator, so it can be reproduced on other platforms.<br/>
+ * <br/>
+ * Master defines the time base and stamps its frames with sync header (see stamp).
+ * Other peers align their slot clock to the header of every received frame (see synchronize).
+ * If nothing is received for a number of slots, peer stops hopping and parks on the current
+ * channel until the master visits it - master passes every channel once per sequence cycle.<br/>
+ * <br/>
+ * Method poll has to be called regularly (at least once per slot), e.g. from receiving loop.
+ */
+public class FrequencyHopper {
+    /**
+     * Size of sync header: [sequence index, offset in slot LSB, offset in slot MSB]
+     */
+    public static final int SYNC_HEADER_SIZE = 3;
+
+    /**
+     * Resolution of offset in sync header in microseconds
+     */
+    private static final int OFFSET_UNIT = 10;
+
+    private final RF24 rf24;
+    private final int[] sequence;
+    private final long slotNanos;
+    private final boolean master;
+
+    private long epoch;
+    private long lastHeard;
+    private int lossSlots = 0;
+    private boolean resync = false;
+    private boolean started = false;
+
+    private long hops = 0;
+    private long resyncs = 0;
+
+    /**
+     * @param rf24 radio to control
+     * @param seed seed shared by all peers
+     * @param channels channels allowed to use (max 255), e.g. result of channel survey
+     * @param slotMicros slot length in microseconds (max 655350)
+     * @param master true if this side defines the time base
+     */
+    public FrequencyHopper(RF24 rf24, long seed, int[] channels, long slotMicros, boolean master) {
+        if (channels.length == 0 || channels.length > 255)
+            throw new IllegalArgumentException("1-255 channels allowed");
+        if (slotMicros <= 0 || slotMicros / OFFSET_UNIT > 0xFFFF)
+            throw new IllegalArgumentException("Slot length out of range");
+
+        this.rf24 = rf24;
+        this.sequence = hopSequence(seed, channels);
+        this.slotNanos = slotMicros * 1000;
+        this.master = master;
+    }
+
+    /**
+     * Create hop sequence for given seed
+     * @param seed shared seed
+     * @param channels channels allowed
+     * @return permutation of channels
+     */
+    public static int[] hopSequence(long seed, int[] channels) {
+        int[] seq = channels.clone();
+        long x = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+        for (int i = seq.length - 1; i > 0; i--) {
+            // xorshift64*
+            x ^= x >>> 12;
+            x ^= x << 25;
+            x ^= x >>> 27;
+            long r = x * 0x2545F4914F6CDD1DL;
+            int j = (int) ((r >>> 33) % (i + 1));
+            int t = seq[i];
+            seq[i] = seq[j];
+            seq[j] = t;
+        }
+        return seq;
+    }
+
+    /**
+     * Set how many slots without any received frame mean the link is lost and peer has to resync.
+     * Ignored on master. Default is 0 = never resync.
+     * @param slots number of slots
+     */
+    public synchronized void setLossSlots(int slots) {
+        this.lossSlots = slots;
+    }
+
+    /**
+     * Start hopping. Slot 0 starts now.
+     * @throws PigpioException
+     */
+    public synchronized void start() throws PigpioException {
+        epoch = System.nanoTime();
+        lastHeard = epoch;
+        started = true;
+        resync = false;
+        rf24.hopChannel(sequence[0]);
+    }
+
+    /**
+     * Stop hopping. Radio stays on current channel.
+     */
+    public synchronized void stop() {
+        started = false;
+    }
+
+    /**
+     * Hop to the channel of current slot if slot boundary was crossed.
+     * @return current channel
+     * @throws PigpioException
+     */
+    public synchronized int poll() throws PigpioException {
+        if (!started)
+            return rf24.getChannel();
+
+        long now = System.nanoTime();
+        if (!master && lossSlots > 0 && !resync && now - lastHeard > lossSlots * slotNanos) {
+            resync = true;
+            resyncs++;
+        }
+
+        if (resync)
+            return rf24.getChannel();
+
+        int ch = sequence[(int) (((now - epoch) / slotNanos) % sequence.length)];
+        if (rf24.hopChannel(ch))
+            hops++;
+        return ch;
+    }
+
+    /**
+     * Write sync header into outgoing frame. Should be done right before the frame is sent.
+     * @param payload frame to send
+     * @param offset position of header in frame
+     */
+    public synchronized void stamp(byte[] payload, int offset) {
+        long elapsed = System.nanoTime() - epoch;
+        long slot = elapsed / slotNanos;
+        int inSlot = (int) ((elapsed - slot * slotNanos) / 1000 / OFFSET_UNIT);
+        payload[offset] = (byte) (slot % sequence.length);
+        payload[offset + 1] = (byte) inSlot;
+        payload[offset + 2] = (byte) (inSlot >> 8);
+    }
+
+    /**
+     * Align slot clock to sync header of received frame. Leaves resync mode.
+     * @param payload received frame
+     * @param offset position of header in frame
+     * @param rxNanos System.nanoTime() when frame was received
+     */
+    public synchronized void synchronize(byte[] payload, int offset, long rxNanos) {
+        lastHeard = rxNanos;
+        if (master)
+            return;
+
+        int index = payload[offset] & 0xFF;
+        long inSlot = ((payload[offset + 1] & 0xFF) | (payload[offset + 2] & 0xFF) << 8) * OFFSET_UNIT * 1000L;
+        if (index >= sequence.length)
+            return;
+
+        epoch = rxNanos - inSlot - index * slotNanos;
+        resync = false;
+    }
+
+    /**
+     * Note that a frame was received without sync header - keeps link from being considered lost.
+     */
+    public synchronized void heard() {
+        lastHeard = System.nanoTime();
+    }
+
+    /**
+     * @return true if peer lost synchronization and waits for master on a fixed channel
+     */
+    public synchronized boolean isResyncing() {
+        return resync;
+    }
+
+    /**
+     * @return number of channel changes made
+     */
+    public synchronized long getHops() {
+        return hops;
+    }
+
+    /**
+     * @return number of times synchronization was lost
+     */
+    public synchronized long getResyncs() {
+        return resyncs;
+    }
+
+    /**
+     * @return copy of hop sequence
+     */
+    public int[] getSequence() {
+        return sequence.clone();
+    }
+}
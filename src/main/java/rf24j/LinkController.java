@@ -0,0 +1,334 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Closed-loop data rate and PA level controller of a point-to-point link.<br/>
+ * Link is kept on one step of a ladder of (data rate, PA level) profiles - step 0 is the fastest
+ * one. Retry ratio of each transmission (ARC_CNT from OBSERVE_TX / ARC the radio is configured with,
+ * failed transmission counts as 1.0) is averaged together with packets lost by the radio otherwise
+ * (growth of PLOS_CNT, 1.0 each), and the link moves one step down the ladder if the average is above the high
+ * watermark, or one step up if it stays below the low watermark. After every change the link has
+ * to collect a number of samples before it may change again (hysteresis).<br/>
+ * Data rate and PA level are settings of the whole radio, not of a pipe - radio switched to the
+ * rate of one peer does not hear peers using another rate. That is why one controller drives one
+ * link - the radio and a single peer - and the radio should not be used for other links.<br/>
+ * <br/>
+ * Both sides of the link have to use the same data rate, so changes are coordinated with the peer
+ * in two rounds. Control frame proposing the new profile is sent with the current one, the peer
+ * moves to the proposed step of its ladder in handleControl (both sides have to use the same ladder,
+ * proposals of profiles which are not on it are ignored). Once the proposal was acknowledged, the sender switches as well and
+ * confirms the change with the new profile. Peer which does not get the confirmation within
+ * confirmMillis (e.g. its acknowledgement of the proposal was lost, so the sender did not switch)
+ * returns to the previous profile in checkFallback; sender which can not get the confirmation
+ * through in half of that time returns to the previous profile right away. Control frames carry address of the sender
+ * and number of the round, peer ignores control frames of other senders and confirmations of
+ * other rounds.<br/>
+ * If the link gets lost, both sides meet on the most robust step: sender moves there after a
+ * series of failed transmissions, peer after it hears nothing for a while (see checkFallback).
+ * New links start on the most robust step, so both sides should be configured with it initially.
+ */
+public class LinkController {
+    /**
+     * First byte of control frame
+     */
+    public static final byte CONTROL_MAGIC = (byte) 0xC7;
+
+    /**
+     * Control frame command: propose profile [magic, cmd, round, data rate, PA level, sender address]
+     */
+    public static final byte CMD_SET_PROFILE = 0x01;
+
+    /**
+     * Control frame command: confirm proposed profile, same layout as CMD_SET_PROFILE
+     */
+    public static final byte CMD_CONFIRM = 0x02;
+
+    /**
+     * Size of control frame without sender address
+     */
+    public static final int CONTROL_HEADER_SIZE = 5;
+
+    /**
+     * Default ladder - fastest first
+     */
+    public static final int[][] DEFAULT_LADDER = {
+            {RF24.RF24_2MBPS, RF24.RF24_PA_LOW},
+            {RF24.RF24_2MBPS, RF24.RF24_PA_HIGH},
+            {RF24.RF24_2MBPS, RF24.RF24_PA_MAX},
+            {RF24.RF24_1MBPS, RF24.RF24_PA_MAX},
+            {RF24.RF24_250KBPS, RF24.RF24_PA_MAX},
+    };
+
+    private final RF24 rf24;
+    private final int[][] ladder;
+    private final byte[] localAddress;
+    private final byte[] peerAddress;
+
+    private double alpha = 0.2;
+    private double highWatermark = 0.4;
+    private double lowWatermark = 0.05;
+    private int downSamples = 8;
+    private int upSamples = 32;
+    private int maxFailures = 5;
+    private long fallbackMillis = 2000;
+    private long confirmMillis = 500;
+
+    // sending side - state of the link
+    private int step;
+    private double ratio;
+    private int samples;
+    private int failures;
+    private int round = 0;
+
+    // currently applied profile, so registers are not rewritten needlessly
+    private int dataRate = -1;
+    private int paLevel = -1;
+
+    // PLOS_CNT read after the last transmission, -1 if unknown
+    private int lastPlos = -1;
+
+    // peer side - time of last reception, proposal waiting for confirmation
+    private long lastHeard = 0;
+    private int pendingRound = -1;
+    private long pendingDeadline;
+    private int revertStep;
+
+    private final byte[] control;
+
+    /**
+     * Create controller using the default ladder
+     * @param rf24 radio to control
+     * @param localAddress address the radio receives on (LSB first), sent in control frames
+     * @param peerAddress address of the peer (LSB first)
+     */
+    public LinkController(RF24 rf24, byte[] localAddress, byte[] peerAddress) {
+        this(rf24, localAddress, peerAddress, DEFAULT_LADDER);
+    }
+
+    /**
+     * Create controller
+     * @param rf24 radio to control
+     * @param localAddress address the radio receives on (LSB first), sent in control frames
+     * @param peerAddress address of the peer (LSB first)
+     * @param ladder profiles {data rate, PA level} - fastest first, most robust last
+     */
+    public LinkController(RF24 rf24, byte[] localAddress, byte[] peerAddress, int[][] ladder) {
+        if (CONTROL_HEADER_SIZE + localAddress.length > RxFrame.MAX_PAYLOAD_SIZE)
+            throw new IllegalArgumentException("Address too long: " + localAddress.length);
+        this.rf24 = rf24;
+        this.ladder = ladder;
+        this.localAddress = localAddress.clone();
+        this.peerAddress = peerAddress.clone();
+        this.control = new byte[CONTROL_HEADER_SIZE + localAddress.length];
+        this.step = ladder.length - 1;
+    }
+
+    /**
+     * Set parameters of retry ratio averaging and hysteresis
+     * @param alpha weight of new sample in exponentially weighted average (0-1)
+     * @param lowWatermark average below which link moves to faster step
+     * @param highWatermark average above which link moves to more robust step
+     * @param downSamples samples required since last change before moving to more robust step
+     * @param upSamples samples required since last change before moving to faster step
+     */
+    public synchronized void setThresholds(double alpha, double lowWatermark, double highWatermark, int downSamples, int upSamples) {
+        this.alpha = alpha;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.downSamples = downSamples;
+        this.upSamples = upSamples;
+    }
+
+    /**
+     * Set fallback parameters
+     * @param maxFailures consecutive failed transmissions after which sender returns to most robust step
+     * @param fallbackMillis time without reception after which peer moves to most robust step
+     */
+    public synchronized void setFallback(int maxFailures, long fallbackMillis) {
+        this.maxFailures = maxFailures;
+        this.fallbackMillis = fallbackMillis;
+    }
+
+    /**
+     * Set time the peer waits for the confirmation before it returns to the previous profile.
+     * Sender repeats the confirmation for half of the time. Both sides have to use the same value.
+     * @param confirmMillis time in milliseconds
+     */
+    public synchronized void setConfirmation(long confirmMillis) {
+        this.confirmMillis = confirmMillis;
+    }
+
+    /**
+     * Send data to the peer using current profile and adapt the profile according to result.
+     * @param data data to send
+     * @return result of RF24.write - 0 if OK, 1 if number of retries reached, 2 if timeout occurred
+     * @throws PigpioException
+     */
+    public synchronized int write(byte[] data) throws PigpioException {
+        if (!rf24.isWritingPipe(peerAddress))
+            rf24.openWritingPipe(peerAddress);
+        apply(ladder[step][0], ladder[step][1]);
+
+        int result = rf24.write(data);
+        int observeTx = rf24.getObserveTx();
+        int plos = (observeTx >> RF24.PLOS_CNT) & 0x0F;
+        // PLOS_CNT is reset by channel change and saturates at 15, failed write counted in it already
+        int lost = lastPlos >= 0 && plos > lastPlos ? plos - lastPlos - (result != 0 ? 1 : 0) : 0;
+        lastPlos = plos;
+        for (int i = 0; i < lost; i++)
+            record(1.0);
+        int retries = rf24.getRetries();
+        record(result != 0 ? 1.0 : retries > 0 ? Math.min(1.0, (double) (observeTx & 0x0F) / retries) : 0.0);
+
+        if (result != 0) {
+            failures++;
+            if (failures >= maxFailures && step != ladder.length - 1)
+                changeStep(ladder.length - 1);  // peer falls back by itself as well
+        } else
+            failures = 0;
+
+        if (samples >= downSamples && ratio > highWatermark && step < ladder.length - 1)
+            negotiate(step + 1);
+        else if (samples >= upSamples && ratio < lowWatermark && step > 0)
+            negotiate(step - 1);
+
+        return result;
+    }
+
+    /**
+     * Process received frame. If it is a control frame of the peer, the link moves to the step it
+     * proposes, or the pending proposal is confirmed.
+     * Every frame received should be passed here, as it confirms the link is alive.
+     * @param frame received frame
+     * @return true if frame was control frame and should not be processed further
+     * @throws PigpioException
+     */
+    public synchronized boolean handleControl(byte[] frame) throws PigpioException {
+        if (frame.length < CONTROL_HEADER_SIZE + peerAddress.length || frame[0] != CONTROL_MAGIC
+                || (frame[1] != CMD_SET_PROFILE && frame[1] != CMD_CONFIRM)) {
+            lastHeard = System.currentTimeMillis();
+            return false;
+        }
+        for (int i = 0; i < peerAddress.length; i++)
+            if (frame[CONTROL_HEADER_SIZE + i] != peerAddress[i])
+                return true;  // control frame of another link
+        lastHeard = System.currentTimeMillis();
+
+        int frameRound = frame[2] & 0xFF;
+        if (frame[1] == CMD_SET_PROFILE) {
+            int proposed = stepOf(frame[3], frame[4]);
+            if (proposed < 0)
+                return true;  // not on the ladder
+            if (pendingRound < 0)
+                revertStep = step;
+            pendingRound = frameRound;
+            pendingDeadline = lastHeard + confirmMillis;
+            changeStep(proposed);
+        } else if (frameRound == pendingRound)
+            pendingRound = -1;
+        return true;
+    }
+
+    /**
+     * Return to the previous profile if a proposal was not confirmed in time, move to the most
+     * robust step if nothing was received for a while.
+     * Should be called regularly by the receiving side.
+     * @return true if profile was changed
+     * @throws PigpioException
+     */
+    public synchronized boolean checkFallback() throws PigpioException {
+        long now = System.currentTimeMillis();
+        if (pendingRound >= 0 && now - pendingDeadline >= 0) {
+            pendingRound = -1;
+            changeStep(revertStep);
+            return true;
+        }
+        if (lastHeard == 0 || now - lastHeard < fallbackMillis)
+            return false;
+        lastHeard = 0;
+        pendingRound = -1;
+        if (step == ladder.length - 1)
+            return false;
+        changeStep(ladder.length - 1);
+        return true;
+    }
+
+    /**
+     * @return index of ladder step currently used for the link
+     */
+    public synchronized int getStep() {
+        return step;
+    }
+
+    /**
+     * @return averaged retry ratio of the link (0 - 1)
+     */
+    public synchronized double getRetryRatio() {
+        return ratio;
+    }
+
+    private void record(double sample) {
+        ratio = samples == 0 ? sample : alpha * sample + (1 - alpha) * ratio;
+        samples++;
+    }
+
+    private void negotiate(int next) throws PigpioException {
+        round = (round + 1) & 0xFF;
+        if (rf24.write(control(CMD_SET_PROFILE, next)) != 0)
+            return;  // peer may have applied it anyway - it returns without confirmation
+
+        int previous = step;
+        changeStep(next);
+        control(CMD_CONFIRM, next);
+        // peer needs a moment to apply the proposal, it waits for the confirmation twice as long
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmMillis / 2);
+        do {
+            if (rf24.write(control) == 0)
+                return;
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        } while (System.nanoTime() - deadline < 0);
+        changeStep(previous);  // peer did not switch or does not hear the new profile
+    }
+
+    /**
+     * @return index of ladder step with given profile, -1 if there is none
+     */
+    private int stepOf(int rate, int pa) {
+        for (int i = 0; i < ladder.length; i++)
+            if (ladder[i][0] == rate && ladder[i][1] == pa)
+                return i;
+        return -1;
+    }
+
+    private byte[] control(byte cmd, int step) {
+        control[0] = CONTROL_MAGIC;
+        control[1] = cmd;
+        control[2] = (byte) round;
+        control[3] = (byte) ladder[step][0];
+        control[4] = (byte) ladder[step][1];
+        System.arraycopy(localAddress, 0, control, CONTROL_HEADER_SIZE, localAddress.length);
+        return control;
+    }
+
+    private void changeStep(int step) throws PigpioException {
+        this.step = step;
+        samples = 0;
+        failures = 0;
+        apply(ladder[step][0], ladder[step][1]);
+    }
+
+    private void apply(int rate, int pa) throws PigpioException {
+        if (rate != dataRate) {
+            rf24.setDataRate(rate);
+            dataRate = rate;
+        }
+        if (pa != paLevel) {
+            rf24.setPALevel(pa);
+            paLevel = pa;
+        }
+    }
+}
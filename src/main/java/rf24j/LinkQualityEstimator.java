@@ -0,0 +1,313 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Quality score of every link, for routing, rate adaptation or alerting.<br/>
+ * Three signals are averaged per address (exponentially weighted moving average):
+ * <ul>
+ * <li>RPD - fraction of receptions from the node with RPD set, i.e. received with at least -64dBm.
+ * RPD is latched when a valid packet arrives, so it has to be read right after the reception
+ * (see received(RF24, byte[]) - with more frames in RX FIFO it belongs to the last one)</li>
+ * <li>retry ratio - ARC_CNT of every transmission to the node / ARC configured on the radio</li>
+ * <li>loss ratio - transmissions which were not acknowledged (result of write, or PLOS_CNT going up)
+ * and frames known to be lost on receiving side (see lost)</li>
+ * </ul>
+ * Score is 1 - weighted average of the bad parts (no RPD, retries, losses) of signals which have
+ * samples, so 1 is a perfect link and 0 a dead one.<br/>
+ * <br/>
+ * State is kept in one AtomicLongArray (open addressing by address, averages as bits of doubles)
+ * updated with compare-and-set, so radio threads never block each other and queries are a few
+ * volatile reads without locking or allocation. Table has fixed capacity, addresses are never
+ * removed - samples of an address which does not fit are ignored.
+ */
+public class LinkQualityEstimator {
+    public static final double DEFAULT_ALPHA = 0.1;
+    public static final double DEFAULT_LOSS_WEIGHT = 0.5;
+    public static final double DEFAULT_RETRY_WEIGHT = 0.3;
+    public static final double DEFAULT_RPD_WEIGHT = 0.2;
+
+    // fields of a slot
+    private static final int KEY = 0;
+    private static final int RPD = 1;
+    private static final int RETRY = 2;
+    private static final int LOSS = 3;
+    private static final int SAMPLES = 4;
+    private static final int UPDATED = 5;
+    private static final int FIELDS = 6;
+
+    private static final long USED = 1L << 63;  // set in key of used slot, address 0 is valid
+    private static final long NO_SAMPLE = Double.doubleToRawLongBits(Double.NaN);
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final double alpha;
+    private final double lossWeight;
+    private final double retryWeight;
+    private final double rpdWeight;
+
+    /**
+     * PLOS_CNT last read from each radio, losses are counted per radio
+     */
+    private final ConcurrentHashMap<RF24, AtomicInteger> lastPlos = new ConcurrentHashMap<>();
+
+    /**
+     * Create estimator with default weights
+     * @param capacity max number of addresses
+     */
+    public LinkQualityEstimator(int capacity) {
+        this(capacity, DEFAULT_ALPHA, DEFAULT_LOSS_WEIGHT, DEFAULT_RETRY_WEIGHT, DEFAULT_RPD_WEIGHT);
+    }
+
+    /**
+     * @param capacity max number of addresses
+     * @param alpha weight of new sample in the averages (0-1)
+     * @param lossWeight weight of loss ratio in the score
+     * @param retryWeight weight of retry ratio in the score
+     * @param rpdWeight weight of missing RPD in the score
+     */
+    public LinkQualityEstimator(int capacity, double alpha, double lossWeight, double retryWeight, double rpdWeight) {
+        if (capacity < 1 || capacity > 1 << 20)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        if (alpha <= 0 || alpha > 1)
+            throw new IllegalArgumentException("Invalid alpha: " + alpha);
+        int slots = Integer.highestOneBit(capacity * 2 - 1) * 2;  // load factor at most 1/2
+        this.table = new AtomicLongArray(slots * FIELDS);
+        this.mask = slots - 1;
+        this.alpha = alpha;
+        this.lossWeight = lossWeight;
+        this.retryWeight = retryWeight;
+        this.rpdWeight = rpdWeight;
+        for (int s = 0; s < slots; s++) {
+            table.set(s * FIELDS + RPD, NO_SAMPLE);
+            table.set(s * FIELDS + RETRY, NO_SAMPLE);
+            table.set(s * FIELDS + LOSS, NO_SAMPLE);
+        }
+    }
+
+    /**
+     * Record reception from the node, RPD is read from the radio. Should be called right after the
+     * frame was read, e.g. from the FrameSink passed to RF24.drainRx.
+     * @param rf24 radio the frame was received by
+     * @param address address of the node (LSB first), see PipeAllocator.heard
+     * @throws PigpioException
+     */
+    public void received(RF24 rf24, byte[] address) throws PigpioException {
+        received(address, rf24.testRPD());
+    }
+
+    /**
+     * Record reception from the node
+     * @param address address of the node (LSB first)
+     * @param rpd value of RPD after the reception
+     */
+    public void received(byte[] address, boolean rpd) {
+        int base = slot(key(address), true);
+        if (base < 0)
+            return;
+        average(base + RPD, rpd ? 1.0 : 0.0);
+        touch(base);
+    }
+
+    /**
+     * Record transmission to the node, OBSERVE_TX is read from the radio. Should be called right
+     * after RF24.write returned.<br/>
+     * Losses counted by PLOS_CNT of the radio since the previous call for the same radio count as
+     * well, so transmissions whose result was not reported (e.g. timeout) are not missed.
+     * @param rf24 radio which sent the frame
+     * @param address destination address (LSB first)
+     * @param result result of RF24.write - 0 if OK, 1 if number of retries reached, 2 if timeout occurred
+     * @throws PigpioException
+     */
+    public void transmitted(RF24 rf24, byte[] address, int result) throws PigpioException {
+        int observeTx = rf24.getObserveTx();
+        int plos = (observeTx >> RF24.PLOS_CNT) & 0x0F;
+        AtomicInteger last = lastPlos.get(rf24);
+        if (last == null) {
+            lastPlos.putIfAbsent(rf24, new AtomicInteger(-1));
+            last = lastPlos.get(rf24);
+        }
+        int previous = last.getAndSet(plos);
+        // PLOS_CNT is reset by channel change and saturates at 15, only growth is a loss
+        int lost = previous >= 0 && plos > previous ? plos - previous : 0;
+        transmitted(address, result, observeTx & 0x0F, rf24.getRetries(), lost);
+    }
+
+    /**
+     * Record transmission to the node
+     * @param address destination address (LSB first)
+     * @param result result of RF24.write - 0 if OK, 1 if number of retries reached, 2 if timeout occurred
+     * @param retries ARC_CNT of the transmission (OBSERVE_TX bits 0-3)
+     * @param maxRetries auto retransmit count (ARC) the radio is configured with
+     * @param lost number of packets the radio lost since the previous call (growth of PLOS_CNT)
+     */
+    public void transmitted(byte[] address, int result, int retries, int maxRetries, int lost) {
+        boolean failed = result != 0 || lost > 0;
+
+        int base = slot(key(address), true);
+        if (base < 0)
+            return;
+        double ratio = maxRetries > 0 ? Math.min(1.0, (double) retries / maxRetries) : 0.0;
+        average(base + RETRY, failed ? 1.0 : ratio);
+        average(base + LOSS, failed ? 1.0 : 0.0);
+        touch(base);
+    }
+
+    /**
+     * Record frames of the node known to be lost, e.g. gaps of sequence numbers or frames
+     * FecDecoder could not rebuild
+     * @param address address of the node (LSB first)
+     * @param frames number of lost frames
+     */
+    public void lost(byte[] address, int frames) {
+        int base = slot(key(address), true);
+        if (base < 0)
+            return;
+        for (int i = 0; i < frames; i++)
+            average(base + LOSS, 1.0);
+        touch(base);
+    }
+
+    /**
+     * Record frame of the node which arrived, counterpart of lost for receiving side loss ratio
+     * @param address address of the node (LSB first)
+     */
+    public void delivered(byte[] address) {
+        int base = slot(key(address), true);
+        if (base < 0)
+            return;
+        average(base + LOSS, 0.0);
+        touch(base);
+    }
+
+    /**
+     * @param address address of the node (LSB first)
+     * @return quality of the link 0 - 1, NaN if nothing is known about it
+     */
+    public double getScore(byte[] address) {
+        int base = slot(key(address), false);
+        if (base < 0)
+            return Double.NaN;
+        double rpd = value(base + RPD);
+        double retry = value(base + RETRY);
+        double loss = value(base + LOSS);
+
+        double bad = 0;
+        double weights = 0;
+        if (!Double.isNaN(loss)) {
+            bad += lossWeight * loss;
+            weights += lossWeight;
+        }
+        if (!Double.isNaN(retry)) {
+            bad += retryWeight * retry;
+            weights += retryWeight;
+        }
+        if (!Double.isNaN(rpd)) {
+            bad += rpdWeight * (1 - rpd);
+            weights += rpdWeight;
+        }
+        return weights == 0 ? Double.NaN : 1 - bad / weights;
+    }
+
+    /**
+     * @param address address of the node (LSB first)
+     * @return averaged fraction of receptions with RPD set, NaN if there was none
+     */
+    public double getRpdRatio(byte[] address) {
+        return value(address, RPD);
+    }
+
+    /**
+     * @param address address of the node (LSB first)
+     * @return averaged retry ratio of transmissions (0 - 1), NaN if there was none
+     */
+    public double getRetryRatio(byte[] address) {
+        return value(address, RETRY);
+    }
+
+    /**
+     * @param address address of the node (LSB first)
+     * @return averaged loss ratio (0 - 1), NaN if nothing was recorded
+     */
+    public double getLossRatio(byte[] address) {
+        return value(address, LOSS);
+    }
+
+    /**
+     * @param address address of the node (LSB first)
+     * @return number of samples recorded
+     */
+    public long getSamples(byte[] address) {
+        int base = slot(key(address), false);
+        return base < 0 ? 0 : table.get(base + SAMPLES);
+    }
+
+    /**
+     * @param address address of the node (LSB first)
+     * @return System.nanoTime() of the last sample, 0 if there was none
+     */
+    public long getLastUpdateNanos(byte[] address) {
+        int base = slot(key(address), false);
+        return base < 0 ? 0 : table.get(base + UPDATED);
+    }
+
+    private double value(byte[] address, int field) {
+        int base = slot(key(address), false);
+        return base < 0 ? Double.NaN : value(base + field);
+    }
+
+    private double value(int index) {
+        return Double.longBitsToDouble(table.get(index));
+    }
+
+    private void average(int index, double sample) {
+        long old;
+        long updated;
+        do {
+            old = table.get(index);
+            double avg = Double.longBitsToDouble(old);
+            updated = Double.doubleToRawLongBits(Double.isNaN(avg) ? sample : avg + alpha * (sample - avg));
+        } while (!table.compareAndSet(index, old, updated));
+    }
+
+    private void touch(int base) {
+        table.incrementAndGet(base + SAMPLES);
+        table.set(base + UPDATED, System.nanoTime());
+    }
+
+    /**
+     * Find slot of the key, linear probing
+     * @param key address key with USED bit
+     * @param add claim free slot if the key is not there
+     * @return index of the first field of the slot, -1 if not found (or table is full)
+     */
+    private int slot(long key, boolean add) {
+        int s = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        for (int n = 0; n <= mask; n++, s = (s + 1) & mask) {
+            int base = s * FIELDS;
+            long k = table.get(base + KEY);
+            if (k == key)
+                return base;
+            if (k == 0) {
+                if (!add)
+                    return -1;
+                if (table.compareAndSet(base + KEY, 0, key))
+                    return base;
+                if (table.get(base + KEY) == key)
+                    return base;  // claimed by another thread meanwhile
+            }
+        }
+        return -1;
+    }
+
+    private static long key(byte[] address) {
+        long key = 0;
+        for (int i = 0; i < address.length && i < 7; i++)
+            key |= (address[i] & 0xFFL) << (8 * i);
+        return key | USED;
+    }
+}
@@ -0,0 +1,86 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+/**
+ * Sends frames to a group address shared by many nodes, without acknowledgements.<br/>
+ * All nodes of the group open a reading pipe with the group address (auto-ACK of that pipe does not
+ * matter - packets are marked NO_ACK). One transmission reaches all of them, instead of one
+ * acknowledged unicast per node.<br/>
+ * <br/>
+ * Without acknowledgement the sender does not know who received the frame, so the frame can be
+ * repeated. Receivers get every copy they hear - a sequence number in the payload and
+ * DuplicateFilter on the receiving side keep only the first one.<br/>
+ * Only TX_ADDR is switched to the group address for the send and restored afterwards. Pipe 0 keeps
+ * the address of the unicast destination, so frames written later by other users of the radio
+ * (TxScheduler, RadioRpc) are not affected.
+ */
+public class MulticastSender {
+    private final RF24 rf24;
+    private final byte[] groupAddress;
+    private final byte[] unicastAddress;
+
+    private long frames = 0;
+    private long transmissions = 0;
+
+    /**
+     * @param rf24 initialized radio
+     * @param groupAddress address shared by the group (LSB first), width has to match the radio
+     */
+    public MulticastSender(RF24 rf24, byte[] groupAddress) {
+        this.rf24 = rf24;
+        this.groupAddress = groupAddress.clone();
+        this.unicastAddress = new byte[groupAddress.length];
+    }
+
+    /**
+     * Send frame to the group
+     * @param data data to send
+     * @param repeats number of extra copies sent right after the first one, 0 to send it once
+     * @return result of the last RF24.write - 0 if sent, 2 if timeout occurred
+     * @throws PigpioException
+     */
+    public int send(byte[] data, int repeats) throws PigpioException {
+        int result = 0;
+        int sent = 0;
+        synchronized (rf24) {
+            rf24.readRegister(RF24.TX_ADDR, unicastAddress);
+            rf24.writeRegister(RF24.TX_ADDR, groupAddress);
+            try {
+                for (int i = 0; i <= repeats && result == 0; i++) {
+                    result = rf24.write(data, true);
+                    if (result == 0)
+                        sent++;
+                }
+            } finally {
+                rf24.writeRegister(RF24.TX_ADDR, unicastAddress);
+            }
+        }
+        synchronized (this) {
+            frames++;
+            transmissions += sent;
+        }
+        return result;
+    }
+
+    /**
+     * @return group address (LSB first)
+     */
+    public byte[] getGroupAddress() {
+        return groupAddress.clone();
+    }
+
+    /**
+     * @return number of frames sent
+     */
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return number of transmissions, including repeats
+     */
+    public synchronized long getTransmissions() {
+        return transmissions;
+    }
+}
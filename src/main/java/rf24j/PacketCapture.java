@@ -0,0 +1,223 @@
+package rf24j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Capture of sent and received frames into memory-mapped ring file (see RF24.setCapture).<br/>
+ * Recording a frame means copying it into mapped memory, no system call is made and nothing
+ * is allocated. When the ring is full, the oldest records are overwritten.<br/>
+ * <br/>
+ * File format (little endian):
+ * <pre>
+ * header  32 bytes: magic "RF2C" (int), version (short), record size (short), capacity (int),
+ *                   reserved (int), number of records ever written (long), reserved (long)
+ * record  48 bytes: System.nanoTime() (long), direction (byte), pipe (byte), STATUS (byte),
+ *                   payload length (byte), write result (byte), reserved (3 bytes), payload (32 bytes)
+ * </pre>
+ * Record at position (n % capacity) is the n-th record written.<br/>
+ * <br/>
+ * File is written by one process and is meant to be read (see Reader) once the capture was
+ * closed, or the writing process stopped or crashed. Reading it while it is written is not
+ * supported - stores into mapped memory are not ordered for another process (count may be seen
+ * before the record it counts) and the ring may overwrite records being read.
+ */
+public class PacketCapture implements Closeable {
+    public static final int TX = 0;
+    public static final int RX = 1;
+
+    static final int MAGIC = 0x43324652;  // "RF2C"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 48;
+    static final int PAYLOAD_OFFSET = 16;
+    static final int COUNT_OFFSET = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private long count;
+
+    /**
+     * Open capture file. Existing file with the same capacity is appended to, otherwise it is recreated.
+     * @param file capture file
+     * @param capacity max number of records kept (file has to fit in one mapping, up to 2 GB)
+     * @throws IOException
+     */
+    public PacketCapture(File file, int capacity) throws IOException {
+        if (capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        this.capacity = capacity;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean append = channel.size() == HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (append && buffer.getInt(0) == MAGIC && buffer.getShort(4) == VERSION
+                && buffer.getShort(6) == RECORD_SIZE && buffer.getInt(8) == capacity)
+            count = buffer.getLong(COUNT_OFFSET);
+        else {
+            buffer.putInt(0, MAGIC);
+            buffer.putShort(4, (short) VERSION);
+            buffer.putShort(6, (short) RECORD_SIZE);
+            buffer.putInt(8, capacity);
+            buffer.putLong(COUNT_OFFSET, 0);
+            count = 0;
+        }
+    }
+
+    /**
+     * Record a frame
+     * @param direction TX or RX
+     * @param pipe pipe frame was received on (0 for TX)
+     * @param status STATUS register value
+     * @param data payload
+     * @param length payload length
+     * @param result RF24.write result for TX, 0 for RX
+     * @param nanos System.nanoTime() of the event
+     */
+    public synchronized void record(int direction, int pipe, byte status, byte[] data, int length, int result, long nanos) {
+        length = Math.min(length, RxFrame.MAX_PAYLOAD_SIZE);
+        int pos = HEADER_SIZE + (int) (count % capacity) * RECORD_SIZE;
+        buffer.putLong(pos, nanos);
+        buffer.put(pos + 8, (byte) direction);
+        buffer.put(pos + 9, (byte) pipe);
+        buffer.put(pos + 10, status);
+        buffer.put(pos + 11, (byte) length);
+        buffer.put(pos + 12, (byte) result);
+        for (int i = 0; i < length; i++)
+            buffer.put(pos + PAYLOAD_OFFSET + i, data[i]);
+
+        // count is updated last, so file left by a crashed process does not count incomplete record
+        count++;
+        buffer.putLong(COUNT_OFFSET, count);
+    }
+
+    /**
+     * @return number of records written since the file was created
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Flush mapped memory to disk
+     */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * One record of capture file
+     */
+    public static class Record {
+        long nanos;
+        int direction;
+        int pipe;
+        byte status;
+        int result;
+        final byte[] data = new byte[RxFrame.MAX_PAYLOAD_SIZE];
+        int length;
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int getDirection() {
+            return direction;
+        }
+
+        public int getPipe() {
+            return pipe;
+        }
+
+        public byte getStatus() {
+            return status;
+        }
+
+        public int getResult() {
+            return result;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Sequential reader of capture file, oldest record first. File must not be written meanwhile
+     * (see PacketCapture).
+     */
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private long next;
+        private final long end;
+
+        /**
+         * @param file capture file
+         * @throws IOException if file is not a capture file
+         */
+        public Reader(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getShort(6) != RECORD_SIZE) {
+                channel.close();
+                throw new IOException("Not a capture file: " + file);
+            }
+            capacity = buffer.getInt(8);
+            end = buffer.getLong(COUNT_OFFSET);
+            next = Math.max(0, end - capacity);
+        }
+
+        /**
+         * @return number of records available
+         */
+        public long size() {
+            return end - Math.max(0, end - capacity);
+        }
+
+        /**
+         * Read next record
+         * @param record record to fill
+         * @return false if there are no more records
+         */
+        public boolean next(Record record) {
+            if (next >= end)
+                return false;
+            int pos = HEADER_SIZE + (int) (next % capacity) * RECORD_SIZE;
+            record.nanos = buffer.getLong(pos);
+            record.direction = buffer.get(pos + 8);
+            record.pipe = buffer.get(pos + 9);
+            record.status = buffer.get(pos + 10);
+            record.length = buffer.get(pos + 11) & 0xFF;
+            record.result = buffer.get(pos + 12);
+            for (int i = 0; i < record.length; i++)
+                record.data[i] = buffer.get(pos + PAYLOAD_OFFSET + i);
+            next++;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
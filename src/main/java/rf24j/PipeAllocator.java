@@ -0,0 +1,413 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives from more nodes than the chip has pipes by rotating node addresses through pipes 1-5.<br/>
+ * Pipes 2-5 share all address bytes but the first one (LSB) with pipe 1, so nodes which can be
+ * received at the same time have to share the upper bytes (prefix). Registered nodes are grouped by
+ * prefix and the pipes are loaded with up to 5 nodes of one group at a time (a window). Pipe 0 is
+ * left to acknowledgements of frames written by the gateway (see RF24.openWritingPipe).<br/>
+ * <br/>
+ * Window is switched on a schedule (see start) or on demand (see select), e.g. right before the
+ * gateway polls a node. Only registers which differ from what is already in the chip are written -
+ * one byte per pipe 2-5, full address only when pipe 1 changes. Frames waiting in RX FIFO are read
+ * out before the addresses change, so their pipe still identifies the right node.<br/>
+ * Node is reachable when a frame from it was received (see heard) or a frame to it was acknowledged
+ * within given time.
+ */
+public class PipeAllocator {
+    /**
+     * Number of pipes used for nodes (1-5)
+     */
+    public static final int PIPES = 5;
+
+    private static class Node {
+        final byte[] address;
+        final long prefix;
+        int pipe = -1;
+        long lastHeard;
+        boolean heard = false;
+
+        Node(byte[] address, long prefix) {
+            this.address = address;
+            this.prefix = prefix;
+        }
+    }
+
+    private final RF24 rf24;
+    private final FrameSink sink;
+
+    private final Map<Long, Node> nodes = new HashMap<>();
+    private final List<Node> order = new ArrayList<>();  // grouped by prefix
+    private int cursor = 0;
+
+    private final Node[] pipes = new Node[PIPES + 1];
+    private byte[] pipe1Address;                          // as written to the chip, null if unknown
+    private final int[] pipeLsb = new int[PIPES + 1];    // as written to the chip, -1 if unknown
+    private final boolean[] payloadWidthSet = new boolean[PIPES + 1];
+    private int enabled = -1;                             // EN_RXADDR as written to the chip, -1 if unknown
+
+    private ScheduledExecutorService timer;
+
+    private long rotations = 0;
+    private long evictions = 0;
+    private long registerWrites = 0;
+
+    /**
+     * @param rf24 initialized radio, addresses of its pipes 1-5 are managed by this allocator
+     * @param sink receiver of frames read out of RX FIFO before addresses are changed, null to leave
+     *             them in FIFO (their pipe may then be attributed to a wrong node)
+     */
+    public PipeAllocator(RF24 rf24, FrameSink sink) {
+        this.rf24 = rf24;
+        this.sink = sink;
+        Arrays.fill(pipeLsb, -1);
+    }
+
+    /**
+     * Add node to the population served by the radio
+     * @param address node address (LSB first), all nodes have to use address width of the radio
+     */
+    public synchronized void register(byte[] address) {
+        long key = key(address, 0);
+        if (nodes.containsKey(key))
+            return;
+        Node node = new Node(address.clone(), key(address, 1));
+        nodes.put(key, node);
+
+        // keep nodes with the same prefix next to each other
+        int i = order.size();
+        for (int j = order.size() - 1; j >= 0; j--)
+            if (order.get(j).prefix == node.prefix) {
+                i = j + 1;
+                break;
+            }
+        order.add(i, node);
+        if (i < cursor)
+            cursor++;
+    }
+
+    /**
+     * Remove node. Its pipe stays open until the window is switched.
+     * @param address node address (LSB first)
+     */
+    public synchronized void unregister(byte[] address) {
+        Node node = nodes.remove(key(address, 0));
+        if (node == null)
+            return;
+        int i = order.indexOf(node);
+        order.remove(i);
+        if (i < cursor)
+            cursor--;
+        if (node.pipe > 0)
+            pipes[node.pipe] = null;
+    }
+
+    /**
+     * Load next window of nodes into the pipes. Windows take turns, group with more than 5 nodes
+     * is served in several windows.
+     * @return number of nodes in the new window
+     * @throws PigpioException
+     */
+    public synchronized int rotate() throws PigpioException {
+        if (order.isEmpty())
+            return 0;
+        if (cursor >= order.size())
+            cursor = 0;
+
+        Node[] window = new Node[PIPES];
+        int n = 0;
+        long prefix = order.get(cursor).prefix;
+        while (n < PIPES && cursor < order.size() && order.get(cursor).prefix == prefix)
+            window[n++] = order.get(cursor++);
+        apply(window, n);
+        rotations++;
+        return n;
+    }
+
+    /**
+     * Make sure the node can be received now. If its group is loaded and there is no free pipe,
+     * the node heard least recently is evicted, otherwise the window is switched to the node's group.
+     * @param address node address (LSB first), has to be registered
+     * @return pipe the node is received on (1-5)
+     * @throws PigpioException
+     */
+    public synchronized int select(byte[] address) throws PigpioException {
+        Node node = nodes.get(key(address, 0));
+        if (node == null)
+            throw new RF24Exception("Node not registered");
+        if (node.pipe > 0)
+            return node.pipe;
+
+        Node[] window = new Node[PIPES];
+        int n = 0;
+        Node loaded = null;
+        for (int p = 1; p <= PIPES; p++)
+            if (pipes[p] != null) {
+                loaded = pipes[p];
+                window[n++] = pipes[p];
+            }
+
+        if (loaded != null && loaded.prefix == node.prefix) {
+            if (n == PIPES) {
+                int victim = 0;
+                for (int i = 1; i < n; i++)
+                    if (older(window[i], window[victim]))
+                        victim = i;
+                window[victim] = node;
+                evictions++;
+            } else
+                window[n++] = node;
+        } else {
+            // switch to the node's group, fill the rest with its neighbours
+            window[0] = node;
+            n = 1;
+            for (int i = 0; i < order.size() && n < PIPES; i++) {
+                Node other = order.get(i);
+                if (other.prefix == node.prefix && other != node)
+                    window[n++] = other;
+            }
+            rotations++;
+        }
+        apply(window, n);
+        return node.pipe;
+    }
+
+    private static boolean older(Node a, Node b) {
+        if (a.heard != b.heard)
+            return !a.heard;
+        return a.lastHeard - b.lastHeard < 0;
+    }
+
+    /**
+     * Program pipes with the window. Nodes staying in the window keep their pipe.
+     */
+    private void apply(Node[] window, int n) throws PigpioException {
+        Node[] next = new Node[PIPES + 1];
+        boolean[] placed = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            int p = window[i].pipe;
+            if (p > 0 && pipes[p] == window[i]) {
+                next[p] = window[i];
+                placed[i] = true;
+            }
+        }
+        int p = 1;
+        for (int i = 0; i < n; i++) {
+            if (placed[i])
+                continue;
+            while (next[p] != null)
+                p++;
+            next[p] = window[i];
+        }
+        if (next[1] == null) {
+            // pipe 1 carries the prefix, it must hold a node whenever other pipes do
+            for (int q = 2; q <= PIPES; q++)
+                if (next[q] != null) {
+                    next[1] = next[q];
+                    next[q] = null;
+                    break;
+                }
+        }
+
+        synchronized (rf24) {
+            boolean listening = rf24.getState() == RadioState.RX;
+            if (listening)
+                rf24.stopListening();
+            if (sink != null)
+                rf24.drainRx(frame -> {
+                    heard(frame);
+                    sink.accept(frame);
+                }, Integer.MAX_VALUE);
+
+            if (enabled < 0)
+                enabled = rf24.readByteRegister(RF24.EN_RXADDR_REGISTER) & 0xFF;
+            int mask = enabled & 1;  // pipe 0 is not managed here
+            for (int q = 1; q <= PIPES; q++)
+                if (pipes[q] != null)
+                    pipes[q].pipe = -1;
+            for (int q = 1; q <= PIPES; q++) {
+                pipes[q] = next[q];
+                if (next[q] == null)
+                    continue;
+                next[q].pipe = q;
+                mask |= 1 << q;
+
+                byte[] address = next[q].address;
+                if (q == 1) {
+                    if (!Arrays.equals(pipe1Address, address)) {
+                        rf24.writeRegister(RF24.RX_ADDR_P1, address);
+                        pipe1Address = address;
+                        registerWrites++;
+                    }
+                } else if (pipeLsb[q] != (address[0] & 0xFF)) {
+                    rf24.writeRegister(RF24.RX_ADDR_P0 + q, address[0]);
+                    pipeLsb[q] = address[0] & 0xFF;
+                    registerWrites++;
+                }
+                if (!payloadWidthSet[q]) {
+                    rf24.writeRegister(RF24.RX_PW_P0 + q, (byte) rf24.getPayloadSize());
+                    payloadWidthSet[q] = true;
+                    registerWrites++;
+                }
+            }
+            if (mask != enabled) {
+                rf24.writeRegister(RF24.EN_RXADDR_REGISTER, (byte) mask);
+                enabled = mask;
+                registerWrites++;
+            }
+            if (listening)
+                rf24.startListening();
+        }
+    }
+
+    /**
+     * Forget what was written to the chip, e.g. after the radio was reset or recovered.
+     * Next window switch writes all pipe registers again.
+     */
+    public synchronized void invalidate() {
+        pipe1Address = null;
+        Arrays.fill(pipeLsb, -1);
+        Arrays.fill(payloadWidthSet, false);
+        enabled = -1;
+    }
+
+    /**
+     * Start switching windows periodically
+     * @param periodMillis time each window stays loaded
+     */
+    public synchronized void start(long periodMillis) {
+        if (timer != null)
+            return;
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "RF24 pipe rotation");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                rotate();
+            } catch (PigpioException e) {
+                // next rotation tries again
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop periodic switching. Current window stays loaded.
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    /**
+     * Record frame received from a node. Should be called for every frame read from the radio.
+     * @param frame received frame
+     * @return address of the node which sent the frame (not a copy), null if the pipe is not managed here
+     */
+    public synchronized byte[] heard(RxFrame frame) {
+        if (frame.pipe < 1 || frame.pipe > PIPES || pipes[frame.pipe] == null)
+            return null;
+        Node node = pipes[frame.pipe];
+        node.heard = true;
+        node.lastHeard = System.nanoTime();
+        return node.address;
+    }
+
+    /**
+     * Record that node acknowledged a frame written to it.
+     * @param address node address (LSB first)
+     */
+    public synchronized void heard(byte[] address) {
+        Node node = nodes.get(key(address, 0));
+        if (node != null) {
+            node.heard = true;
+            node.lastHeard = System.nanoTime();
+        }
+    }
+
+    /**
+     * @param address node address (LSB first)
+     * @param timeoutMillis max time since the node was heard
+     * @return true if the node was heard within given time
+     */
+    public synchronized boolean isReachable(byte[] address, long timeoutMillis) {
+        Node node = nodes.get(key(address, 0));
+        return node != null && reachable(node, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    /**
+     * @param timeoutMillis max time since a node was heard
+     * @return addresses of nodes heard within given time
+     */
+    public synchronized List<byte[]> getReachable(long timeoutMillis) {
+        long since = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<byte[]> result = new ArrayList<>();
+        for (Node node : order)
+            if (reachable(node, since))
+                result.add(node.address.clone());
+        return result;
+    }
+
+    private static boolean reachable(Node node, long since) {
+        return node.heard && node.lastHeard - since >= 0;
+    }
+
+    /**
+     * @param pipe pipe number (1-5)
+     * @return address of node loaded in the pipe, null if the pipe is free
+     */
+    public synchronized byte[] getAddress(int pipe) {
+        if (pipe < 1 || pipe > PIPES || pipes[pipe] == null)
+            return null;
+        return pipes[pipe].address.clone();
+    }
+
+    /**
+     * @return number of registered nodes
+     */
+    public synchronized int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * @return number of window switches
+     */
+    public synchronized long getRotations() {
+        return rotations;
+    }
+
+    /**
+     * @return number of nodes evicted from their pipe to make room for a selected node
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of register writes made to load the pipes
+     */
+    public synchronized long getRegisterWrites() {
+        return registerWrites;
+    }
+
+    private static long key(byte[] address, int from) {
+        long key = 0;
+        for (int i = from; i < address.length && i < from + 8; i++)
+            key |= (address[i] & 0xFFL) << (8 * (i - from));
+        return key;
+    }
+}
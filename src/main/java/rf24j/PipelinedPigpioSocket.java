@@ -0,0 +1,510 @@
+package rf24j;
+
+import jpigpio.Alert;
+import jpigpio.GPIOListener;
+import jpigpio.NotImplementedException;
+import jpigpio.PigpioException;
+import jpigpio.Pulse;
+import jpigpio.impl.CommonPigpio;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connection to pigpiod which sends batches of commands in a single socket write.<br/>
+ * Every command of pigpiod socket interface waits for its response, so over network each gpioWrite,
+ * spiXfer and gpioDelay costs a round trip - one register access of RF24 (CSN low, command, data,
+ * CSN high) takes four. Between beginBatch and endBatch commands are only queued, endBatch
+ * sends them together and reads the responses in order. RF24 batches every SPI transaction, so register
+ * access over network costs one round trip. pigpiod executes commands of one connection in order,
+ * so the delay RF24 puts between SPI transactions (see RF24.setSpiDelay) is queued into the batch
+ * (see queueDelay) and done by the daemon.<br/>
+ * <br/>
+ * Only commands used by RF24 are implemented (gpio mode, pull-up, read, write, trigger, delay, tick
+ * and SPI), others throw NotImplementedException. Alerts are not supported - use RF24 without IRQ pin.
+ * Outside of a batch every command is sent right away.
+ */
+public class PipelinedPigpioSocket extends CommonPigpio implements CommandBatch {
+    // pigpiod socket commands
+    static final int CMD_MODES = 0;
+    static final int CMD_MODEG = 1;
+    static final int CMD_PUD = 2;
+    static final int CMD_READ = 3;
+    static final int CMD_WRITE = 4;
+    static final int CMD_TICK = 16;
+    static final int CMD_TRIG = 37;
+    static final int CMD_MICS = 46;
+    static final int CMD_SPIO = 71;
+    static final int CMD_SPIC = 72;
+    static final int CMD_SPIX = 75;
+
+    static final int MESSAGE_SIZE = 16;
+    private static final int MAX_PENDING = 64;
+    private static final int MAX_DELAY = 1000000;  // MICS limit of pigpiod
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final DataInputStream in;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final ByteBuffer request = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer response = ByteBuffer.allocate(MESSAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final int[] pendingCmd = new int[MAX_PENDING];
+    private final byte[][] pendingRx = new byte[MAX_PENDING][];
+    private int pending = 0;
+    private int batchDepth = 0;
+
+    private long roundTrips = 0;
+    private long commands = 0;
+
+    /**
+     * Connect to pigpiod
+     * @param host host running pigpiod
+     * @param port pigpiod port, usually 8888
+     * @throws PigpioException if connection failed
+     */
+    public PipelinedPigpioSocket(String host, int port) throws PigpioException {
+        try {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            out = socket.getOutputStream();
+            in = new DataInputStream(socket.getInputStream());
+        } catch (IOException e) {
+            throw new RF24Exception("Could not connect to pigpiod at " + host + ":" + port, e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Batching
+
+    @Override
+    public void beginBatch() {
+        lock.lock();
+        batchDepth++;
+    }
+
+    @Override
+    public void endBatch() throws PigpioException {
+        try {
+            if (--batchDepth == 0)
+                flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue delay done by pigpiod (MICS command)
+     */
+    @Override
+    public void queueDelay(long micros) throws PigpioException {
+        gpioDelay(micros);
+    }
+
+    /**
+     * Queue command, send it right away when not in batch
+     * @param rx array receiving data returned by command (SPIX), null if none
+     * @return result of command, 0 when command was queued in batch
+     */
+    private int command(int cmd, int p1, int p2, byte[] ext, int extLength, byte[] rx) throws PigpioException {
+        lock.lock();
+        try {
+            if (pending == MAX_PENDING || request.remaining() < MESSAGE_SIZE + extLength)
+                flush();
+            request.putInt(cmd);
+            request.putInt(p1);
+            request.putInt(p2);
+            request.putInt(extLength);
+            if (extLength > 0)
+                request.put(ext, 0, extLength);
+            pendingCmd[pending] = cmd;
+            pendingRx[pending] = rx;
+            pending++;
+            commands++;
+            return batchDepth == 0 ? flush() : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int command(int cmd, int p1, int p2) throws PigpioException {
+        return command(cmd, p1, p2, null, 0, null);
+    }
+
+    private int command(int cmd, int p1, int p2, int ext) throws PigpioException {
+        byte[] e = {(byte) ext, (byte) (ext >> 8), (byte) (ext >> 16), (byte) (ext >> 24)};
+        return command(cmd, p1, p2, e, 4, null);
+    }
+
+    /**
+     * Send queued commands and read their responses
+     * @return result of the last command
+     */
+    private int flush() throws PigpioException {
+        if (pending == 0)
+            return 0;
+        int result = 0;
+        int error = 0;
+        try {
+            out.write(request.array(), 0, request.position());
+            out.flush();
+            roundTrips++;
+            for (int i = 0; i < pending; i++) {
+                in.readFully(response.array(), 0, MESSAGE_SIZE);
+                result = response.getInt(12);
+                if (result < 0 && pendingCmd[i] != CMD_TICK) {  // tick is unsigned
+                    if (error == 0)
+                        error = result;
+                } else if (pendingCmd[i] == CMD_SPIX && result > 0) {
+                    byte[] rx = pendingRx[i];
+                    int n = Math.min(result, rx.length);
+                    in.readFully(rx, 0, n);
+                    if (result > n)
+                        in.skipBytes(result - n);
+                }
+                pendingRx[i] = null;
+            }
+        } catch (IOException e) {
+            throw new RF24Exception("pigpiod connection failed", e);
+        } finally {
+            request.clear();
+            pending = 0;
+        }
+        if (error != 0)
+            throw new PigpioException(error);
+        return result;
+    }
+
+    /**
+     * @return number of socket round trips made
+     */
+    public long getRoundTrips() {
+        lock.lock();
+        try {
+            return roundTrips;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of commands sent
+     */
+    public long getCommands() {
+        lock.lock();
+        try {
+            return commands;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // GPIO
+
+    @Override
+    public void gpioInitialize() throws PigpioException {
+    }
+
+    @Override
+    public void gpioTerminate() throws PigpioException {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            throw new RF24Exception("Could not close pigpiod connection", e);
+        }
+    }
+
+    @Override
+    public void gpioSetMode(int pin, int mode) throws PigpioException {
+        command(CMD_MODES, pin, mode);
+    }
+
+    @Override
+    public int gpioGetMode(int pin) throws PigpioException {
+        return command(CMD_MODEG, pin, 0);
+    }
+
+    @Override
+    public void gpioSetPullUpDown(int pin, int pud) throws PigpioException {
+        command(CMD_PUD, pin, pud);
+    }
+
+    @Override
+    public boolean gpioRead(int pin) throws PigpioException {
+        return command(CMD_READ, pin, 0) == 1;
+    }
+
+    @Override
+    public void gpioWrite(int pin, boolean value) throws PigpioException {
+        command(CMD_WRITE, pin, value ? 1 : 0);
+    }
+
+    @Override
+    public void gpioTrigger(int pin, long pulseLen, boolean level) throws PigpioException {
+        command(CMD_TRIG, pin, (int) pulseLen, level ? 1 : 0);
+    }
+
+    @Override
+    public void gpioDelay(long delay) throws PigpioException {
+        while (delay > 0) {
+            int d = (int) Math.min(delay, MAX_DELAY);
+            command(CMD_MICS, d, 0);
+            delay -= d;
+        }
+    }
+
+    @Override
+    public long gpioTick() throws PigpioException {
+        return command(CMD_TICK, 0, 0) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public long getCurrentTick() throws PigpioException {
+        return gpioTick();
+    }
+
+    @Override
+    public void gpioSetAlertFunc(int pin, Alert alert) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // SPI
+
+    @Override
+    public int spiOpen(int channel, int baudRate, int flags) throws PigpioException {
+        return command(CMD_SPIO, channel, baudRate, flags);
+    }
+
+    @Override
+    public void spiClose(int handle) throws PigpioException {
+        command(CMD_SPIC, handle, 0);
+    }
+
+    @Override
+    public int spiRead(int handle, byte[] data) throws PigpioException {
+        return spiXfer(handle, data, data);
+    }
+
+    @Override
+    public int spiWrite(int handle, byte[] data) throws PigpioException {
+        return spiXfer(handle, data, new byte[data.length]);
+    }
+
+    /**
+     * Transfer data. In batch rxData is filled by endBatch and the method returns 0.
+     */
+    @Override
+    public int spiXfer(int handle, byte[] txData, byte[] rxData) throws PigpioException {
+        return command(CMD_SPIX, handle, 0, txData, txData.length, rxData);
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Not implemented
+
+    @Override
+    public void gpioServo(int gpio, int pulseWidth) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void setServoPulseWidth(int gpio, int pulseWidth) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int getServoPulseWidth(int gpio) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int notifyOpen() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void notifyBegin(int handle, int bits) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void notifyPause(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void notifyClose(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void setWatchdog(int gpio, int timeout) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void waveClear() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveAddGeneric(ArrayList<Pulse> pulses) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveAddSerial(int userGpio, int baud, byte[] data, int offset, int bbBits, int bbStop) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void waveAddNew() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean waveTxBusy() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveTxStop() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveCreate() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void waveDelete(int waveId) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveSendOnce(int waveId) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveSendRepeat(int waveId) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int i2cOpen(int i2cBus, int i2cAddr) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void i2cClose(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int i2cReadDevice(int handle, byte[] data) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void i2cWriteDevice(int handle, byte[] data) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int serialOpen(String tty, int baudRate, int flags) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void serialClose(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public byte serialReadByte(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void serialWriteByte(int handle, byte data) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public byte[] serialRead(int handle, int count) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void serialWrite(int handle, byte[] data) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int serialDataAvailable(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void setPWMDutycycle(int gpio, int dutycycle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int getPWMDutycycle(int gpio) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void setPWMRange(int gpio, int range) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int getPWMRange(int gpio) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int getPWMRealRange(int gpio) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int setPWMFrequency(int gpio, int frequency) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int getPWMFrequency(int gpio) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void setDebug(boolean flag) throws PigpioException {
+    }
+
+    @Override
+    public long gpioxPulseAndWait(int gpio, int pulseHoldTime, long pulseLength, long timeout, boolean pulseLevel) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void addCallback(GPIOListener listener) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void removeCallback(GPIOListener listener) throws PigpioException {
+        throw new NotImplementedException();
+    }
+}
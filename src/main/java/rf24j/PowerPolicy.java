@@ -0,0 +1,17 @@
+package rf24j;
+
+/**
+ * What to do with the chip after a packet was sent.
+ */
+public enum PowerPolicy {
+    /**
+     * Stay in standby, so the next packet can be sent or listening restarted without
+     * the 1.5ms power-up delay.
+     */
+    LATENCY,
+
+    /**
+     * Enter Power-down mode once the chip was idle for configured time (a second by default).
+     */
+    ENERGY
+}
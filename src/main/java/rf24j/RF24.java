@@ -5,6 +5,11 @@ import jpigpio.PigpioException;
 import jpigpio.WrongModeException;
 
 import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Java implementation of Arduino RF24 library (https://maniacbug.github.io/RF24/) for Raspberry Pi.
@@ -27,10 +32,109 @@ public class RF24 {
 
     private int handle;
 
+    /**
+     * Last level written to CE pin
+     */
+    private boolean ceState = false;
+
+    /**
+     * One byte scratch buffer for register writes on fast paths
+     */
+    private final byte[] regBuff = new byte[1];
+
+    /**
+     * Mode the chip is in, null if unknown
+     */
+    private RadioState state = null;
+
+    /**
+     * Last value written to CONFIG register, -1 if unknown
+     */
+    private int config = -1;
+
+    /**
+     * STATUS register value returned by the last SPI transaction
+     */
+    private byte status = 0;
+
+    /**
+     * GPIO connected to IRQ pin of the chip, -1 if not used
+     */
+    private int irqPin = -1;
+
+    /**
+     * pigpio tick and System.nanoTime() of the last IRQ falling edge, irqNanos is 0 if no IRQ is pending
+     */
+    private volatile long irqTick = -1;
+    private volatile long irqNanos = 0;
+
+    /**
+     * Thread parked in transceive until IRQ comes, null if there is none
+     */
+    private volatile Thread irqWaiter;
+
+    private final byte[] cmdBuff = new byte[1];
+
+    /**
+     * Payload buffers indexed by payload size, SPI transfer needs array of exact size
+     */
+    private final byte[][] payloadBuffs = new byte[RxFrame.MAX_PAYLOAD_SIZE + 1][];
+    private final RxFrame drainFrame = new RxFrame();
+    private final byte[][] snapshotBuffs = new byte[RegisterSnapshot.REGISTERS][1];
+    private final byte[] snapshotCmd = new byte[1];  // command of the first read, STATUS is clocked out into it
+
+    private PacketCapture capture;
+
+    /**
+     * Default idle time in milliseconds before the chip is powered down (ENERGY policy)
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 1000;
+
+    /**
+     * Timer powering down idle chips, shared by all instances
+     */
+    private static ScheduledExecutorService idleTimer;
+
+    private PowerPolicy powerPolicy = PowerPolicy.ENERGY;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long lastActivity = 0;
+    private ScheduledFuture<?> idleTask;
+
     private boolean dynPayloadEnabled = false;
+    private boolean dynAckEnabled = false;
     private int payloadSize = 32;
     private final int MAX_PAYLOAD_SIZE		= 32;
 
+    /**
+     * Delay after each SPI transaction in microseconds. See note in nrfSpiWrite.
+     */
+    private long spiDelay = 1000;
+
+    /**
+     * Last channel written to RF_CH, -1 if unknown
+     */
+    private int channel = -1;
+
+    /**
+     * Auto retransmit count (ARC) last written to SETUP_RETR, -1 if unknown
+     */
+    private int retries = -1;
+
+    /**
+     * Last address written to TX_ADDR, null if unknown
+     */
+    private byte[] txAddress;
+
+    /**
+     * Address given to openReadingPipe for pipe 0, null if pipe 0 is not used for reading.
+     * RX_ADDR_P0 holds the writing address (for acknowledgements) while sending and this one while
+     * listening, pipe0Writing tells which of them is in the register.
+     */
+    private byte[] pipe0Address;
+    private boolean pipe0Writing = false;
+    private int spiChannel = JPigpio.PI_SPI_CHANNEL0;
+    private int txTimeoutStreak = 0;
+
 
     /* Registers */
     public static final int CONFIG_REGISTER		= 0x00;
@@ -123,6 +227,7 @@ public class RF24 {
     private final int R_RX_PL_WID	= 0x60;
     private final int R_RX_PAYLOAD	= 0x61;
     private final int W_TX_PAYLOAD	= 0xA0;
+    private final int W_TX_PAYLOAD_NOACK = 0xB0;
     private final int FLUSH_TX		= 0xE1;
     private final int FLUSH_RX		= 0xE2;
     private final int REUSE_TX_PL	= 0xE3;
@@ -157,8 +262,198 @@ public class RF24 {
      * @throws PigpioException
      */
     public synchronized boolean init(int cePin, int csnPin) throws PigpioException {
+        return init(cePin, csnPin, JPigpio.PI_SPI_CHANNEL0);
+    }
+
+    /**
+     * Initialize nRF24 chip connected to given SPI channel and set the defaults
+     * @param cePin gpio pin connected to CE
+     * @param csnPin gpio pin connected to CSN
+     * @param spiChannel SPI channel the chip is connected to (JPigpio.PI_SPI_CHANNEL0 or PI_SPI_CHANNEL1)
+     * @return true if initialized successfully
+     * @throws PigpioException
+     */
+    public synchronized boolean init(int cePin, int csnPin, int spiChannel) throws PigpioException {
+        if (!open(cePin, csnPin, spiChannel))
+            return false;
+
+        reset();
+
+        // get status of dynamic payload
+        byte feature = readByteRegister(FEATURE);
+        dynPayloadEnabled = ((feature & (byte)1<<EN_DPL) == (byte)1<<EN_DPL);
+        dynAckEnabled = (feature & BV(EN_DYN_ACK)) != 0;
+
+        // Start receiver
+        flushRx();
+        startListening();
+
+        return true;
+
+    } // End of init
+
+    /**
+     * Initialize nRF24 chip without reset (warm start).<br/>
+     * Register map is read and compared with the profile (snapshot taken after the radio was
+     * configured, see snapshot and RegisterSnapshot.save), only registers which differ are written.
+     * Frames waiting in RX FIFO are kept, unless configuration had to be changed. TX FIFO is flushed
+     * only if it is not empty. When the chip still runs with the profile (e.g. service restart),
+     * it takes a few SPI transactions and no frame is lost.<br/>
+     * Power state is taken from the profile - radio is listening if it was listening when the profile
+     * was taken, otherwise it is left in standby (or powered down).<br/>
+     * Writing pipe is taken from the profile. Reading pipe 0 is known only if the profile was taken
+     * while its address was in RX_ADDR_P0, i.e. while listening - otherwise openReadingPipe(0, ...)
+     * has to be called again.
+     * @param cePin gpio pin connected to CE
+     * @param csnPin gpio pin connected to CSN
+     * @param spiChannel SPI channel the chip is connected to (JPigpio.PI_SPI_CHANNEL0 or PI_SPI_CHANNEL1)
+     * @param profile expected configuration
+     * @return true if initialized successfully
+     * @throws PigpioException
+     */
+    public synchronized boolean init(int cePin, int csnPin, int spiChannel, RegisterSnapshot profile) throws PigpioException {
+        if (!open(cePin, csnPin, spiChannel))
+            return false;
+
+        RegisterSnapshot current = snapshot(new RegisterSnapshot());
+        byte[] have = current.regs;
+        byte[] want = profile.regs;
+        config = have[CONFIG_REGISTER] & 0xFF;
+        channel = have[RF_CH_REGISTER] & 0x7F;
+        state = (config & BV(PWR_UP)) != 0 ? RadioState.STANDBY_I : RadioState.POWER_DOWN;
+        int writes = 0;
+
+        for (int reg = EN_AA_REGISTER; reg <= FEATURE; reg++) {
+            switch (reg) {
+                case STATUS_REGISTER:
+                case OBSERVE_TX:
+                case RPD:
+                case FIFO_STATUS_REGISTER:
+                case 0x18:
+                case 0x19:
+                case 0x1A:
+                case 0x1B:
+                    continue;  // not configuration
+                case RX_ADDR_P0:
+                case RX_ADDR_P1:
+                case TX_ADDR:
+                    int index = reg == TX_ADDR ? 6 : reg - RX_ADDR_P0;
+                    if (!Arrays.equals(current.addresses[index], profile.addresses[index])) {
+                        writeRegister(reg, profile.addresses[index]);
+                        writes++;
+                    }
+                    continue;
+                case RX_ADDR_P2:
+                case RX_ADDR_P3:
+                case RX_ADDR_P4:
+                case RX_ADDR_P5:
+                    if (current.addresses[reg - RX_ADDR_P0][0] != profile.addresses[reg - RX_ADDR_P0][0]) {
+                        writeRegister(reg, profile.addresses[reg - RX_ADDR_P0][0]);
+                        writes++;
+                    }
+                    continue;
+            }
+            if (have[reg] != want[reg]) {
+                writeRegister(reg, want[reg]);
+                writes++;
+            }
+        }
+
+        // address registers which already matched were not written, so they are not tracked yet
+        int width = profile.getAddressWidth();
+        txAddress = Arrays.copyOf(profile.addresses[6], width);
+        byte[] p0 = Arrays.copyOf(profile.addresses[0], width);
+        // RX_ADDR_P0 equal to TX_ADDR is the address openWritingPipe put there, not a reading pipe
+        pipe0Address = (want[EN_RXADDR_REGISTER] & BV(0)) != 0 && !Arrays.equals(p0, txAddress) ? p0 : null;
+        pipe0Writing = false;
+
+        // CONFIG without power bits, those are set below
+        byte mode = (byte)(BV(PWR_UP) | BV(PRIM_RX));
+        byte cfg = (byte)((want[CONFIG_REGISTER] & ~mode) | (config & mode));
+        if (cfg != (byte) config) {
+            writeConfig(cfg);
+            writes++;
+        }
+
+        if ((have[FIFO_STATUS_REGISTER] & BV(TX_EMPTY)) == 0)
+            flushTx();
+        if ((have[FIFO_STATUS_REGISTER] & BV(RX_EMPTY)) == 0 && writes > 0)
+            flushRx();  // frames received with different configuration
+        if ((status & (BV(RX_DR) | BV(TX_DS) | BV(MAX_RT))) != 0)
+            writeRegister(STATUS_REGISTER, (byte)(BV(RX_DR) | BV(TX_DS) | BV(MAX_RT)));  // MAX_RT would block sending
+
+        dynPayloadEnabled = (want[FEATURE] & BV(EN_DPL)) != 0;
+        dynAckEnabled = (want[FEATURE] & BV(EN_DYN_ACK)) != 0;
+        if (want[RX_PW_P0] != 0)
+            payloadSize = want[RX_PW_P0];
+        else if (want[RX_PW_P1] != 0)
+            payloadSize = want[RX_PW_P1];
+
+        if ((want[CONFIG_REGISTER] & mode) == mode)
+            startListening();
+        else if ((want[CONFIG_REGISTER] & BV(PWR_UP)) == 0)
+            powerDown();
+        else
+            powerUp();
+
+        return true;
+    }
+
+    /**
+     * Cheap health check - one SPI transaction.<br/>
+     * CONFIG is read back and compared with the value last written by the driver (it changes after
+     * brown-out, when the chip resets itself) and STATUS sent with the command is checked for
+     * values the chip never sends (bit 7 set, pipe number 6), which is what a disconnected or
+     * wedged SPI bus returns.
+     * @return true if the chip looks healthy
+     * @throws PigpioException
+     */
+    public synchronized boolean checkHealth() throws PigpioException {
+        regBuff[0] = NOP;
+        nrfSpiWrite(R_REGISTER | CONFIG_REGISTER, regBuff);
+        if ((status & 0x80) != 0 || ((status >> RX_P_NO) & 0b111) == 0b110)
+            return false;
+        return config < 0 || (regBuff[0] & 0xFF) == config;
+    }
+
+    /**
+     * @return number of consecutive write timeouts (write returned 2)
+     */
+    public synchronized int getTxTimeoutStreak() {
+        return txTimeoutStreak;
+    }
+
+    /**
+     * Recover chip after failure - SPI handle is reopened and configuration from profile applied
+     * (see init with profile). Driver forgets everything it knew about the chip state.
+     * @param profile configuration to apply
+     * @return true if chip responds and was configured
+     * @throws PigpioException
+     */
+    public synchronized boolean recover(RegisterSnapshot profile) throws PigpioException {
+        try {
+            pigpio.spiClose(handle);
+        } catch (PigpioException e) {
+            // handle may be gone already
+        }
+        state = null;
+        config = -1;
+        channel = -1;
+        retries = -1;
+        txAddress = null;
+        pipe0Address = null;
+        txTimeoutStreak = 0;
+        return init(cePin, csnPin, spiChannel, profile);
+    }
+
+    /**
+     * Set up pins and SPI and check that the chip responds
+     * @return false if there is no chip
+     */
+    private boolean open(int cePin, int csnPin, int spiChannel) throws PigpioException {
         this.cePin = cePin;
         this.csnPin = csnPin;
+        this.spiChannel = spiChannel;
 
         // set specified pins to Output mode
         pigpio.gpioSetMode(cePin, JPigpio.PI_OUTPUT);
@@ -172,25 +467,12 @@ public class RF24 {
 
         ceLow(); // Set the device to RX
         csnHigh(); // Set Slave Select to off
-        handle = pigpio.spiOpen(JPigpio.PI_SPI_CHANNEL0, JPigpio.PI_SPI_BAUD_500KHZ, 0);
+        handle = pigpio.spiOpen(spiChannel, JPigpio.PI_SPI_BAUD_500KHZ, 0);
 
         byte setupReg = readByteRegister(RF_SETUP);
         // if setup is 0 of 0xff then module does not respond
-        if (setupReg == 0 || setupReg == (byte)0xFF)
-            return false;
-
-        reset();
-
-        // get status of dynamic payload
-        dynPayloadEnabled = ((readByteRegister(FEATURE) & (byte)1<<EN_DPL) == (byte)1<<EN_DPL);
-
-        // Start receiver
-        flushRx();
-        startListening();
-
-        return true;
-
-    } // End of init
+        return setupReg != 0 && setupReg != (byte)0xFF;
+    }
 
     /**
      * Set initial chip parameters
@@ -246,7 +528,12 @@ public class RF24 {
         writeRegister(DYNPD, (byte) 0);
 
         writeRegister(FEATURE, (byte) 0);
+        dynPayloadEnabled = false;
+        dynAckEnabled = false;
+        txAddress = null;
+        pipe0Address = null;
 
+        state = null;
         powerDown();
 
     }
@@ -254,34 +541,48 @@ public class RF24 {
 
     /**
      * Tell NRF24 to start listening. Power up and set to RX Mode.
-     * Flushes both RX and TX FIFOs. Resets STATUS register flags.
+     * Resets STATUS register flags if any is set.
+     * Does nothing if the chip is already listening.
      * @throws PigpioException
      */
     public synchronized void startListening() throws PigpioException {
-        byte confReg = readByteRegister(CONFIG_REGISTER);
-        writeRegister(CONFIG_REGISTER, (byte)(confReg | BV(PWR_UP) | BV(PRIM_RX)) );
-        writeRegister(STATUS_REGISTER, (byte)(BV(RX_DR) | BV(TX_DS) | BV(MAX_RT)) );
+        if (state == RadioState.RX)
+            return;
 
-        //pigpio.gpioDelay(2,JPigpio.PI_MILLISECONDS); // 1.5ms to start
+        if (ceState)
+            ceLow();  // Standby-II => Standby-I, PRIM_RX must not be changed with CE high
+
+        boolean wasDown = (state == RadioState.POWER_DOWN || state == null);
+        writeConfig((byte)(getConfig() | BV(PWR_UP) | BV(PRIM_RX)));
+        if ((status & (BV(RX_DR) | BV(TX_DS) | BV(MAX_RT))) != 0 || state == null)
+            writeRegister(STATUS_REGISTER, (byte)(BV(RX_DR) | BV(TX_DS) | BV(MAX_RT)) );
+
+        if (pipe0Address != null && pipe0Writing) {
+            writeRegister(RX_ADDR_P0, pipe0Address);  // openWritingPipe took pipe 0 for acknowledgements
+            pipe0Writing = false;
+        }
+
+        if (wasDown)
+            delayMicros(1500); // 1.5ms to start from Power-down mode
 
         // Flush buffers
         //flushRx();
         //flushTx();
 
-        // Start listening now
+        // Start listening now, chip settles within 130us by itself
         ceHigh();
-
-        // wait for the radio to come up (130us actually only needed)
-        //pigpio.gpioDelay(200, JPigpio.PI_MICROSECONDS);
+        state = RadioState.RX;
     }
 
     /**
      * Stops receiving. Go from active RX Mode to to Standby-I Mode.
-     * Flushes both RX and TX FIFOs.
      * @throws PigpioException
      */
     public synchronized void stopListening() throws PigpioException {
         ceLow();
+        if (state != RadioState.POWER_DOWN)
+            state = RadioState.STANDBY_I;
+        touch();
         //flushTx();
         //flushRx();
     }
@@ -293,19 +594,71 @@ public class RF24 {
      * @throws PigpioException
      */
     public synchronized void startWrite(byte[] data) throws PigpioException{
+        startWrite(data, false);
+    }
+
+    /**
+     * Send data packet without waiting for the result, optionally without acknowledgement
+     * (see write(byte[], boolean)).
+     * @param data data to be sent
+     * @param multicast true to send packet without acknowledgement
+     * @throws PigpioException
+     */
+    public synchronized void startWrite(byte[] data, boolean multicast) throws PigpioException{
+        if (multicast && !dynAckEnabled)
+            enableDynamicAck();
+        int command = multicast ? W_TX_PAYLOAD_NOACK : W_TX_PAYLOAD;
+        if (!multicast && pipe0Address != null && !pipe0Writing && txAddress != null) {
+            writeRegister(RX_ADDR_P0, txAddress);  // acknowledgement comes to pipe 0
+            pipe0Writing = true;
+        }
+
+        if (state == RadioState.STANDBY_II) {
+            // CE is held high in TX mode, chip sends packet as soon as it gets into TX FIFO
+            nrfSpiWrite(command, data);
+            state = RadioState.TX;
+            return;
+        }
+
+        if (ceState)
+            ceLow();
 
         // power up (PWR_UP=1) and set to transmit mode (PRIM_RX=0)
-        byte cfg = readByteRegister(CONFIG_REGISTER);
-        writeRegister(CONFIG_REGISTER, (byte)(( cfg | BV(PWR_UP) ) & ~BV(PRIM_RX) ) );
-        pigpio.gpioDelay(150); // wait for settling the chip
-        //pigpio.gpioDelay(2,JPigpio.PI_MILLISECONDS); // 1.5ms to start if in power-down mode
+        boolean wasDown = (state == RadioState.POWER_DOWN || state == null);
+        writeConfig((byte)(( getConfig() | BV(PWR_UP) ) & ~BV(PRIM_RX) ));
+        if (wasDown)
+            delayMicros(1500); // 1.5ms to start from power-down mode
+        // from standby the chip settles within 130us after CE pulse by itself
 
         // Send the payload
-        nrfSpiWrite(W_TX_PAYLOAD, data);   // Write to TX FIFO register
+        nrfSpiWrite(command, data);   // Write to TX FIFO register
 
         // flash CE=1 for more than 15us to send the packet
         pigpio.gpioTrigger(cePin,20,true);
+        state = RadioState.TX;
+
+    }
 
+    /**
+     * Check result of packet sent by startWrite without waiting for it, so one thread can keep
+     * packets of many radios in flight. Once the packet is sent or failed, TX_DS / MAX_RT is
+     * cleared and failed packet is flushed, like write does. Costs one SPI transaction while the
+     * packet is being sent.
+     * @return -1 if the packet is still being sent, 0 if OK, 1 if number of retries reached
+     * @throws PigpioException
+     */
+    public synchronized int checkWrite() throws PigpioException {
+        if ((updateStatus() & (BV(TX_DS) | BV(MAX_RT))) == 0)
+            return -1;
+        int result = (status & BV(TX_DS)) != 0 ? 0 : 1;
+        if (result != 0)
+            flushTx();
+        txTimeoutStreak = 0;
+        regBuff[0] = (byte)(BV(TX_DS) | BV(MAX_RT));
+        nrfSpiWrite(W_REGISTER | STATUS_REGISTER, regBuff);
+        irqNanos = 0;
+        afterWrite();
+        return result;
     }
 
     /**
@@ -316,16 +669,45 @@ public class RF24 {
      * @throws PigpioException
      */
     public synchronized int write(byte[] value) throws PigpioException {
-        byte[] buff = value.clone();
+        return write(value, false);
+    }
+
+    /**
+     * Send data packet, optionally without acknowledgement.<br/>
+     * Packet sent with multicast is not acknowledged by any receiver (NO_ACK flag is set in the
+     * packet, see enableDynamicAck) and is sent only once, so the same packet can be received by any
+     * number of nodes listening on the written address. Result 0 then means the packet was sent,
+     * not that it was received. Auto-ACK settings of pipes are not changed.
+     * @param value data to send
+     * @param multicast true to send packet without acknowledgement
+     * @return 0 if OK, 1 if number of retries reached, 2 if timeout occurred
+     * @throws PigpioException
+     */
+    public synchronized int write(byte[] value, boolean multicast) throws PigpioException {
+        return write(value, value.length, multicast);
+    }
+
+    /**
+     * Send first length bytes of value, optionally without acknowledgement (see write(byte[], boolean)).
+     * Data is copied into a buffer kept by the driver, so sending does not allocate memory.
+     * @param value data to send
+     * @param length number of bytes to send
+     * @param multicast true to send packet without acknowledgement
+     * @return 0 if OK, 1 if number of retries reached, 2 if timeout occurred
+     * @throws PigpioException
+     */
+    public synchronized int write(byte[] value, int length, boolean multicast) throws PigpioException {
         byte status;
         int result = 0;
 
-        ceLow();
-        // if fixed payload size and value is shorter than payload size
-        if (!dynPayloadEnabled && (buff.length != payloadSize) )
-            buff = Arrays.copyOf(buff,payloadSize); // then extend or shrink to payload size
+        // fixed payload size - data is extended or shrunk to payload size
+        int size = dynPayloadEnabled ? Math.min(length, MAX_PAYLOAD_SIZE) : payloadSize;
+        length = Math.min(length, size);
+        byte[] buff = payloadBuff(size);  // SPI transfer overwrites it with what the chip clocks out
+        System.arraycopy(value, 0, buff, 0, length);
+        Arrays.fill(buff, length, size, (byte) 0);
 
-        startWrite(buff);
+        startWrite(buff, multicast);
 
         long timeout = System.currentTimeMillis() + 500;
 
@@ -334,22 +716,210 @@ public class RF24 {
             status = readByteRegister(STATUS_REGISTER);
         } while ( (status & (byte)( BV(TX_DS) | BV(MAX_RT) )) == 0 && System.currentTimeMillis() < timeout);
 
-        if ((status & BV(TX_DS)) == 0)
+        if ((status & BV(TX_DS)) == 0) {
             if ((status & BV(MAX_RT)) > 0 )
                 result = 1; // max number of retries reached
             else
                 result = 2; // send timeout
+            flushTx();  // failed payload stays in TX FIFO, it would be sent again with the next one
+        }
+
+        txTimeoutStreak = result == 2 ? txTimeoutStreak + 1 : 0;
 
         // result of write operation is captured so we can reset TX_DS & MAX_RT bits
         writeRegister(STATUS_REGISTER,(byte)( status | BV(TX_DS) | BV(MAX_RT)));
+        irqNanos = 0;
+
+        if (capture != null)
+            capture.record(PacketCapture.TX, 0, status, value, length, result, System.nanoTime());
 
         //TODO: Handle ACK payload
 
-        powerDown();
+        afterWrite();
 
         return result;
     }
 
+    /**
+     * Send request and wait for reply with minimal turnaround.<br/>
+     * Request is sent like with write, but as soon as it is acknowledged the chip is switched to RX
+     * by a single CONFIG write and CE stays high, so the reply can be received 130us later.
+     * STATUS is polled with NOP command (one byte transaction) or, if IRQ pin is used, the IRQ edge
+     * is awaited without SPI traffic at all. Radio is left listening.
+     * @param request data to send, written address has to be set by openWritingPipe
+     * @param response buffer for reply, payloads longer than buffer are truncated
+     * @param timeoutMillis max time to wait for reply, including sending
+     * @return length of reply, -1 if number of retries reached, -2 if no reply came in time
+     * @throws PigpioException
+     */
+    public synchronized int transceive(byte[] request, byte[] response, long timeoutMillis) throws PigpioException {
+        long deadline = System.nanoTime() + timeoutMillis * 1000000;
+        // request is copied like in write, SPI transfer overwrites the buffer with what the chip clocks out
+        int size = dynPayloadEnabled ? Math.min(request.length, MAX_PAYLOAD_SIZE) : payloadSize;
+        int length = Math.min(request.length, size);
+        byte[] buff = payloadBuff(size);
+        System.arraycopy(request, 0, buff, 0, length);
+        Arrays.fill(buff, length, size, (byte) 0);
+
+        startWrite(buff);
+
+        // wait for TX_DS or MAX_RT
+        while ((updateStatus() & (BV(TX_DS) | BV(MAX_RT))) == 0)
+            if (System.nanoTime() - deadline > 0)
+                break;
+
+        byte txStatus = status;
+        int result = (txStatus & BV(TX_DS)) != 0 ? 0 : (txStatus & BV(MAX_RT)) != 0 ? 1 : 2;
+        txTimeoutStreak = result == 2 ? txTimeoutStreak + 1 : 0;
+        if (capture != null)
+            capture.record(PacketCapture.TX, 0, txStatus, request, length, result, System.nanoTime());
+        if (result != 0) {
+            flushTx();
+            writeRegister(STATUS_REGISTER, (byte)(BV(TX_DS) | BV(MAX_RT)));
+            afterWrite();
+            return result == 1 ? -1 : -2;
+        }
+
+        // TX => RX: PRIM_RX in one write. CE is low after the pulse of startWrite, in Standby-II it is
+        // high and has to be dropped first - PRIM_RX must not be changed with CE high
+        if (ceState)
+            ceLow();
+        writeConfig((byte)(getConfig() | BV(PRIM_RX)));
+        ceHigh();
+        state = RadioState.RX;
+        irqNanos = 0;
+        regBuff[0] = BV(TX_DS);
+        nrfSpiWrite(W_REGISTER | STATUS_REGISTER, regBuff);  // clear TX_DS so IRQ pin goes up again
+        // status clocked out by the write above already shows RX_DR of a reply which came meanwhile
+
+        // wait for RX_DR, with IRQ pin the thread is parked until the IRQ edge unparks it
+        irqWaiter = irqPin >= 0 ? Thread.currentThread() : null;
+        try {
+            while ((status & BV(RX_DR)) == 0) {
+                long left = deadline - System.nanoTime();
+                if (left < 0) {
+                    touch();
+                    return -2;
+                }
+                if (irqPin >= 0) {
+                    if (irqNanos == 0)
+                        LockSupport.parkNanos(left);
+                    else if ((updateStatus() & BV(RX_DR)) == 0)
+                        irqNanos = 0;  // edge of another event, wait for the next one
+                } else
+                    updateStatus();
+            }
+        } finally {
+            irqWaiter = null;
+        }
+
+        size = dynPayloadEnabled ? getDynamicPayloadSize() : payloadSize;
+        byte[] payload = payloadBuff(size);
+        nrfSpiWrite(R_RX_PAYLOAD, payload);
+        if (capture != null)
+            capture.record(PacketCapture.RX, (status >> RX_P_NO) & 0b111, status, payload, size, 0, System.nanoTime());
+        regBuff[0] = BV(RX_DR);
+        nrfSpiWrite(W_REGISTER | STATUS_REGISTER, regBuff);
+        irqNanos = 0;
+        touch();
+
+        length = Math.min(size, response.length);
+        System.arraycopy(payload, 0, response, 0, length);
+        return length;
+    }
+
+    /**
+     * Apply power policy once transmission finished.
+     * @throws PigpioException
+     */
+    private void afterWrite() throws PigpioException {
+        state = ceState ? RadioState.STANDBY_II : RadioState.STANDBY_I;
+        touch();
+
+        if (powerPolicy == PowerPolicy.LATENCY) {
+            // keep CE high, so next packet is sent as soon as it is written to TX FIFO
+            if (!ceState) {
+                ceHigh();
+                state = RadioState.STANDBY_II;
+            }
+        } else if (idleTimeout == 0)
+            powerDown();
+        else if (idleTask == null)
+            scheduleIdleCheck();
+    }
+
+    /**
+     * Set what to do with the chip after a packet was sent.
+     * Default is ENERGY with DEFAULT_IDLE_TIMEOUT - packets sent in quick succession do not pay
+     * the 1.5ms power-up delay each, chip is powered down once it was idle for a second.
+     * @param policy LATENCY to stay in standby, ENERGY to power down when idle
+     * @param idleTimeoutMillis for ENERGY policy - how long the chip stays in standby before
+     *                          it is powered down, 0 = immediately
+     */
+    public synchronized void setPowerPolicy(PowerPolicy policy, long idleTimeoutMillis) {
+        this.powerPolicy = policy;
+        this.idleTimeout = idleTimeoutMillis < 0 ? 0 : idleTimeoutMillis;
+
+        if (idleTask != null) {
+            idleTask.cancel(false);
+            idleTask = null;
+        }
+
+        if (policy == PowerPolicy.ENERGY && idleTimeout > 0)
+            scheduleIdleCheck();
+    }
+
+    /**
+     * Start checking whether the chip is idle, every idleTimeout ms
+     */
+    private void scheduleIdleCheck() {
+        lastActivity = System.currentTimeMillis();
+        idleTask = idleTimer().scheduleWithFixedDelay(this::powerDownIfIdle, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized ScheduledExecutorService idleTimer() {
+        if (idleTimer == null)
+            idleTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "RF24 idle timer");
+                t.setDaemon(true);
+                return t;
+            });
+        return idleTimer;
+    }
+
+    /**
+     * Get power policy.
+     * @return current power policy
+     */
+    public synchronized PowerPolicy getPowerPolicy() {
+        return powerPolicy;
+    }
+
+    /**
+     * Get mode the chip is in.
+     * @return current mode, null if not known yet (before init)
+     */
+    public synchronized RadioState getState() {
+        return state;
+    }
+
+    private synchronized void powerDownIfIdle() {
+        if (state != RadioState.STANDBY_I && state != RadioState.STANDBY_II)
+            return;
+        if (System.currentTimeMillis() - lastActivity < idleTimeout)
+            return;
+        try {
+            powerDown();
+        } catch (PigpioException e) {
+            // next operation will report the problem
+        }
+    }
+
+    private void touch() {
+        if (idleTask != null)
+            lastActivity = System.currentTimeMillis();
+    }
+
     /**
      * Checks if data is available for reading in RX FIFO
      * @return true if there is data available for reading
@@ -379,6 +949,8 @@ public class RF24 {
     public synchronized boolean read( byte data[]) throws PigpioException {
         // Fetch the payload
         nrfSpiWrite(R_RX_PAYLOAD, data); // Read payload
+        if (capture != null)
+            capture.record(PacketCapture.RX, (status >> RX_P_NO) & 0b111, status, data, data.length, 0, System.nanoTime());
         setRegisterBits(STATUS_REGISTER,BV(RX_DR)); // clear RX_DR
 
         // was this the last of the data available? if RX_EMPTY == 1 => no more data to read
@@ -386,7 +958,180 @@ public class RF24 {
     }
 
     /**
-     * Open pipe for writing
+     * Read payload into frame together with number of pipe it was received on and timestamps.<br/>
+     * In IRQ mode (see setIrqPin) frame is stamped with time of IRQ edge, otherwise with time it was read.
+     * All frames waiting in RX FIFO when IRQ fired get the same capture time.<br/>
+     * Read should be repeated until method returns false.
+     * @param frame frame to fill
+     * @return true if there is more data available
+     * @throws PigpioException
+     */
+    public synchronized boolean read(RxFrame frame) throws PigpioException {
+        long nanos = irqNanos;
+        frame.captureTick = nanos != 0 ? irqTick : -1;
+        frame.captureNanos = nanos != 0 ? nanos : System.nanoTime();
+
+        int size = dynPayloadEnabled ? getDynamicPayloadSize() : payloadSize;
+        byte[] buff = payloadBuff(size);
+        nrfSpiWrite(R_RX_PAYLOAD, buff);
+        frame.pipe = (status >> RX_P_NO) & 0b111;  // status returned with command refers to the payload read
+        frame.set(buff, size, frame.pipe);
+        if (capture != null)
+            capture.record(PacketCapture.RX, frame.pipe, status, buff, size, 0, frame.captureNanos);
+
+        regBuff[0] = BV(RX_DR);
+        nrfSpiWrite(W_REGISTER | STATUS_REGISTER, regBuff);  // clear RX_DR
+
+        regBuff[0] = NOP;
+        nrfSpiWrite(R_REGISTER | FIFO_STATUS_REGISTER, regBuff);
+        boolean more = (regBuff[0] & BV(RX_EMPTY)) == 0;
+        if (!more)
+            irqNanos = 0;
+
+        frame.deliveredNanos = System.nanoTime();
+        return more;
+    }
+
+    /**
+     * Read all frames waiting in RX FIFO with as few SPI transactions as possible.<br/>
+     * Pipe number and emptiness of RX FIFO are taken from STATUS which the chip sends with every
+     * command, so no FIFO_STATUS reads are needed. With static payloads every frame costs one
+     * transaction - payload is read speculatively and STATUS sent with the command tells whether
+     * there was any (one extra read at the end finds FIFO empty). With dynamic payloads the width is
+     * read first, which also tells the pipe. RX_DR is cleared once, when FIFO is empty.<br/>
+     * Frames get capture time like in read(RxFrame).
+     * @param sink receiver of frames, it is called with the radio locked
+     * @param maxFrames max number of frames to read, if reached RX_DR stays set when more frames wait
+     * @return number of frames read
+     * @throws PigpioException
+     */
+    public synchronized int drainRx(FrameSink sink, int maxFrames) throws PigpioException {
+        long nanos = irqNanos;
+        long captureTick = nanos != 0 ? irqTick : -1;
+        long captureNanos = nanos != 0 ? nanos : System.nanoTime();
+        int count = 0;
+
+        while (true) {
+            while (count < maxFrames) {
+                int size;
+                byte[] buff;
+                if (dynPayloadEnabled) {
+                    regBuff[0] = NOP;
+                    nrfSpiWrite(R_RX_PL_WID, regBuff);
+                    if (((status >> RX_P_NO) & 0b111) == 0b111)
+                        break;  // RX FIFO empty
+                    size = regBuff[0] & 0xFF;
+                    if (size > MAX_PAYLOAD_SIZE) {
+                        flushRx();  // corrupted payload
+                        break;
+                    }
+                    buff = payloadBuff(size);
+                    nrfSpiWrite(R_RX_PAYLOAD, buff);
+                } else {
+                    size = payloadSize;
+                    buff = payloadBuff(size);
+                    nrfSpiWrite(R_RX_PAYLOAD, buff);
+                    if (((status >> RX_P_NO) & 0b111) == 0b111)
+                        break;  // RX FIFO was empty, data read is not valid
+                }
+
+                int pipe = (status >> RX_P_NO) & 0b111;
+                drainFrame.set(buff, size, pipe);
+                drainFrame.captureTick = captureTick;
+                drainFrame.captureNanos = captureNanos;
+                drainFrame.deliveredNanos = System.nanoTime();
+                if (capture != null)
+                    capture.record(PacketCapture.RX, pipe, status, buff, size, 0, captureNanos);
+                sink.accept(drainFrame);
+                count++;
+            }
+            if (count >= maxFrames)
+                return count;
+
+            regBuff[0] = BV(RX_DR);
+            nrfSpiWrite(W_REGISTER | STATUS_REGISTER, regBuff);
+            if (((status >> RX_P_NO) & 0b111) == 0b111) {
+                irqNanos = 0;
+                return count;
+            }
+            // frame came before RX_DR was cleared, its IRQ is gone - read it now
+        }
+    }
+
+    /**
+     * Return size of payload at the top of RX FIFO when dynamic payloads are used.
+     * @return payload size in bytes
+     * @throws PigpioException
+     */
+    public synchronized int getDynamicPayloadSize() throws PigpioException {
+        regBuff[0] = NOP;
+        nrfSpiWrite(R_RX_PL_WID, regBuff);
+        int size = regBuff[0] & 0xFF;
+        if (size > MAX_PAYLOAD_SIZE) {
+            // corrupted payload, chip documentation says it has to be flushed
+            flushRx();
+            return 0;
+        }
+        return size;
+    }
+
+    /**
+     * Use IRQ pin of the chip. Falling edges are timestamped and used to stamp received frames.
+     * @param irqPin gpio pin connected to IRQ
+     * @throws PigpioException
+     */
+    public synchronized void setIrqPin(int irqPin) throws PigpioException {
+        pigpio.gpioSetMode(irqPin, JPigpio.PI_INPUT);
+        pigpio.gpioSetPullUpDown(irqPin, JPigpio.PI_PUD_UP);
+        pigpio.gpioSetAlertFunc(irqPin, (gpio, level, tick) -> {
+            if (level == 0 && irqNanos == 0) {
+                irqTick = tick;
+                irqNanos = System.nanoTime();
+                Thread waiter = irqWaiter;
+                if (waiter != null)
+                    LockSupport.unpark(waiter);
+            }
+        });
+        this.irqPin = irqPin;
+    }
+
+    /**
+     * Check IRQ without accessing the chip, e.g. to poll many radios cheaply before drainRx.
+     * @return true if IRQ pin signalled an event which was not handled yet, false if there is none
+     * or IRQ pin is not used (see setIrqPin)
+     */
+    public boolean isIrqPending() {
+        return irqNanos != 0;
+    }
+
+    /**
+     * Record all sent and received frames into capture.
+     * @param capture capture to record into, null to stop recording
+     */
+    public synchronized void setCapture(PacketCapture capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * @return gpio pin connected to IRQ, -1 if IRQ is not used
+     */
+    public synchronized int getIrqPin() {
+        return irqPin;
+    }
+
+    private byte[] payloadBuff(int size) {
+        byte[] buff = payloadBuffs[size];
+        if (buff == null) {
+            buff = new byte[size];
+            payloadBuffs[size] = buff;
+        }
+        return buff;
+    }
+
+    /**
+     * Open pipe for writing. Acknowledgements are received on pipe 0, so its address is set as
+     * well - if pipe 0 was opened for reading, its address is put back by startListening and taken
+     * again before the next packet is sent.
      * @param address address to use as source address when sending data.<br/>
      * Address should be provided with LSB first.
      * @throws PigpioException
@@ -400,14 +1145,25 @@ public class RF24 {
         setRegisterBits(EN_RXADDR_REGISTER, BV(0));     // enable receiving on pipe 0
         writeRegister(RX_ADDR_P0,address);              // set receiving address for pipe 0 so we can listen to replies
         writeRegister(RX_PW_P0, (byte)payloadSize);     // set payload size for replies
+        pipe0Writing = true;                            // address of reading pipe 0 is restored by startListening
+
+    }
 
+    /**
+     * Check whether writing pipe is opened with given address, so components sharing the radio can
+     * tell whether another one changed it. Known from the last write of TX_ADDR, no SPI transaction.
+     * @param address address, LSB first
+     * @return true if TX_ADDR holds the address
+     */
+    public synchronized boolean isWritingPipe(byte[] address) {
+        return txAddress != null && Arrays.equals(txAddress, address);
     }
 
     /**
      * Open pipe for reading
      * @param pipe pipe to open (0-5)
      * @param address address to expect data from.<br/>
-     * Address should be LSB first.
+     * Address should be LSB first. Pipes 2-5 share upper bytes with pipe 1, only LSB is used for them.
      * @throws PigpioException
      */
     public synchronized void openReadingPipe(int pipe, byte[] address) throws PigpioException {
@@ -415,7 +1171,14 @@ public class RF24 {
             throw new RF24Exception();
 
         setRegisterBits(EN_RXADDR_REGISTER, BV(pipe));      // enable receiving on specified pipe
-        writeRegister(RX_ADDR_P0+pipe, address);            // set receiving address for specified pipe
+        if (pipe == 0) {
+            pipe0Address = address.clone();                 // openWritingPipe borrows pipe 0 while sending
+            pipe0Writing = false;
+        }
+        if (pipe < 2)
+            writeRegister(RX_ADDR_P0+pipe, address);        // set receiving address for specified pipe
+        else
+            writeRegister(RX_ADDR_P0+pipe, address[0]);     // pipes 2-5 have single byte address register
         writeRegister(RX_PW_P0+pipe, (byte)payloadSize);    // set payload size
     }
 
@@ -433,6 +1196,17 @@ public class RF24 {
         writeRegister(SETUP_RETR_REGISTER,(byte)((delay & 0x0F) << ARD | (count & 0xf)<<ARC));
     }
 
+    /**
+     * Get number of retransmissions (ARC). It is read from chip only if it was not written yet.
+     * @return auto retransmit count 0 - 15
+     * @throws PigpioException
+     */
+    public synchronized int getRetries() throws PigpioException {
+        if (retries < 0)
+            retries = readByteRegister(SETUP_RETR_REGISTER) >> ARC & 0x0F;
+        return retries;
+    }
+
 
     /**
      * Set frequency channel nRF24 operates on
@@ -443,6 +1217,63 @@ public class RF24 {
         writeRegister(RF_CH_REGISTER, (byte)(ch & 0x7F)); // max 127 = 0x7F
     }
 
+    /**
+     * Change frequency channel with single register write. Nothing is written
+     * if the radio already operates on requested channel.<br/>
+     * If the radio is receiving, CE is dropped for the time of change so PLL locks to new
+     * frequency, and raised again afterwards.
+     * @param ch channel 0-127
+     * @return true if channel was changed
+     * @throws PigpioException
+     */
+    public synchronized boolean hopChannel(int ch) throws PigpioException {
+        ch = ch & 0x7F;
+        if (ch == channel)
+            return false;
+
+        boolean ce = ceState;
+        if (ce)
+            ceLow();
+        regBuff[0] = (byte) ch;
+        nrfSpiWrite(W_REGISTER | RF_CH_REGISTER, regBuff);
+        channel = ch;
+        if (ce)
+            ceHigh();
+        return true;
+    }
+
+    /**
+     * Get frequency channel nRF24 operates on
+     * @return channel 0-127
+     * @throws PigpioException
+     */
+    public synchronized int getChannel() throws PigpioException {
+        if (channel < 0)
+            channel = readByteRegister(RF_CH_REGISTER) & 0x7F;
+        return channel;
+    }
+
+    /**
+     * Set delay inserted after each SPI transaction. Default is 1ms, which keeps pigpiod
+     * responsive when driven over network (see note in nrfSpiWrite).
+     * Lower values speed up register heavy operations like channel survey.<br/>
+     * Delay is given in microseconds whichever JPigpio implementation is used. It is waited locally,
+     * not sent to pigpiod as gpioDelay, except with batching implementation (CommandBatch) which
+     * queues it after the transaction, so pigpiod executes it in order with the commands.
+     * @param micros delay in microseconds, 0 = no delay
+     */
+    public synchronized void setSpiDelay(long micros) {
+        this.spiDelay = micros < 0 ? 0 : micros;
+    }
+
+    /**
+     * Get delay inserted after each SPI transaction.
+     * @return delay in microseconds
+     */
+    public synchronized long getSpiDelay() {
+        return spiDelay;
+    }
+
     /**
      * Set static payload (packet) size for all pipes. <br/>
      * Pipe has to be reopened for reading in order to change payload size.
@@ -464,11 +1295,28 @@ public class RF24 {
         return payloadSize;
     }
 
-    //TODO: public int getDynamicPayloadSize()
+    /**
+     * Allow sending single packets without acknowledgement (FEATURE.EN_DYN_ACK), see
+     * write(byte[], boolean). Called by the first multicast write automatically.
+     * @throws PigpioException
+     */
+    public synchronized void enableDynamicAck() throws PigpioException {
+        setRegisterBits(FEATURE, BV(EN_DYN_ACK));
+        dynAckEnabled = true;
+    }
 
     //TODO: public void enableACKPayload()
 
-    //TODO: public void enableDynamicPayload()
+    /**
+     * Use dynamic payload length on all pipes (FEATURE.EN_DPL, DYNPD), so packets are as long as
+     * the data written instead of payload size. Both sides of the link have to use it.
+     * @throws PigpioException
+     */
+    public synchronized void enableDynamicPayloads() throws PigpioException {
+        setRegisterBits(FEATURE, BV(EN_DPL));
+        writeRegister(DYNPD, (byte) 0b00111111);
+        dynPayloadEnabled = true;
+    }
 
     //TODO: public boolean isPVariant()
 
@@ -516,7 +1364,14 @@ public class RF24 {
         writeRegister(RF_SETUP, newValue);
     }
 
-    //TODO: public int getPALevel()
+    /**
+     * Returns TX output power level.
+     * @return one of RF24_PA_MIN, RF24_PA_LOW, RF24_PA_HIGH, RF24_PA_MAX
+     * @throws PigpioException
+     */
+    public synchronized int getPALevel() throws PigpioException {
+        return readByteRegister(RF_SETUP) & RF24_PA_MASK;
+    }
 
     /**
      * Sets data rate
@@ -544,7 +1399,29 @@ public class RF24 {
 
     }
 
-    //TODO: public int getDataRate()
+    /**
+     * Returns data rate
+     * @return one of RF24_250KBPS, RF24_1MBPS, RF24_2MBPS
+     * @throws PigpioException
+     */
+    public synchronized int getDataRate() throws PigpioException {
+        byte setupReg = readByteRegister(RF_SETUP);
+        int dataRate = 0;
+        if ((setupReg & 1<<RF_DR_LOW) != 0) dataRate |= 0b10;
+        if ((setupReg & 1<<RF_DR_HIGH) != 0) dataRate |= 0b01;
+        return dataRate;
+    }
+
+    /**
+     * Returns content of OBSERVE_TX register of the last transmission.
+     * Bits 0-3 (ARC_CNT) hold number of retransmissions of last packet,
+     * bits 4-7 (PLOS_CNT) hold number of lost packets since last channel change (max 15).
+     * @return OBSERVE_TX register value
+     * @throws PigpioException
+     */
+    public synchronized byte getObserveTx() throws PigpioException {
+        return readByteRegister(OBSERVE_TX);
+    }
 
     /**
      * Set CRC length
@@ -595,87 +1472,70 @@ public class RF24 {
      * Return detailed information about nRF24 chip
      * @return String containing information
      */
-    public synchronized String printDetails(){
-        String p = "";
-
+    public String printDetails(){
+        RegisterSnapshot snapshot = new RegisterSnapshot();
         try {
-            byte statusReg = readByteRegister(STATUS_REGISTER);
-            p = "STATUS          = 0x" + String.format("%02x",statusReg) + "  " + String.format("%8s", Integer.toBinaryString(statusReg & 0xFF)).replace(' ', '0');
-
-            byte rxAddr[][] = new byte[6][5];
-            readRegister(RX_ADDR_P0,rxAddr[0]);
-            readRegister(RX_ADDR_P1,rxAddr[1]);
-            readRegister(RX_ADDR_P2,rxAddr[2]);
-            readRegister(RX_ADDR_P3,rxAddr[3]);
-            readRegister(RX_ADDR_P4,rxAddr[4]);
-            readRegister(RX_ADDR_P5,rxAddr[5]);
-            // addresses are stored LSB first, so we need to reverse it in order to print it correctly
-            p += "\nRX_ADDR_P0-1    = 0x"+ Util.bytesToHex(Util.reverseArray(rxAddr[0]))+ "  0x" + Util.bytesToHex(Util.reverseArray(rxAddr[1]));
-
-            p += "\nRX_ADDR_P2-5    = ";
-            for(int i = 2;i<6;i++)
-                p += "0x"+String.format("%02x",rxAddr[i][0])+"  ";
-
-            byte txAddr[] = new byte[5];
-            readRegister(TX_ADDR,txAddr);
-            p += "\nTX_ADDR         = 0x"+ Util.bytesToHex(Util.reverseArray(txAddr));
-
-            byte pwReg[] = {0,0,0,0,0,0};
-            readRegister(RX_PW_P0,pwReg);  // read 6 registers/bytes, starting with RX_PW_P0
-            p += "\nRX_PW_P0-6      = ";
-            for(byte b:pwReg)
-                p += "0x"+String.format("%02x",b)+"  ";
-            p += "\n";
-
-
-            byte enAA = readByteRegister(EN_AA_REGISTER);
-            p += "\nEN_AA           = 0x"+ String.format("%02x",enAA) + "  " + String.format("%8s", Integer.toBinaryString(enAA & 0xFF)).replace(' ', '0');
-
-            byte enRX = readByteRegister(EN_RXADDR_REGISTER);
-            p += "\nEN_RXADDR       = 0x"+ String.format("%02x",enRX) + "  " + String.format("%8s", Integer.toBinaryString(enRX & 0xFF)).replace(' ', '0');
-
-            byte rfChannel = readByteRegister(RF_CH_REGISTER);
-            p += "\nRF_CH           = 0x"+ String.format("%02x",rfChannel);
-
-            byte setupReg = readByteRegister(RF_SETUP);
-            p += "\nRF_SETUP        = 0x"+ String.format("%02x",setupReg) + "  " + String.format("%8s", Integer.toBinaryString(setupReg & 0xFF)).replace(' ', '0');
-
-            byte configReg = readByteRegister(CONFIG_REGISTER);
-            p += "\nCONFIG          = 0x"+ String.format("%02x",configReg) + "  " + String.format("%8s", Integer.toBinaryString(configReg & 0xFF)).replace(' ', '0');
-
-            byte dyn = readByteRegister(DYNPD);
-            byte feature = readByteRegister(FEATURE);
-            p += "\nDYNPD/FEATURE   = 0x"+ String.format("%02x",dyn)+" 0x"+ String.format("%02x",feature);
+            snapshot(snapshot);
+        } catch (PigpioException e) {
+            return e.getMessage() + "\n";
+        }
+        return snapshot.toString() + "\n";
+    }
 
-            byte dataRate = 0;
-            if ((setupReg & 1<<RF_DR_LOW) > 0) dataRate += 2;
-            if ((setupReg & 1<<RF_DR_HIGH) > 0) dataRate += 1;
-            p += "\nData Rate       = " + dataRateToString(dataRate);
+    /**
+     * Capture complete register map into provided snapshot.<br/>
+     * Every register is read just once and STATUS is taken from the status byte
+     * returned with the first command. Values are stored without decoding, so the radio
+     * is locked only for the time of SPI transfers.
+     * @param snapshot snapshot to fill (can be reused)
+     * @return snapshot passed in
+     * @throws PigpioException
+     */
+    public synchronized RegisterSnapshot snapshot(RegisterSnapshot snapshot) throws PigpioException {
+        byte[] regs = snapshot.regs;
 
-            p += "\nMODEL           = ???";
+        // with CommandBatch all reads go out at once, so every register needs its own buffer
+        CommandBatch batch = pigpio instanceof CommandBatch ? (CommandBatch) pigpio : null;
+        if (batch != null)
+            batch.beginBatch();
+        try {
+            for (int reg = CONFIG_REGISTER; reg <= FEATURE; reg++) {
+                switch (reg) {
+                    case STATUS_REGISTER:
+                        continue;  // clocked out with every command
+                    case RX_ADDR_P0:
+                    case RX_ADDR_P1:
+                    case TX_ADDR:
+                        byte[] addr = snapshot.addresses[reg == TX_ADDR ? 6 : reg - RX_ADDR_P0];
+                        Arrays.fill(addr, NOP);
+                        nrfSpiWrite(R_REGISTER | reg, addr);
+                        continue;
+                    case 0x18:
+                    case 0x19:
+                    case 0x1A:
+                    case 0x1B:
+                        continue;  // not used
+                }
+                byte[] one = snapshotBuffs[reg];
+                one[0] = NOP;
+                nrfSpiWrite(reg == CONFIG_REGISTER ? snapshotCmd : cmdBuff, R_REGISTER | reg, one);
+            }
+        } finally {
+            if (batch != null)
+                batch.endBatch();
+        }
+        status = snapshotCmd[0];  // cmdBuff is shared by all queued reads, it holds STATUS of the last one
 
-            p += "\nCRC Length      = ";
-            if ((configReg & (1<<CRCO)) == (1<<CRCO) )
-                p += "16 bits";
+        for (int reg = CONFIG_REGISTER; reg <= FEATURE; reg++) {
+            if (reg >= RX_ADDR_P2 && reg <= RX_ADDR_P5)
+                snapshot.addresses[reg - RX_ADDR_P0][0] = snapshotBuffs[reg][0];
             else
-                p += "8 bits";
-
-            p += "\nPA Power        = ???";
-
-            byte retry = readByteRegister(SETUP_RETR_REGISTER);
-            p += "\nSETUP_RETR      = 0x"+ String.format("%02x",retry) + "  " + String.format("%8s", Integer.toBinaryString(retry & 0xFF)).replace(' ', '0');
-
-            p += "\n";
-
-            p += setupRetrToString(readByteRegister(SETUP_RETR_REGISTER));
-            p += "\nRF Channel      = " + rfChannel;
-            p += "\nAddress widths  = " + getAddressWidth() + " bytes";
-
-        } catch (PigpioException e) {
-            p += e.getMessage();
+                regs[reg] = snapshotBuffs[reg][0];
         }
+        regs[STATUS_REGISTER] = status;
 
-        return p+"\n";
+        snapshot.capturedAt = System.currentTimeMillis();
+        return snapshot;
     }
 
     /**
@@ -683,15 +1543,26 @@ public class RF24 {
      * @throws PigpioException
      */
     public synchronized void powerDown() throws PigpioException {
-        clearRegisterBits(CONFIG_REGISTER,(byte)(1<<PWR_UP));
+        if (state == RadioState.POWER_DOWN)
+            return;
+        if (ceState)
+            ceLow();
+        writeConfig((byte)(getConfig() & ~(1<<PWR_UP)));
+        state = RadioState.POWER_DOWN;
     }
 
     /**
-     * Leave low-power mode - make radio more reponsive
+     * Leave low-power mode - make radio more reponsive.
+     * Waits 1.5ms for the chip to get into Standby-I mode.
      * @throws PigpioException
      */
     public synchronized void powerUp() throws PigpioException {
-        setRegisterBits(CONFIG_REGISTER,(byte)(1<<PWR_UP));
+        if (state != RadioState.POWER_DOWN && state != null)
+            return;
+        writeConfig((byte)(getConfig() | (1<<PWR_UP)));
+        delayMicros(1500);
+        state = RadioState.STANDBY_I;
+        touch();
     }
 
     //TODO: public boolean available(int pipe)
@@ -714,6 +1585,40 @@ public class RF24 {
         return (readByteRegister(RPD) & 1) == 1;
     }
 
+    /**
+     * Tune receiver to specified channel and sample RPD repeatedly.<br/>
+     * Chip has to be powered up with PRIM_RX set (see startListening). CE is left low on return,
+     * so the chip ends in Standby-I mode.
+     * Only one register write per channel and one register read per sample are issued.
+     * @param ch channel to sample
+     * @param samples number of RPD reads
+     * @param buff one byte scratch buffer
+     * @return number of samples where RPD was set
+     * @throws PigpioException
+     */
+    synchronized int sampleRPD(int ch, int samples, byte[] buff) throws PigpioException {
+        ceLow();
+        buff[0] = (byte)(ch & 0x7F);
+        nrfSpiWrite(W_REGISTER | RF_CH_REGISTER, buff);
+        channel = ch & 0x7F;
+        ceHigh();
+
+        // 130us PLL settling + 40us for RPD to become valid
+        delayMicros(170);
+
+        int hits = 0;
+        for (int i = 0; i < samples; i++) {
+            buff[0] = NOP;
+            nrfSpiWrite(R_REGISTER | RPD, buff);
+            if ((buff[0] & 1) == 1)
+                hits++;
+        }
+
+        ceLow();
+        state = RadioState.STANDBY_I;
+        return hits;
+    }
+
     //############################################################################################
     //############################################################################################
 
@@ -769,6 +1674,10 @@ public class RF24 {
     public synchronized void terminate() throws PigpioException {
         ceLow();
         powerDown();
+        if (idleTask != null) {
+            idleTask.cancel(false);
+            idleTask = null;
+        }
     }
 
     //############################################################################################
@@ -785,10 +1694,20 @@ public class RF24 {
     } // End of BV
 
     private void nrfSpiWrite(int reg, byte data[]) throws PigpioException {
+        nrfSpiWrite(cmdBuff, reg, data);
+    }
+
+    /**
+     * @param cmd buffer for the command byte, STATUS is left in it once the transaction was executed
+     */
+    private void nrfSpiWrite(byte[] cmd, int reg, byte data[]) throws PigpioException {
+        CommandBatch batch = pigpio instanceof CommandBatch ? (CommandBatch) pigpio : null;
+        if (batch != null)
+            batch.beginBatch();  // whole transaction goes out at once
 
         csnLow();
-        byte regData[] = { (byte)reg };
-        pigpio.spiXfer(handle, regData, regData);
+        cmd[0] = (byte)reg;
+        pigpio.spiXfer(handle, cmd, cmd);
         if (data != null) {
             pigpio.spiXfer(handle, data, data);
         }
@@ -797,8 +1716,35 @@ public class RF24 {
         // TODO: why is following delay here? a relic? 100ms is quite a long wait...
         // pigpio.gpioDelay(100, JPigpio.PI_MILLISECONDS);
         // TODO: tried to remove 100ms delay, but gpiod stopped responding after 100-200 calls - introduced 1ms delay and it seems to work again
-        pigpio.gpioDelay(1,JPigpio.PI_MILLISECONDS);
+        // batched transaction is spaced by pigpiod itself - waiting here would only delay sending the batch
+        if (batch != null) {
+            if (spiDelay > 0)
+                batch.queueDelay(spiDelay);
+            batch.endBatch();
+        } else if (spiDelay > 0)
+            delayMicros(spiDelay);
+        status = cmd[0];  // chip always clocks out STATUS while command is received
+    }
 
+    /**
+     * Wait here, in this process. PigpioSocket runs gpioDelay(long) in pigpiod, which counts
+     * milliseconds there, so it can not be used for chip timing given in microseconds.
+     * Whole milliseconds are slept, the rest is spent spinning on System.nanoTime.
+     * @param micros time to wait in microseconds
+     */
+    private static void delayMicros(long micros) {
+        long end = System.nanoTime() + micros * 1000;
+        if (micros >= 1000) {
+            try {
+                Thread.sleep(micros / 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        while (end - System.nanoTime() > 0) {
+            // spin, sleep is not precise below a millisecond
+        }
     }
 
     /**
@@ -807,6 +1753,7 @@ public class RF24 {
      */
     private void ceHigh() throws PigpioException {
         pigpio.gpioWrite(cePin, JPigpio.PI_HIGH);
+        ceState = true;
     }
 
     /**
@@ -815,6 +1762,7 @@ public class RF24 {
      */
     private void ceLow() throws PigpioException {
         pigpio.gpioWrite(cePin, JPigpio.PI_LOW);
+        ceState = false;
     }
 
     /**
@@ -833,6 +1781,16 @@ public class RF24 {
         pigpio.gpioWrite(csnPin, JPigpio.PI_LOW);
     }
 
+    /**
+     * Read STATUS with a single byte NOP command
+     * @return value of STATUS register
+     * @throws PigpioException
+     */
+    private byte updateStatus() throws PigpioException {
+        nrfSpiWrite(NOP, null);
+        return status;
+    }
+
     /**
      * Flush RX FIFO
      * @throws PigpioException
@@ -887,6 +1845,55 @@ public class RF24 {
         // 0b001x xxxx where "xxxxx" is the 5 bit register number.
         byte clonedData[] = data.clone();
         nrfSpiWrite((W_REGISTER | (REGISTER_MASK & reg)), clonedData);
+
+        // keep track of current channel and configuration so they do not have to be read back
+        if ((REGISTER_MASK & reg) == RF_CH_REGISTER)
+            channel = data[0] & 0x7F;
+        else if ((REGISTER_MASK & reg) == SETUP_RETR_REGISTER)
+            retries = data[0] >> ARC & 0x0F;
+        else if ((REGISTER_MASK & reg) == TX_ADDR)
+            txAddress = data.clone();
+        else if ((REGISTER_MASK & reg) == CONFIG_REGISTER)
+            trackConfig(data[0]);
+    }
+
+    /**
+     * Write CONFIG register if its value differs from the last written one.
+     * @param value new value
+     * @throws PigpioException
+     */
+    private void writeConfig(byte value) throws PigpioException {
+        if (config == (value & 0xFF))
+            return;
+        regBuff[0] = value;
+        nrfSpiWrite(W_REGISTER | CONFIG_REGISTER, regBuff);
+        config = value & 0xFF;
+    }
+
+    /**
+     * Get CONFIG register value. It is read from chip only if it was not written yet.
+     * @return CONFIG register value
+     * @throws PigpioException
+     */
+    private byte getConfig() throws PigpioException {
+        if (config < 0)
+            config = readByteRegister(CONFIG_REGISTER) & 0xFF;
+        return (byte) config;
+    }
+
+    /**
+     * Derive mode of the chip from CONFIG value written and CE
+     */
+    private void trackConfig(byte value) {
+        config = value & 0xFF;
+        if ((value & BV(PWR_UP)) == 0)
+            state = RadioState.POWER_DOWN;
+        else if (!ceState)
+            state = RadioState.STANDBY_I;
+        else if ((value & BV(PRIM_RX)) != 0)
+            state = RadioState.RX;
+        else
+            state = RadioState.STANDBY_II;  // TX FIFO is sent as soon as there is something in it
     } // End of writeRegister
 
     /**
@@ -0,0 +1,307 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Request/response calls over the radio with many requests in flight.<br/>
+ * Every frame starts with a header [type, correlation id, data length, node address (5 bytes)].
+ * Request carries the address it is sent to and the answering node copies it into the response,
+ * so responses tell which node they come from. Caller gets a future right after the request was
+ * sent and keeps the radio listening, so requests to other nodes can be sent while the first one is
+ * still waiting for its response. Responses are matched to the outstanding requests by node address
+ * and correlation id in the receiving thread (see start) or by handle, if frames are read elsewhere.
+ * Requests without response are failed with TimeoutException once their timeout passes.<br/>
+ * <br/>
+ * Node answering the requests uses the same class with a handler (see setHandler). Responses are
+ * sent to a fixed reply address, which fits the usual star network with a gateway in the middle.<br/>
+ * Writing pipe is opened only when TX_ADDR holds another address, whoever changed it (see
+ * RF24.isWritingPipe). Pipe 0 opened for reading by another component keeps its address while
+ * listening (see RF24.openWritingPipe).
+ */
+public class RadioRpc {
+    public static final byte TYPE_REQUEST = 0x51;
+    public static final byte TYPE_RESPONSE = 0x52;
+    public static final int ADDRESS_SIZE = 5;
+    public static final int HEADER_SIZE = 3 + ADDRESS_SIZE;
+    public static final int MAX_DATA_SIZE = RxFrame.MAX_PAYLOAD_SIZE - HEADER_SIZE;
+
+    private static final int IDS = 256;
+
+    /**
+     * Answers requests on the responding node
+     */
+    public interface Handler {
+        /**
+         * @param request request data
+         * @return response data, null to send no response
+         */
+        byte[] handle(byte[] request);
+    }
+
+    private final RF24 rf24;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final CompletableFuture<byte[]>[] pending = new CompletableFuture[IDS];
+    private final long[] deadlines = new long[IDS];
+    private final byte[][] addresses = new byte[IDS][ADDRESS_SIZE];
+    private int nextId = 0;
+    private int outstanding = 0;
+
+    private Handler handler;
+    private byte[] replyAddress;
+
+    private long requests = 0;
+    private long responses = 0;
+    private long timeouts = 0;
+    private long unmatched = 0;
+
+    private volatile boolean running = false;
+    private Thread receiver;
+
+    /**
+     * @param rf24 initialized radio, it is switched back to listening after every frame sent
+     */
+    public RadioRpc(RF24 rf24) {
+        this.rf24 = rf24;
+    }
+
+    /**
+     * Answer incoming requests
+     * @param handler handler of requests, null to ignore requests
+     * @param replyAddress address responses are sent to (LSB first)
+     */
+    public synchronized void setHandler(Handler handler, byte[] replyAddress) {
+        this.handler = handler;
+        this.replyAddress = replyAddress;
+    }
+
+    /**
+     * Send request and return without waiting for response.
+     * @param address address of node to send request to (LSB first)
+     * @param data request data, at most MAX_DATA_SIZE bytes
+     * @param timeoutMillis time to wait for response
+     * @return future completed with response data, or failed with TimeoutException or RF24Exception
+     * if the request could not be delivered
+     * @throws PigpioException
+     */
+    public CompletableFuture<byte[]> call(byte[] address, byte[] data, long timeoutMillis) throws PigpioException {
+        if (data.length > MAX_DATA_SIZE)
+            throw new RF24Exception("Request data too long: " + data.length);
+
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        int id;
+        synchronized (this) {
+            if (outstanding == IDS) {
+                future.completeExceptionally(new RF24Exception("Too many outstanding requests"));
+                return future;
+            }
+            while (pending[nextId] != null)
+                nextId = (nextId + 1) % IDS;
+            id = nextId;
+            nextId = (nextId + 1) % IDS;
+            pending[id] = future;
+            deadlines[id] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            Arrays.fill(addresses[id], (byte) 0);
+            System.arraycopy(address, 0, addresses[id], 0, Math.min(address.length, ADDRESS_SIZE));
+            outstanding++;
+            requests++;
+        }
+
+        int result = send(address, TYPE_REQUEST, id, address, data, data.length);
+        if (result != 0) {
+            synchronized (this) {
+                release(id);
+            }
+            future.completeExceptionally(new RF24Exception("Request not delivered, write result " + result));
+        }
+        return future;
+    }
+
+    /**
+     * Process received frame - complete matching request or answer the request.
+     * @param frame received frame
+     * @return true if the frame was RPC frame
+     * @throws PigpioException
+     */
+    public boolean handle(RxFrame frame) throws PigpioException {
+        if (frame.length < HEADER_SIZE)
+            return false;
+        int id = frame.data[1] & 0xFF;
+        int length = Math.min(frame.data[2] & 0xFF, frame.length - HEADER_SIZE);
+
+        if (frame.data[0] == TYPE_RESPONSE) {
+            CompletableFuture<byte[]> future;
+            synchronized (this) {
+                future = pending[id];
+                if (future == null || !fromNode(frame.data, addresses[id])) {
+                    unmatched++;  // late response of timed out request, or response of another node
+                    return true;
+                }
+                release(id);
+                responses++;
+            }
+            future.complete(Arrays.copyOfRange(frame.data, HEADER_SIZE, HEADER_SIZE + length));
+            return true;
+        }
+
+        if (frame.data[0] == TYPE_REQUEST) {
+            Handler h;
+            byte[] address;
+            synchronized (this) {
+                h = handler;
+                address = replyAddress;
+            }
+            if (h != null) {
+                byte[] node = Arrays.copyOfRange(frame.data, 3, HEADER_SIZE);  // address the request was sent to
+                byte[] response = h.handle(Arrays.copyOfRange(frame.data, HEADER_SIZE, HEADER_SIZE + length));
+                if (response != null)
+                    send(address, TYPE_RESPONSE, id, node, response, Math.min(response.length, MAX_DATA_SIZE));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fail requests whose timeout passed. Called by the receiving thread, has to be called periodically
+     * when frames are read elsewhere.
+     */
+    public void expire() {
+        long now = System.nanoTime();
+        for (int id = 0; id < IDS; id++) {
+            CompletableFuture<byte[]> future;
+            synchronized (this) {
+                future = pending[id];
+                if (future == null || deadlines[id] - now > 0)
+                    continue;
+                release(id);
+                timeouts++;
+            }
+            future.completeExceptionally(new TimeoutException("No response to request " + id));
+        }
+    }
+
+    private static boolean fromNode(byte[] frame, byte[] address) {
+        for (int i = 0; i < ADDRESS_SIZE; i++)
+            if (frame[3 + i] != address[i])
+                return false;
+        return true;
+    }
+
+    private int send(byte[] address, byte type, int id, byte[] node, byte[] data, int length) throws PigpioException {
+        byte[] frame = new byte[HEADER_SIZE + length];
+        frame[0] = type;
+        frame[1] = (byte) id;
+        frame[2] = (byte) length;
+        System.arraycopy(node, 0, frame, 3, Math.min(node.length, ADDRESS_SIZE));
+        System.arraycopy(data, 0, frame, HEADER_SIZE, length);
+
+        synchronized (rf24) {
+            if (!rf24.isWritingPipe(address))
+                rf24.openWritingPipe(address);  // TX_ADDR is shared, another component may have changed it
+            int result = rf24.write(frame);
+            rf24.startListening();
+            return result;
+        }
+    }
+
+    private void release(int id) {
+        pending[id] = null;
+        outstanding--;
+    }
+
+    /**
+     * Start thread reading frames from radio, completing requests and answering requests.
+     * Frames which are not RPC frames are dropped.
+     */
+    public synchronized void start() {
+        if (receiver != null)
+            return;
+        running = true;
+        receiver = new Thread(this::receiveLoop, "RF24 RPC");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Stop receiving thread. Outstanding requests are left to time out.
+     * @throws InterruptedException
+     */
+    public void stop() throws InterruptedException {
+        Thread r;
+        synchronized (this) {
+            running = false;
+            r = receiver;
+            receiver = null;
+        }
+        if (r != null) {
+            r.interrupt();
+            r.join();
+        }
+    }
+
+    private void receiveLoop() {
+        RxFrame frame = new RxFrame();
+        while (running) {
+            try {
+                if (rf24.available()) {
+                    boolean more;
+                    do {
+                        more = rf24.read(frame);
+                        handle(frame);
+                    } while (more && running);
+                } else
+                    Thread.sleep(1);
+                expire();
+            } catch (InterruptedException e) {
+                break;
+            } catch (PigpioException e) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of requests waiting for response
+     */
+    public synchronized int getOutstanding() {
+        return outstanding;
+    }
+
+    /**
+     * @return number of requests sent
+     */
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return number of responses matched to requests
+     */
+    public synchronized long getResponses() {
+        return responses;
+    }
+
+    /**
+     * @return number of requests failed because of timeout
+     */
+    public synchronized long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * @return number of responses which did not match any outstanding request
+     */
+    public synchronized long getUnmatched() {
+        return unmatched;
+    }
+}
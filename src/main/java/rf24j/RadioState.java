@@ -0,0 +1,32 @@
+package rf24j;
+
+/**
+ * Operating modes of nRF24 chip as tracked by the driver.
+ */
+public enum RadioState {
+    /**
+     * PWR_UP = 0. Minimal current, registers are kept. It takes 1.5ms to get to standby.
+     */
+    POWER_DOWN,
+
+    /**
+     * PWR_UP = 1, CE = 0. Crystal oscillator is running, chip gets to RX or TX within 130us.
+     */
+    STANDBY_I,
+
+    /**
+     * PWR_UP = 1, PRIM_RX = 0, CE = 1 and TX FIFO empty. Packet written to TX FIFO is sent
+     * immediately, without CE pulse.
+     */
+    STANDBY_II,
+
+    /**
+     * PWR_UP = 1, PRIM_RX = 1, CE = 1. Receiving.
+     */
+    RX,
+
+    /**
+     * PWR_UP = 1, PRIM_RX = 0. Packet is being sent.
+     */
+    TX
+}
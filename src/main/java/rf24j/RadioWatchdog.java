@@ -0,0 +1,249 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches health of the radio and recovers it without restarting the application.<br/>
+ * Every check costs one SPI transaction (see RF24.checkHealth): CONFIG is read back and compared
+ * with what the driver wrote, STATUS is checked for impossible values. Writes going through the
+ * watchdog are watched for a streak of timeouts. When a check fails, SPI handle is reopened and
+ * the profile is applied again (see RF24.recover), repeatedly until the chip responds.<br/>
+ * <br/>
+ * Frames written while the radio is being recovered are queued and sent once it is back, oldest
+ * frames are dropped when the queue is full. Recovery listener can restart whatever runs on top of
+ * the radio. Losing connection to pigpiod itself can not be recovered this way - JPigpio has to be
+ * recreated.
+ */
+public class RadioWatchdog {
+    private final RF24 rf24;
+    private final RegisterSnapshot profile;
+    private final long intervalMillis;
+    private final int maxTimeouts;
+    private final int queueCapacity;
+
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+    private ScheduledExecutorService timer;
+    private Runnable recoveryListener;
+
+    private volatile boolean recovering = false;
+    private long failedAt;
+
+    private long checks = 0;
+    private long failures = 0;
+    private long recoveries = 0;
+    private long downtimeMillis = 0;
+    private long queuedFrames = 0;
+    private long droppedFrames = 0;
+    private String lastFailure;
+
+    /**
+     * @param rf24 initialized and configured radio
+     * @param profile configuration to restore, usually snapshot taken after the radio was configured
+     * @param intervalMillis time between checks
+     * @param maxTimeouts number of consecutive write timeouts taken as failure
+     * @param queueCapacity max number of frames queued during recovery
+     */
+    public RadioWatchdog(RF24 rf24, RegisterSnapshot profile, long intervalMillis, int maxTimeouts, int queueCapacity) {
+        this.rf24 = rf24;
+        this.profile = profile;
+        this.intervalMillis = intervalMillis;
+        this.maxTimeouts = maxTimeouts;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param listener called after each successful recovery, null for none
+     */
+    public synchronized void setRecoveryListener(Runnable listener) {
+        this.recoveryListener = listener;
+    }
+
+    /**
+     * Start periodic checks
+     */
+    public synchronized void start() {
+        if (timer != null)
+            return;
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "RF24 watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(this::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop periodic checks
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    /**
+     * Send data, or queue it if the radio is being recovered.
+     * @param data data to send
+     * @return result of RF24.write - 0 if OK, 1 if number of retries reached, 2 if timeout occurred;
+     * -1 if data was queued
+     * @throws PigpioException
+     */
+    public int write(byte[] data) throws PigpioException {
+        if (!recovering) {
+            try {
+                int result = rf24.write(data);
+                if (result == 2 && rf24.getTxTimeoutStreak() >= maxTimeouts)
+                    fail("TX timeouts");
+                return result;
+            } catch (PigpioException e) {
+                fail(e.toString());
+            }
+        }
+        enqueue(data);
+        return -1;
+    }
+
+    /**
+     * Run one check now. Called periodically by the watchdog thread.
+     */
+    public void check() {
+        if (recovering) {
+            attemptRecovery();
+            return;
+        }
+        synchronized (this) {
+            checks++;
+        }
+        try {
+            if (!rf24.checkHealth())
+                fail("CONFIG or STATUS mismatch");
+            else if (rf24.getTxTimeoutStreak() >= maxTimeouts)
+                fail("TX timeouts");
+        } catch (PigpioException e) {
+            fail(e.toString());
+        }
+        if (recovering)
+            attemptRecovery();
+    }
+
+    private synchronized void fail(String reason) {
+        if (recovering)
+            return;
+        recovering = true;
+        failures++;
+        failedAt = System.currentTimeMillis();
+        lastFailure = reason;
+    }
+
+    private synchronized void enqueue(byte[] data) {
+        if (queue.size() == queueCapacity) {
+            queue.poll();
+            droppedFrames++;
+        }
+        queue.add(data.clone());
+        queuedFrames++;
+    }
+
+    private void attemptRecovery() {
+        try {
+            if (!rf24.recover(profile))
+                return;  // chip does not respond yet, next check tries again
+        } catch (PigpioException e) {
+            synchronized (this) {
+                lastFailure = e.toString();
+            }
+            return;
+        }
+
+        Runnable listener;
+        synchronized (this) {
+            listener = recoveryListener;
+        }
+        if (listener != null)
+            listener.run();
+
+        // send what was queued meanwhile before new frames go directly, so the order is kept
+        while (true) {
+            byte[] data;
+            synchronized (this) {
+                data = queue.poll();
+                if (data == null) {
+                    recovering = false;
+                    recoveries++;
+                    downtimeMillis += System.currentTimeMillis() - failedAt;
+                    return;
+                }
+            }
+            try {
+                rf24.write(data);
+            } catch (PigpioException e) {
+                synchronized (this) {
+                    lastFailure = e.toString();
+                }
+                return;  // still recovering, next check tries again
+            }
+        }
+    }
+
+    /**
+     * @return true while the radio is being recovered
+     */
+    public boolean isRecovering() {
+        return recovering;
+    }
+
+    /**
+     * @return number of checks made
+     */
+    public synchronized long getChecks() {
+        return checks;
+    }
+
+    /**
+     * @return number of failures detected
+     */
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return number of successful recoveries
+     */
+    public synchronized long getRecoveries() {
+        return recoveries;
+    }
+
+    /**
+     * @return total time between failure detection and recovery, in milliseconds
+     */
+    public synchronized long getDowntimeMillis() {
+        return downtimeMillis + (recovering ? System.currentTimeMillis() - failedAt : 0);
+    }
+
+    /**
+     * @return number of frames queued during recovery
+     */
+    public synchronized long getQueuedFrames() {
+        return queuedFrames;
+    }
+
+    /**
+     * @return number of queued frames dropped because queue was full
+     */
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * @return reason of the last failure, null if there was none
+     */
+    public synchronized String getLastFailure() {
+        return lastFailure;
+    }
+}
@@ -0,0 +1,306 @@
+package rf24j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Copy of nRF24 register map taken at one moment (see RF24.snapshot).<br/>
+ * Raw register values are stored in preallocated arrays, so one instance can be reused
+ * for periodic captures without creating garbage. Values are decoded only when asked for,
+ * which does not require access to the radio.
+ */
+public class RegisterSnapshot {
+    /**
+     * Number of single-byte registers kept (0x00 - 0x1D)
+     */
+    static final int REGISTERS = 0x1E;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    final byte[] regs = new byte[REGISTERS];
+
+    /**
+     * RX_ADDR_P0 - RX_ADDR_P5 (as stored by chip, LSB first; only LSB is stored for pipes 2-5)
+     * and TX_ADDR at index 6
+     */
+    final byte[][] addresses = new byte[7][5];
+
+    long capturedAt;
+
+    /**
+     * Return raw register value
+     * @param reg register, e.g. RF24.CONFIG_REGISTER
+     * @return register value 0-255
+     */
+    public int getRegister(int reg) {
+        return regs[reg] & 0xFF;
+    }
+
+    /**
+     * Copy receiving address of the pipe into provided array. For pipes 2-5 upper bytes are taken
+     * from pipe 1, the same way chip does it.
+     * @param pipe pipe 0-5
+     * @param out array to copy address into, LSB first
+     * @return number of bytes copied = address width
+     */
+    public int getRxAddress(int pipe, byte[] out) {
+        int width = getAddressWidth();
+        if (pipe >= 2) {
+            System.arraycopy(addresses[1], 1, out, 1, width - 1);
+            out[0] = addresses[pipe][0];
+        } else
+            System.arraycopy(addresses[pipe], 0, out, 0, width);
+        return width;
+    }
+
+    /**
+     * Copy transmitting address into provided array
+     * @param out array to copy address into, LSB first
+     * @return number of bytes copied = address width
+     */
+    public int getTxAddress(byte[] out) {
+        int width = getAddressWidth();
+        System.arraycopy(addresses[6], 0, out, 0, width);
+        return width;
+    }
+
+    /**
+     * @return System.currentTimeMillis() when snapshot was taken
+     */
+    public long getCapturedAt() {
+        return capturedAt;
+    }
+
+    /**
+     * @return STATUS register value
+     */
+    public int getStatus() {
+        return getRegister(RF24.STATUS_REGISTER);
+    }
+
+    /**
+     * @return RF channel 0-127
+     */
+    public int getChannel() {
+        return getRegister(RF24.RF_CH_REGISTER) & 0x7F;
+    }
+
+    /**
+     * @return one of RF24_250KBPS, RF24_1MBPS, RF24_2MBPS
+     */
+    public int getDataRate() {
+        int setup = getRegister(RF24.RF_SETUP);
+        return ((setup >> 5) & 1) << 1 | ((setup >> 3) & 1);
+    }
+
+    /**
+     * @return one of RF24_PA_MIN, RF24_PA_LOW, RF24_PA_HIGH, RF24_PA_MAX
+     */
+    public int getPALevel() {
+        return getRegister(RF24.RF_SETUP) & RF24.RF24_PA_MASK;
+    }
+
+    /**
+     * @return CRC length in bytes, 0 if CRC is disabled
+     */
+    public int getCRCLength() {
+        int config = getRegister(RF24.CONFIG_REGISTER);
+        if ((config & 1 << RF24.EN_CRC) == 0)
+            return 0;
+        return (config & 1 << RF24.CRCO) == 0 ? 1 : 2;
+    }
+
+    /**
+     * @return address width in bytes (3-5), -1 if register holds illegal value
+     */
+    public int getAddressWidth() {
+        switch (getRegister(RF24.SETUP_AW_REGISTER) & 0b11) {
+            case RF24.RF24_AW_3BYTES:
+                return 3;
+            case RF24.RF24_AW_4BYTES:
+                return 4;
+            case RF24.RF24_AW_5BYTES:
+                return 5;
+        }
+        return -1;
+    }
+
+    /**
+     * @return delay between retransmissions in microseconds
+     */
+    public int getRetryDelay() {
+        return (getRegister(RF24.SETUP_RETR_REGISTER) >> RF24.ARD) * 250 + 250;
+    }
+
+    /**
+     * @return max number of retransmissions
+     */
+    public int getRetryCount() {
+        return getRegister(RF24.SETUP_RETR_REGISTER) & 0x0F;
+    }
+
+    /**
+     * @return true if PWR_UP bit is set
+     */
+    public boolean isPoweredUp() {
+        return (getRegister(RF24.CONFIG_REGISTER) & 1 << RF24.PWR_UP) != 0;
+    }
+
+    /**
+     * @return true if PRIM_RX bit is set
+     */
+    public boolean isPrimaryRx() {
+        return (getRegister(RF24.CONFIG_REGISTER) & 1 << RF24.PRIM_RX) != 0;
+    }
+
+    /**
+     * Append human readable register dump in the same layout as RF24.printDetails
+     * @param sb builder to append to
+     * @return sb
+     */
+    public StringBuilder format(StringBuilder sb) {
+        sb.append("STATUS          = ");
+        hexBin(sb, RF24.STATUS_REGISTER);
+
+        // addresses are stored LSB first, so they are printed in reverse order
+        sb.append("\nRX_ADDR_P0-1    = ");
+        address(sb, addresses[0]);
+        sb.append("  ");
+        address(sb, addresses[1]);
+
+        sb.append("\nRX_ADDR_P2-5    = ");
+        for (int i = 2; i < 6; i++) {
+            hex(sb, addresses[i][0]);
+            sb.append("  ");
+        }
+
+        sb.append("\nTX_ADDR         = ");
+        address(sb, addresses[6]);
+
+        sb.append("\nRX_PW_P0-6      = ");
+        for (int reg = RF24.RX_PW_P0; reg <= RF24.RX_PW_P5; reg++) {
+            hex(sb, regs[reg]);
+            sb.append("  ");
+        }
+        sb.append("\n");
+
+        sb.append("\nEN_AA           = ");
+        hexBin(sb, RF24.EN_AA_REGISTER);
+        sb.append("\nEN_RXADDR       = ");
+        hexBin(sb, RF24.EN_RXADDR_REGISTER);
+        sb.append("\nRF_CH           = ");
+        hex(sb, regs[RF24.RF_CH_REGISTER]);
+        sb.append("\nRF_SETUP        = ");
+        hexBin(sb, RF24.RF_SETUP);
+        sb.append("\nCONFIG          = ");
+        hexBin(sb, RF24.CONFIG_REGISTER);
+        sb.append("\nDYNPD/FEATURE   = ");
+        hex(sb, regs[RF24.DYNPD]);
+        sb.append(' ');
+        hex(sb, regs[RF24.FEATURE]);
+
+        sb.append("\nData Rate       = ");
+        switch (getDataRate()) {
+            case RF24.RF24_1MBPS:
+                sb.append("1 Mbps");
+                break;
+            case RF24.RF24_2MBPS:
+                sb.append("2 Mbps");
+                break;
+            case RF24.RF24_250KBPS:
+                sb.append("250 kbps");
+                break;
+            default:
+                sb.append("reserved");
+        }
+
+        sb.append("\nMODEL           = ???");
+
+        sb.append("\nCRC Length      = ");
+        int crc = getCRCLength();
+        if (crc == 0)
+            sb.append("disabled");
+        else
+            sb.append(crc * 8).append(" bits");
+
+        sb.append("\nPA Power        = ");
+        switch (getPALevel()) {
+            case RF24.RF24_PA_MIN:
+                sb.append("-18 dBm");
+                break;
+            case RF24.RF24_PA_LOW:
+                sb.append("-12 dBm");
+                break;
+            case RF24.RF24_PA_HIGH:
+                sb.append("-6 dBm");
+                break;
+            default:
+                sb.append("0 dBm");
+        }
+
+        sb.append("\nSETUP_RETR      = ");
+        hexBin(sb, RF24.SETUP_RETR_REGISTER);
+        sb.append("\n");
+
+        sb.append("Delay: ").append(getRetryDelay());
+        sb.append(", Auto retransmit count: ").append(getRetryCount());
+        sb.append("\nRF Channel      = ").append(getChannel());
+        sb.append("\nAddress widths  = ").append(getAddressWidth()).append(" bytes");
+        return sb;
+    }
+
+    /**
+     * Save snapshot into file, e.g. as profile for warm start (see RF24.init with profile)
+     * @param file file to write
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        byte[] data = new byte[REGISTERS + addresses.length * 5];
+        System.arraycopy(regs, 0, data, 0, REGISTERS);
+        for (int i = 0; i < addresses.length; i++)
+            System.arraycopy(addresses[i], 0, data, REGISTERS + i * 5, 5);
+        Files.write(file.toPath(), data);
+    }
+
+    /**
+     * Load snapshot saved by save
+     * @param file file to read
+     * @return loaded snapshot
+     * @throws IOException if file can not be read or it is not a saved snapshot
+     */
+    public static RegisterSnapshot load(File file) throws IOException {
+        RegisterSnapshot snapshot = new RegisterSnapshot();
+        byte[] data = Files.readAllBytes(file.toPath());
+        if (data.length != REGISTERS + snapshot.addresses.length * 5)
+            throw new IOException("Not a register snapshot: " + file);
+        System.arraycopy(data, 0, snapshot.regs, 0, REGISTERS);
+        for (int i = 0; i < snapshot.addresses.length; i++)
+            System.arraycopy(data, REGISTERS + i * 5, snapshot.addresses[i], 0, 5);
+        snapshot.capturedAt = file.lastModified();
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return format(new StringBuilder(768)).toString();
+    }
+
+    private void hexBin(StringBuilder sb, int reg) {
+        int v = regs[reg] & 0xFF;
+        hex(sb, (byte) v);
+        sb.append("  ");
+        for (int bit = 7; bit >= 0; bit--)
+            sb.append((v >> bit & 1) == 0 ? '0' : '1');
+    }
+
+    private static void hex(StringBuilder sb, byte b) {
+        sb.append("0x").append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+    }
+
+    private static void address(StringBuilder sb, byte[] address) {
+        sb.append("0x");
+        for (int i = address.length - 1; i >= 0; i--)
+            sb.append(Character.toUpperCase(HEX[(address[i] >> 4) & 0x0F])).append(Character.toUpperCase(HEX[address[i] & 0x0F]));
+    }
+}
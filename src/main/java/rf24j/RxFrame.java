@@ -0,0 +1,100 @@
+package rf24j;
+
+/**
+ * Received frame with pipe and timing information (see RF24.read(RxFrame)).<br/>
+ * Frames are meant to be reused - reading into an existing frame does not allocate anything.
+ */
+public class RxFrame {
+    /**
+     * Max payload size of nRF24
+     */
+    public static final int MAX_PAYLOAD_SIZE = 32;
+
+    final byte[] data = new byte[MAX_PAYLOAD_SIZE];
+    int length;
+    int pipe;
+    long captureTick = -1;
+    long captureNanos;
+    long deliveredNanos;
+
+    /**
+     * @return payload buffer, valid bytes are 0 - getLength()-1
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return payload length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return pipe the frame was received on (0-5)
+     */
+    public int getPipe() {
+        return pipe;
+    }
+
+    /**
+     * @return pigpio tick (microseconds) of IRQ edge signalling the frame, -1 if IRQ is not used
+     */
+    public long getCaptureTick() {
+        return captureTick;
+    }
+
+    /**
+     * @return System.nanoTime() when frame was signalled by IRQ, or when it was read from chip if IRQ is not used
+     */
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    /**
+     * @return System.nanoTime() when frame was handed over to application
+     */
+    public long getDeliveredNanos() {
+        return deliveredNanos;
+    }
+
+    /**
+     * @return time frame spent between capture and delivery, in nanoseconds
+     */
+    public long getQueueingDelayNanos() {
+        return deliveredNanos - captureNanos;
+    }
+
+    /**
+     * Copy content of another frame into this one.
+     * @param other frame to copy
+     */
+    public void copyFrom(RxFrame other) {
+        System.arraycopy(other.data, 0, data, 0, other.length);
+        length = other.length;
+        pipe = other.pipe;
+        captureTick = other.captureTick;
+        captureNanos = other.captureNanos;
+        deliveredNanos = other.deliveredNanos;
+    }
+
+    /**
+     * Fill frame with data
+     * @param payload payload to copy
+     * @param length number of bytes to copy
+     * @param pipe pipe number
+     */
+    public void set(byte[] payload, int length, int pipe) {
+        System.arraycopy(payload, 0, data, 0, length);
+        this.length = length;
+        this.pipe = pipe;
+    }
+
+    @Override
+    public String toString() {
+        byte[] valid = new byte[length];
+        System.arraycopy(data, 0, valid, 0, length);
+        return "pipe " + pipe + ": " + Util.bytesToHex(valid);
+    }
+}
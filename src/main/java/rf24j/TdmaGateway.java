@@ -0,0 +1,442 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gateway side of time-division polling (see TdmaSchedule for the superframe layout).<br/>
+ * Gateway broadcasts a beacon at the start of every superframe and listens for the rest of it.
+ * Each node sends only in its own slot, so nodes never collide and every node gets its frame through
+ * in the same place of every superframe - latency does not depend on how busy the other nodes are.
+ * Only join slots are shared.<br/>
+ * <br/>
+ * Slots are assigned incrementally - joining node gets the lowest free slot, other nodes keep theirs.
+ * Superframe grows when all slots are taken and shrinks when the last slots are freed. Assignment
+ * changes are announced in the next few beacons, the rest of the table is repeated in turns, so a
+ * node which missed a beacon learns its slot later.<br/>
+ * Beacons are sent to beaconAddress without acknowledgement (auto-ACK of pipe 0 is disabled),
+ * nodes send to gatewayAddress, which is received on pipe 1 with auto-ACK.
+ */
+public class TdmaGateway {
+    /**
+     * Number of beacons announcing an assignment change
+     */
+    public static final int ANNOUNCE_REPEATS = 3;
+
+    private static class Change {
+        final int id;
+        final int slot;
+        int remaining = ANNOUNCE_REPEATS;
+
+        Change(int id, int slot) {
+            this.id = id;
+            this.slot = slot;
+        }
+    }
+
+    private final RF24 rf24;
+    private final byte[] beaconAddress;
+    private final byte[] gatewayAddress;
+    private final FrameSink sink;
+
+    private TdmaSchedule schedule;
+    private int joinSlots = 2;
+    private int retries = 1;
+    private int jitterMicros = 200;
+    private int spiMicros = -1;
+    private int slotMicros;
+    private long expirySuperframes = 0;
+
+    private int[] owner = new int[0];                // node id per slot, -1 if free
+    private long[] lastHeard = new long[0];          // superframe the slot owner was last heard in
+    private final char[] slotOf = new char[0x10000]; // slot + 1 per node id, 0 if none
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+    private int tableCursor = 0;
+    private byte[] beacon;
+    private int seq = 0;
+
+    private volatile long superframeNanos;
+    private long superframes = 0;
+    private long frames = 0;
+    private long joins = 0;
+    private long expired = 0;
+    private long unknown = 0;
+
+    private final FrameSink frameSink = this::onFrame;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * @param rf24 initialized radio, data rate, address width, CRC and payload size have to be set
+     *             before open
+     * @param beaconAddress address beacons are sent to (LSB first)
+     * @param gatewayAddress address nodes send to (LSB first)
+     * @param sink receiver of data frames (see TdmaSchedule for their layout), it is called with the
+     *             radio locked
+     */
+    public TdmaGateway(RF24 rf24, byte[] beaconAddress, byte[] gatewayAddress, FrameSink sink) {
+        this.rf24 = rf24;
+        this.beaconAddress = beaconAddress.clone();
+        this.gatewayAddress = gatewayAddress.clone();
+        this.sink = sink;
+    }
+
+    /**
+     * Set superframe parameters. Has to be called before open. Nodes are expected to talk to their
+     * chips as fast as the gateway does (see TdmaSchedule.spiMicros).
+     * @param joinSlots number of join slots in every superframe
+     * @param retries number of retransmissions fitting into a slot
+     * @param jitterMicros guard for scheduling latency on the nodes
+     */
+    public synchronized void configure(int joinSlots, int retries, int jitterMicros) {
+        configure(joinSlots, retries, -1, jitterMicros);
+    }
+
+    /**
+     * Set superframe parameters. Has to be called before open.
+     * @param joinSlots number of join slots in every superframe
+     * @param retries number of retransmissions fitting into a slot
+     * @param spiMicros duration of one transaction of the nodes with their chips, -1 to take it
+     *                  from the radio of the gateway
+     * @param jitterMicros guard for scheduling latency on the nodes
+     */
+    public synchronized void configure(int joinSlots, int retries, int spiMicros, int jitterMicros) {
+        this.joinSlots = joinSlots;
+        this.retries = retries;
+        this.spiMicros = spiMicros;
+        this.jitterMicros = jitterMicros;
+    }
+
+    /**
+     * Release slots of nodes which were not heard for given number of superframes
+     * @param superframes number of superframes, 0 to keep slots until release is called
+     */
+    public synchronized void setExpiry(long superframes) {
+        this.expirySuperframes = superframes;
+    }
+
+    /**
+     * Configure the radio and compute slot length from its data rate, address width, CRC and
+     * payload size. Radio is switched to LATENCY power policy, so it is never powered down between
+     * beacon and listening.
+     * @throws PigpioException
+     */
+    public void open() throws PigpioException {
+        synchronized (rf24) {
+            int payloadSize = rf24.getPayloadSize();
+            if (payloadSize < TdmaSchedule.BEACON_HEADER_SIZE + TdmaSchedule.BEACON_ENTRY_SIZE)
+                throw new RF24Exception("Payload too short for beacon: " + payloadSize);
+            rf24.stopListening();
+            rf24.setPowerPolicy(PowerPolicy.LATENCY, 0);
+            rf24.openWritingPipe(beaconAddress);
+            rf24.setAutoACK(0, false);  // beacon is not acknowledged
+            rf24.openReadingPipe(1, gatewayAddress);
+            rf24.setAutoACK(1, true);
+            int spi;
+            synchronized (this) {
+                spi = spiMicros >= 0 ? spiMicros : TdmaSchedule.spiMicros(rf24);
+            }
+            int micros = TdmaSchedule.slotMicros(rf24.getDataRate(), rf24.getAddressWidth(), rf24.getCRCLength(),
+                    payloadSize, retries, spi, jitterMicros);
+            synchronized (this) {
+                slotMicros = micros;
+                beacon = new byte[payloadSize];
+                schedule = new TdmaSchedule(owner.length, slotMicros, joinSlots, retries);
+            }
+            rf24.startListening();
+        }
+    }
+
+    /**
+     * Assign slot to a node known in advance. The assignment is not announced as a change - node gets
+     * the slot with TdmaNode.setSlot, or learns it from the table repeated in beacons. Joining nodes
+     * are assigned automatically.
+     * @param id node id (0 - 65535)
+     * @return slot of the node
+     */
+    public synchronized int assign(int id) {
+        checkId(id);
+        if (slotOf[id] != 0)
+            return slotOf[id] - 1;
+        int slot = 0;
+        while (slot < owner.length && owner[slot] >= 0)
+            slot++;
+        if (slot == owner.length)
+            resize(owner.length + 1);
+        owner[slot] = id;
+        lastHeard[slot] = superframes;
+        slotOf[id] = (char) (slot + 1);
+        return slot;
+    }
+
+    /**
+     * Free slot of a node
+     * @param id node id (0 - 65535)
+     */
+    public synchronized void release(int id) {
+        checkId(id);
+        if (slotOf[id] == 0)
+            return;
+        int slot = slotOf[id] - 1;
+        owner[slot] = -1;
+        slotOf[id] = 0;
+        announce(id, TdmaSchedule.NO_SLOT);
+
+        int length = owner.length;
+        while (length > 0 && owner[length - 1] < 0)
+            length--;
+        if (length < owner.length)
+            resize(length);
+    }
+
+    private void resize(int length) {
+        int old = owner.length;
+        owner = Arrays.copyOf(owner, length);
+        lastHeard = Arrays.copyOf(lastHeard, length);
+        for (int i = old; i < length; i++)
+            owner[i] = -1;
+        if (schedule != null)
+            schedule = new TdmaSchedule(length, slotMicros, joinSlots, retries);
+    }
+
+    private void announce(int id, int slot) {
+        for (Iterator<Change> i = changes.iterator(); i.hasNext(); )
+            if (i.next().id == id)
+                i.remove();  // only the latest change matters
+        changes.add(new Change(id, slot));
+    }
+
+    /**
+     * @param id node id (0 - 65535)
+     * @return slot of the node, -1 if it has none
+     */
+    public synchronized int getSlot(int id) {
+        checkId(id);
+        return slotOf[id] - 1;
+    }
+
+    private static void checkId(int id) {
+        if (id < 0 || id > 0xFFFF)
+            throw new IllegalArgumentException("Node id out of range: " + id);
+    }
+
+    /**
+     * @return current superframe layout
+     */
+    public synchronized TdmaSchedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * Send beacon and receive frames until the end of the superframe
+     * @throws PigpioException
+     */
+    public void runSuperframe() throws PigpioException {
+        long end = beginSuperframe();
+        while (true) {
+            long now = System.nanoTime();
+            if (end - now <= 0)
+                break;
+            if (poll() == 0)
+                LockSupport.parkNanos(Math.min(end - now, 50000));
+        }
+        endSuperframe();
+    }
+
+    /**
+     * Send beacon starting new superframe, for applications driving the gateway from their own loop
+     * instead of start (see runSuperframe)
+     * @return System.nanoTime() when the superframe ends
+     * @throws PigpioException
+     */
+    public long beginSuperframe() throws PigpioException {
+        byte[] frame;
+        long length;
+        synchronized (this) {
+            frame = buildBeacon();
+            length = TimeUnit.MICROSECONDS.toNanos(schedule.superframeMicros());
+            superframes++;
+        }
+
+        long start;
+        synchronized (rf24) {
+            rf24.write(frame);  // no acknowledgement - done once the beacon is on air
+            start = System.nanoTime();
+            rf24.startListening();
+        }
+        superframeNanos = start;
+        return start + length;
+    }
+
+    /**
+     * Read frames waiting in RX FIFO, has to be called often enough to keep the FIFO from filling up
+     * (it holds 3 frames)
+     * @return number of frames read
+     * @throws PigpioException
+     */
+    public int poll() throws PigpioException {
+        return rf24.drainRx(frameSink, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finish superframe - release slots of silent nodes
+     */
+    public void endSuperframe() {
+        expire();
+    }
+
+    private byte[] buildBeacon() {
+        byte[] b = beacon;
+        b[0] = TdmaSchedule.TYPE_BEACON;
+        b[1] = (byte) seq++;
+        b[2] = (byte) schedule.getSlotCount();
+        b[3] = (byte) (schedule.getSlotCount() >> 8);
+        b[4] = (byte) schedule.getSlotMicros();
+        b[5] = (byte) (schedule.getSlotMicros() >> 8);
+        b[6] = (byte) schedule.getJoinSlots();
+        b[7] = (byte) schedule.getRetries();
+
+        int max = (b.length - TdmaSchedule.BEACON_HEADER_SIZE) / TdmaSchedule.BEACON_ENTRY_SIZE;
+        int n = 0;
+        for (Iterator<Change> i = changes.iterator(); i.hasNext() && n < max; ) {
+            Change c = i.next();
+            putEntry(b, n++, c.id, c.slot);
+            if (--c.remaining == 0)
+                i.remove();
+        }
+        // fill the rest with the table, in turns
+        for (int k = 0; k < owner.length && n < max; k++) {
+            if (tableCursor >= owner.length)
+                tableCursor = 0;
+            int slot = tableCursor++;
+            if (owner[slot] >= 0)
+                putEntry(b, n++, owner[slot], slot);
+        }
+        b[8] = (byte) n;
+        return b;
+    }
+
+    private static void putEntry(byte[] b, int n, int id, int slot) {
+        int i = TdmaSchedule.BEACON_HEADER_SIZE + n * TdmaSchedule.BEACON_ENTRY_SIZE;
+        b[i] = (byte) id;
+        b[i + 1] = (byte) (id >> 8);
+        b[i + 2] = (byte) slot;
+        b[i + 3] = (byte) (slot >> 8);
+    }
+
+    private void onFrame(RxFrame frame) {
+        int id = TdmaSchedule.nodeId(frame);
+        if (id < 0)
+            return;
+        synchronized (this) {
+            if (frame.data[0] == TdmaSchedule.TYPE_JOIN) {
+                if (slotOf[id] == 0)
+                    joins++;
+                announce(id, assign(id));  // also when node missed the announcement
+                return;
+            }
+            if (slotOf[id] == 0) {
+                unknown++;  // node does not know it lost its slot - beacon tells it
+                announce(id, TdmaSchedule.NO_SLOT);
+                return;
+            }
+            lastHeard[slotOf[id] - 1] = superframes;
+            frames++;
+        }
+        sink.accept(frame);
+    }
+
+    private synchronized void expire() {
+        if (expirySuperframes <= 0)
+            return;
+        for (int slot = owner.length - 1; slot >= 0; slot--) {
+            if (slot < owner.length && owner[slot] >= 0 && superframes - lastHeard[slot] > expirySuperframes) {
+                release(owner[slot]);
+                expired++;
+            }
+        }
+    }
+
+    /**
+     * Start thread running superframes one after another
+     */
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        running = true;
+        thread = new Thread(() -> {
+            while (running) {
+                try {
+                    runSuperframe();
+                } catch (PigpioException e) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                }
+            }
+        }, "RF24 TDMA gateway");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the thread after the current superframe
+     * @throws InterruptedException
+     */
+    public void stop() throws InterruptedException {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t != null)
+            t.join();
+    }
+
+    /**
+     * @return System.nanoTime() when the beacon of the current superframe was sent
+     */
+    public long getSuperframeNanos() {
+        return superframeNanos;
+    }
+
+    /**
+     * @return number of superframes run
+     */
+    public synchronized long getSuperframes() {
+        return superframes;
+    }
+
+    /**
+     * @return number of data frames received from nodes with a slot
+     */
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return number of nodes joined
+     */
+    public synchronized long getJoins() {
+        return joins;
+    }
+
+    /**
+     * @return number of slots released because their node was silent
+     */
+    public synchronized long getExpired() {
+        return expired;
+    }
+
+    /**
+     * @return number of data frames from nodes without a slot
+     */
+    public synchronized long getUnknown() {
+        return unknown;
+    }
+}
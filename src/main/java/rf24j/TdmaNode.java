@@ -0,0 +1,414 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Node side of time-division polling (see TdmaGateway).<br/>
+ * Node listens for beacons and sends at most one frame per superframe, in its own slot. Slot times
+ * are counted from the moment the beacon was received, so the IRQ pin should be used
+ * (see RF24.setIrqPin) - otherwise the beacon is timestamped when it is read and the polling
+ * interval adds to the jitter. Node sends nothing in a superframe whose beacon it missed, and
+ * gives up a slot it would start too late, so a late node can not collide with its neighbour.<br/>
+ * <br/>
+ * Node without a slot sends join request in a random join slot and waits for a beacon assigning
+ * it one.<br/>
+ * Pipe 0 (address of the gateway, for acknowledgements) would receive and acknowledge frames of
+ * other nodes, so the node listens only when no node sends - from the end of the superframe until
+ * the next beacon arrives. Pipe 0 and retries stay configured while the node is in sync, nothing
+ * but the frame itself is written to the chip in the slot. Pipe 0 is disabled only while the node
+ * has to listen for a beacon without knowing when it comes (before the first one, or when a
+ * beacon did not come within a slot after the end of the superframe).
+ */
+public class TdmaNode {
+    /**
+     * Number of beacons to wait for slot assignment before join request is repeated
+     */
+    public static final int JOIN_WAIT = 4;
+
+    private final RF24 rf24;
+    private final int id;
+    private final byte[] beaconAddress;
+    private final byte[] gatewayAddress;
+    private final Random random;
+
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+    private int maxQueued = 16;
+
+    private TdmaSchedule schedule;
+    private int slot = -1;
+    private int joinSlot = -1;
+    private int joinWait = 0;
+    private long beaconNanos;
+    private boolean pending = false;  // beacon received, own slot not used yet
+    private long jitterNanos;
+    private int retries = -1;
+    private int spiMicros;
+
+    // guarded by rf24
+    private boolean listening = false;
+    private boolean synced = false;   // pipe 0 is enabled, node listens only in the beacon window
+    private long windowNanos;         // end of the superframe, when the next beacon window opens
+    private long windowTimeoutNanos;  // how long to wait for the beacon in the window
+
+    private int dataRate;
+    private int addressWidth;
+    private int crcLength;
+    private int payloadSize;
+
+    private long beacons = 0;
+    private long sent = 0;
+    private long failed = 0;
+    private long late = 0;
+    private long joinRequests = 0;
+
+    private final FrameSink frameSink = this::onFrame;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * @param rf24 initialized radio with data rate, address width, CRC and payload size of the gateway
+     * @param id node id (0 - 65535)
+     * @param beaconAddress address beacons are sent to (LSB first)
+     * @param gatewayAddress address of the gateway (LSB first)
+     */
+    public TdmaNode(RF24 rf24, int id, byte[] beaconAddress, byte[] gatewayAddress) {
+        this(rf24, id, beaconAddress, gatewayAddress, new Random());
+    }
+
+    /**
+     * @param rf24 initialized radio with data rate, address width, CRC and payload size of the gateway
+     * @param id node id (0 - 65535)
+     * @param beaconAddress address beacons are sent to (LSB first)
+     * @param gatewayAddress address of the gateway (LSB first)
+     * @param random random generator used to pick join slots
+     */
+    public TdmaNode(RF24 rf24, int id, byte[] beaconAddress, byte[] gatewayAddress, Random random) {
+        if (id < 0 || id > 0xFFFF)
+            throw new IllegalArgumentException("Node id out of range: " + id);
+        this.rf24 = rf24;
+        this.id = id;
+        this.beaconAddress = beaconAddress.clone();
+        this.gatewayAddress = gatewayAddress.clone();
+        this.random = random;
+    }
+
+    /**
+     * Configure the radio and start listening for beacons. Radio is switched to LATENCY power
+     * policy, so it is never powered down between slot and beacon window.
+     * @throws PigpioException
+     */
+    public void open() throws PigpioException {
+        synchronized (rf24) {
+            rf24.stopListening();
+            rf24.setPowerPolicy(PowerPolicy.LATENCY, 0);
+            rf24.openWritingPipe(gatewayAddress);
+            rf24.clearRegisterBits(RF24.EN_RXADDR_REGISTER, (byte) 1);  // until the first beacon
+            rf24.openReadingPipe(1, beaconAddress);
+            rf24.setAutoACK(1, false);  // beacon is a broadcast
+            synchronized (this) {
+                dataRate = rf24.getDataRate();
+                addressWidth = rf24.getAddressWidth();
+                crcLength = rf24.getCRCLength();
+                payloadSize = rf24.getPayloadSize();
+                spiMicros = TdmaSchedule.spiMicros(rf24);
+            }
+            synced = false;
+            rf24.startListening();
+            listening = true;
+        }
+    }
+
+    /**
+     * Use slot assigned in advance (see TdmaGateway.assign) instead of joining
+     * @param slot data slot, -1 to join
+     */
+    public synchronized void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * @param maxQueued max number of frames waiting for the slot, oldest frames are dropped above it
+     */
+    public synchronized void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Queue data to be sent in the next slot
+     * @param data data, at most payload size - TdmaSchedule.DATA_HEADER_SIZE bytes
+     * @return false if the oldest queued frame was dropped to make room
+     */
+    public synchronized boolean send(byte[] data) {
+        byte[] frame = new byte[TdmaSchedule.DATA_HEADER_SIZE + data.length];
+        frame[0] = TdmaSchedule.TYPE_DATA;
+        frame[1] = (byte) id;
+        frame[2] = (byte) (id >> 8);
+        System.arraycopy(data, 0, frame, TdmaSchedule.DATA_HEADER_SIZE, data.length);
+        boolean room = queue.size() < maxQueued;
+        if (!room)
+            queue.poll();
+        queue.add(frame);
+        return room;
+    }
+
+    /**
+     * Read beacons waiting in RX FIFO. Starts listening when the beacon window opens and stops once
+     * the beacon was received, so it has to be called in the window as well (at the end of the
+     * superframe).
+     * @return true if a beacon was received
+     * @throws PigpioException
+     */
+    public boolean receive() throws PigpioException {
+        synchronized (rf24) {
+            if (!listening) {
+                if (synced && System.nanoTime() - windowNanos < 0)
+                    return false;  // other nodes may be sending
+                rf24.startListening();
+                listening = true;
+            }
+
+            long before = getBeacons();
+            rf24.drainRx(frameSink, Integer.MAX_VALUE);
+            if (getBeacons() == before) {
+                if (synced && System.nanoTime() - windowNanos > windowTimeoutNanos) {
+                    // beacon missed - keep listening without pipe 0 until the next one
+                    rf24.clearRegisterBits(RF24.EN_RXADDR_REGISTER, (byte) 1);
+                    synced = false;
+                }
+                return false;
+            }
+
+            // nothing to receive until the end of the superframe, radio waits for the slot in standby
+            rf24.stopListening();
+            listening = false;
+            int retries;
+            synchronized (this) {
+                windowNanos = beaconNanos + TimeUnit.MICROSECONDS.toNanos(schedule.superframeMicros());
+                windowTimeoutNanos = TimeUnit.MICROSECONDS.toNanos(schedule.getSlotMicros());
+                retries = schedule.getRetries() != this.retries ? schedule.getRetries() : -1;
+                if (retries >= 0)
+                    this.retries = retries;
+            }
+            if (retries >= 0)
+                rf24.setRetries(TdmaSchedule.retryDelay(dataRate, addressWidth, crcLength), retries);
+            if (!synced) {
+                rf24.setRegisterBits(RF24.EN_RXADDR_REGISTER, (byte) 1);
+                synced = true;
+            }
+            return true;
+        }
+    }
+
+    private synchronized void onFrame(RxFrame frame) {
+        byte[] b = frame.data;
+        if (frame.length < TdmaSchedule.BEACON_HEADER_SIZE || b[0] != TdmaSchedule.TYPE_BEACON)
+            return;
+        int slotCount = (b[2] & 0xFF) | (b[3] & 0xFF) << 8;
+        int slotMicros = (b[4] & 0xFF) | (b[5] & 0xFF) << 8;
+        int joinSlots = b[6] & 0xFF;
+        int retries = b[7] & 0x0F;
+        if (schedule == null || schedule.getSlotCount() != slotCount || schedule.getSlotMicros() != slotMicros
+                || schedule.getJoinSlots() != joinSlots || schedule.getRetries() != retries) {
+            schedule = new TdmaSchedule(slotCount, slotMicros, joinSlots, retries);
+            // transmission may start late by the guard gateway left in the slot
+            int busy = TdmaSchedule.slotMicros(dataRate, addressWidth, crcLength, payloadSize, retries, spiMicros, 0);
+            jitterNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, slotMicros - busy));
+        }
+
+        int n = Math.min(b[8] & 0xFF, (frame.length - TdmaSchedule.BEACON_HEADER_SIZE) / TdmaSchedule.BEACON_ENTRY_SIZE);
+        for (int k = 0; k < n; k++) {
+            int i = TdmaSchedule.BEACON_HEADER_SIZE + k * TdmaSchedule.BEACON_ENTRY_SIZE;
+            int node = (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8;
+            int s = (b[i + 2] & 0xFF) | (b[i + 3] & 0xFF) << 8;
+            if (node == id) {
+                slot = s == TdmaSchedule.NO_SLOT ? -1 : s;
+                joinWait = 0;
+            } else if (s == slot)
+                slot = -1;  // slot was given to another node
+        }
+        if (slot >= slotCount)
+            slot = -1;
+
+        joinSlot = -1;
+        if (slot < 0 && joinSlots > 0) {
+            if (joinWait > 0)
+                joinWait--;
+            else
+                joinSlot = random.nextInt(joinSlots);
+        }
+        beaconNanos = frame.captureNanos;
+        pending = true;
+        beacons++;
+    }
+
+    /**
+     * @return System.nanoTime() when the next transmission of this node should start, -1 if there
+     * is nothing to send in the current superframe
+     */
+    public synchronized long nextSlotNanos() {
+        if (!pending || schedule == null)
+            return -1;
+        if (slot >= 0)
+            return queue.isEmpty() ? -1 : beaconNanos + TimeUnit.MICROSECONDS.toNanos(schedule.slotOffsetMicros(slot));
+        if (joinSlot >= 0)
+            return beaconNanos + TimeUnit.MICROSECONDS.toNanos(schedule.slotOffsetMicros(schedule.getSlotCount() + joinSlot));
+        return -1;
+    }
+
+    /**
+     * Send queued frame or join request, has to be called at nextSlotNanos. Nothing is sent when
+     * the slot started too long ago. Only the frame is written to the chip, the radio is left in
+     * TX mode until the next beacon window.
+     * @return result of RF24.write - 0 if OK, 1 if number of retries reached, 2 if timeout occurred;
+     * -1 if nothing was sent
+     * @throws PigpioException
+     */
+    public int transmit() throws PigpioException {
+        byte[] frame;
+        boolean join;
+        synchronized (this) {
+            long start = nextSlotNanos();
+            if (start < 0)
+                return -1;
+            pending = false;
+            if (System.nanoTime() - start > jitterNanos) {
+                late++;
+                return -1;
+            }
+            join = slot < 0;
+            if (join) {
+                frame = new byte[]{TdmaSchedule.TYPE_JOIN, (byte) id, (byte) (id >> 8)};
+                joinWait = JOIN_WAIT;
+                joinRequests++;
+            } else
+                frame = queue.peek();
+        }
+
+        int result = rf24.write(frame);
+
+        synchronized (this) {
+            if (!join) {
+                if (result == 0) {
+                    queue.poll();
+                    sent++;
+                } else
+                    failed++;  // frame stays queued for the next superframe
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Start thread receiving beacons and sending in the slots
+     */
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        running = true;
+        thread = new Thread(this::run, "RF24 TDMA node");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the thread
+     * @throws InterruptedException
+     */
+    public void stop() throws InterruptedException {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            t.interrupt();
+            t.join();
+        }
+    }
+
+    private void run() {
+        long spin = TimeUnit.MICROSECONDS.toNanos(200);
+        while (running) {
+            try {
+                receive();
+                long start = nextSlotNanos();
+                if (start < 0) {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                    continue;
+                }
+                // sleep until shortly before the slot, then wait actively for exact start
+                long wait;
+                while ((wait = start - System.nanoTime()) > 0 && running) {
+                    if (wait > spin)
+                        LockSupport.parkNanos(wait - spin);
+                }
+                transmit();
+            } catch (PigpioException e) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            }
+        }
+    }
+
+    /**
+     * @return node id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return current data slot, -1 if the node has none
+     */
+    public synchronized int getSlot() {
+        return slot;
+    }
+
+    /**
+     * @return number of frames waiting
+     */
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return number of beacons received
+     */
+    public synchronized long getBeacons() {
+        return beacons;
+    }
+
+    /**
+     * @return number of frames sent successfully
+     */
+    public synchronized long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return number of frames not acknowledged in their slot
+     */
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return number of slots given up because the node was too late
+     */
+    public synchronized long getLate() {
+        return late;
+    }
+
+    /**
+     * @return number of join requests sent
+     */
+    public synchronized long getJoinRequests() {
+        return joinRequests;
+    }
+}
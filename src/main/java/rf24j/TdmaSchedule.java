@@ -0,0 +1,183 @@
+package rf24j;
+
+/**
+ * Layout of TDMA superframe and frame formats shared by TdmaGateway and TdmaNode.<br/>
+ * Superframe starts with a beacon sent by the gateway. Time is measured from the moment the beacon
+ * is received (RX_DR). First slot is left for the gateway to turn around to RX, then come the data
+ * slots (one per node), then the join slots, where nodes without a slot ask for one:
+ * <pre>
+ * | beacon | turnaround | slot 0 | slot 1 | ... | slot n-1 | join 0 | ... | join j-1 | beacon ...
+ * </pre>
+ * Slot fits the SPI transactions which put the frame on air, TX settling (130us), every attempt of
+ * the frame including waiting for its acknowledgement (ARD), and a guard for timing jitter of the
+ * software. All of it is derived from data rate, address width, CRC length, payload size and
+ * duration of SPI transaction (see slotMicros).<br/>
+ * <br/>
+ * Frames (LSB first):
+ * <pre>
+ * beacon: TYPE_BEACON, seq, slot count (2), slot micros (2), join slots, retries, n, n x [node id (2), slot (2)]
+ * join:   TYPE_JOIN, node id (2)
+ * data:   TYPE_DATA, node id (2), data
+ * </pre>
+ * Beacon entries announce slot assignments - recent changes first, the rest of the table in turns.
+ * Slot NO_SLOT means the node lost its slot.
+ */
+public class TdmaSchedule {
+    public static final byte TYPE_BEACON = 0x42;
+    public static final byte TYPE_JOIN = 0x4A;
+    public static final byte TYPE_DATA = 0x44;
+    public static final int BEACON_HEADER_SIZE = 9;
+    public static final int BEACON_ENTRY_SIZE = 4;
+    public static final int DATA_HEADER_SIZE = 3;
+    public static final int NO_SLOT = 0xFFFF;
+
+    /**
+     * Time the chip needs to switch between RX and TX, or to start TX from standby
+     */
+    public static final int SETTLE_MICROS = 130;
+
+    /**
+     * Transactions with the chip issued in the slot before the frame goes on air - CONFIG write
+     * switching to TX, payload write and CE pulse
+     */
+    public static final int TX_TRANSACTIONS = 3;
+
+    /**
+     * Typical duration of one transaction through pigpiod, without RF24 SPI delay
+     */
+    public static final int SPI_MICROS = 100;
+
+    private final int slotCount;
+    private final int slotMicros;
+    private final int joinSlots;
+    private final int retries;
+
+    /**
+     * @param slotCount number of data slots
+     * @param slotMicros length of one slot
+     * @param joinSlots number of join slots
+     * @param retries number of retransmissions fitting into one slot
+     */
+    public TdmaSchedule(int slotCount, int slotMicros, int joinSlots, int retries) {
+        if (slotCount < 0 || slotCount >= NO_SLOT || slotMicros <= 0 || slotMicros > 0xFFFF
+                || joinSlots < 0 || joinSlots > 255 || retries < 0 || retries > 15)
+            throw new IllegalArgumentException("Invalid TDMA schedule");
+        this.slotCount = slotCount;
+        this.slotMicros = slotMicros;
+        this.joinSlots = joinSlots;
+        this.retries = retries;
+    }
+
+    /**
+     * @return number of data slots
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @return length of one slot in microseconds
+     */
+    public int getSlotMicros() {
+        return slotMicros;
+    }
+
+    /**
+     * @return number of join slots
+     */
+    public int getJoinSlots() {
+        return joinSlots;
+    }
+
+    /**
+     * @return number of retransmissions fitting into one slot
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * @param slot data slot number, slotCount + n for join slot n
+     * @return start of the slot in microseconds after the beacon was received
+     */
+    public long slotOffsetMicros(int slot) {
+        return (1L + slot) * slotMicros;
+    }
+
+    /**
+     * @return time from beacon reception to the end of the last join slot, in microseconds
+     */
+    public long superframeMicros() {
+        return slotOffsetMicros(slotCount + joinSlots);
+    }
+
+    /**
+     * Time a frame occupies the channel
+     * @param dataRate one of RF24.RF24_250KBPS, RF24.RF24_1MBPS, RF24.RF24_2MBPS
+     * @param addressWidth address width in bytes
+     * @param crcLength CRC length in bytes
+     * @param payloadSize payload size in bytes, 0 for acknowledgement
+     * @return airtime in microseconds
+     */
+    public static int airtimeMicros(int dataRate, int addressWidth, int crcLength, int payloadSize) {
+        // preamble, address, 9 bit packet control field, payload, CRC
+        int bits = 8 * (1 + addressWidth + payloadSize + crcLength) + 9;
+        switch (dataRate) {
+            case RF24.RF24_250KBPS:
+                return bits * 4;
+            case RF24.RF24_2MBPS:
+                return (bits + 1) / 2;
+            default:
+                return bits;
+        }
+    }
+
+    /**
+     * Shortest auto retransmit delay the acknowledgement fits in
+     * @param dataRate one of RF24.RF24_250KBPS, RF24.RF24_1MBPS, RF24.RF24_2MBPS
+     * @param addressWidth address width in bytes
+     * @param crcLength CRC length in bytes
+     * @return ARD value for RF24.setRetries (delay is (ARD+1) x 250us)
+     */
+    public static int retryDelay(int dataRate, int addressWidth, int crcLength) {
+        int wait = SETTLE_MICROS + airtimeMicros(dataRate, addressWidth, crcLength, 0);
+        return Math.min(15, (wait + 249) / 250 - 1);
+    }
+
+    /**
+     * Slot length fitting the transactions starting transmission, TX settling, all attempts of a
+     * frame with their acknowledgement wait and a guard
+     * @param dataRate one of RF24.RF24_250KBPS, RF24.RF24_1MBPS, RF24.RF24_2MBPS
+     * @param addressWidth address width in bytes
+     * @param crcLength CRC length in bytes
+     * @param payloadSize payload size in bytes
+     * @param retries number of retransmissions
+     * @param spiMicros duration of one transaction with the chip, including RF24 SPI delay
+     * @param jitterMicros how much the start of transmission may be late (scheduling latency)
+     * @return slot length in microseconds
+     */
+    public static int slotMicros(int dataRate, int addressWidth, int crcLength, int payloadSize, int retries,
+                                 int spiMicros, int jitterMicros) {
+        int attempt = airtimeMicros(dataRate, addressWidth, crcLength, payloadSize)
+                + (retryDelay(dataRate, addressWidth, crcLength) + 1) * 250;
+        return TX_TRANSACTIONS * spiMicros + SETTLE_MICROS + (retries + 1) * attempt + jitterMicros;
+    }
+
+    /**
+     * @param rf24 radio
+     * @return duration of one transaction with the chip of the radio, SPI_MICROS plus its SPI delay
+     */
+    public static int spiMicros(RF24 rf24) {
+        return SPI_MICROS + (int) rf24.getSpiDelay();
+    }
+
+    /**
+     * @param frame frame received by the gateway
+     * @return id of the node which sent data or join frame, -1 if frame is not a TDMA frame
+     */
+    public static int nodeId(RxFrame frame) {
+        if (frame.length < DATA_HEADER_SIZE || (frame.data[0] != TYPE_DATA && frame.data[0] != TYPE_JOIN))
+            return -1;
+        return (frame.data[1] & 0xFF) | (frame.data[2] & 0xFF) << 8;
+    }
+}
@@ -0,0 +1,335 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transmit queue in front of RF24 with priority classes, per destination fairness and backoff.<br/>
+ * Frames are queued per destination and priority. Sending thread always serves the highest priority
+ * with a frame ready, destinations of the same priority take turns (round robin), so a bulk transfer
+ * to one node does not delay control frames and other nodes.<br/>
+ * <br/>
+ * When a frame reaches max number of retries (MAX_RT), its destination is put on hold for a random
+ * backoff time, which doubles with every further failure. Nodes colliding with each other get out of
+ * lockstep of the hardware retry timer this way, and an unreachable node does not block frames
+ * for other destinations. Frame is failed after configured number of attempts.
+ */
+public class TxScheduler {
+
+    public enum Priority {
+        CONTROL,
+        INTERACTIVE,
+        BULK
+    }
+
+    private static class Frame {
+        final byte[] data;
+        final CompletableFuture<Integer> future;
+        int attempts;
+
+        Frame(byte[] data, CompletableFuture<Integer> future) {
+            this.data = data;
+            this.future = future;
+        }
+    }
+
+    private static class Destination {
+        final byte[] address;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final ArrayDeque<Frame>[] queues = new ArrayDeque[Priority.values().length];
+        final boolean[] scheduled = new boolean[queues.length];
+        long notBefore;
+        int failures;
+
+        Destination(byte[] address) {
+            this.address = address.clone();
+            this.notBefore = System.nanoTime();
+            for (int i = 0; i < queues.length; i++)
+                queues[i] = new ArrayDeque<>();
+        }
+    }
+
+    private final RF24 rf24;
+    private final boolean listen;
+    private final Random random;
+    private final Map<Long, Destination> destinations = new HashMap<>();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<Destination>[] ready = new ArrayDeque[Priority.values().length];
+
+    private int maxQueued = 256;
+    private int maxAttempts = 5;
+    private long backoffBase = TimeUnit.MILLISECONDS.toNanos(2);
+    private long backoffMax = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private int queued = 0;
+
+    private long sent = 0;
+    private long failed = 0;
+    private long backoffs = 0;
+
+    private volatile boolean running = false;
+    private Thread sender;
+
+    /**
+     * @param rf24 initialized radio
+     * @param listen true to switch the radio back to listening when there is nothing to send
+     */
+    public TxScheduler(RF24 rf24, boolean listen) {
+        this(rf24, listen, new Random());
+    }
+
+    /**
+     * @param rf24 initialized radio
+     * @param listen true to switch the radio back to listening when there is nothing to send
+     * @param random random generator used for backoff jitter
+     */
+    public TxScheduler(RF24 rf24, boolean listen, Random random) {
+        this.rf24 = rf24;
+        this.listen = listen;
+        this.random = random;
+        for (int i = 0; i < ready.length; i++)
+            ready[i] = new ArrayDeque<>();
+    }
+
+    /**
+     * Configure backoff after failed transmission
+     * @param baseMillis backoff after the first failure, doubled with every next failure
+     * @param maxMillis max backoff
+     * @param maxAttempts number of attempts (each with full hardware retries) before frame is failed
+     */
+    public synchronized void setBackoff(long baseMillis, long maxMillis, int maxAttempts) {
+        this.backoffBase = TimeUnit.MILLISECONDS.toNanos(baseMillis);
+        this.backoffMax = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param maxQueued max number of frames waiting, frames submitted above the limit are failed
+     */
+    public synchronized void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Queue frame for sending
+     * @param address destination address (LSB first)
+     * @param data data to send
+     * @param priority priority class
+     * @return future completed with result of RF24.write of the last attempt - 0 if OK,
+     * 1 if number of retries reached, 2 if timeout occurred; failed with RF24Exception if queue is full
+     */
+    public synchronized CompletableFuture<Integer> submit(byte[] address, byte[] data, Priority priority) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        if (queued >= maxQueued) {
+            future.completeExceptionally(new RF24Exception("TX queue full"));
+            return future;
+        }
+        Destination d = destination(address);
+        d.queues[priority.ordinal()].addLast(new Frame(data.clone(), future));
+        schedule(d, priority.ordinal());
+        queued++;
+        notifyAll();
+        return future;
+    }
+
+    /**
+     * Start sending thread
+     */
+    public synchronized void start() {
+        if (sender != null)
+            return;
+        running = true;
+        sender = new Thread(this::sendLoop, "RF24 TX scheduler");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Stop sending thread. Frames still queued stay queued.
+     * @throws InterruptedException
+     */
+    public void stop() throws InterruptedException {
+        Thread s;
+        synchronized (this) {
+            running = false;
+            s = sender;
+            sender = null;
+            notifyAll();
+        }
+        if (s != null)
+            s.join();
+    }
+
+    private void sendLoop() {
+        int[] priority = new int[1];
+        while (running) {
+            Destination d;
+            Frame frame;
+            synchronized (this) {
+                d = next(System.nanoTime(), priority);
+                if (d == null) {
+                    try {
+                        long wait = nextReadyIn(System.nanoTime());
+                        if (wait < 0)
+                            wait();
+                        else if (wait > 0)
+                            TimeUnit.NANOSECONDS.timedWait(this, wait);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    continue;
+                }
+                frame = d.queues[priority[0]].pollFirst();
+            }
+
+            int result;
+            try {
+                synchronized (rf24) {
+                    if (!rf24.isWritingPipe(d.address))
+                        rf24.openWritingPipe(d.address);  // TX_ADDR is shared, another component may have changed it
+                    result = rf24.write(frame.data);
+                }
+            } catch (PigpioException e) {
+                synchronized (this) {
+                    queued--;
+                    failed++;
+                    if (!d.queues[priority[0]].isEmpty())
+                        schedule(d, priority[0]);
+                }
+                frame.future.completeExceptionally(e);
+                continue;
+            }
+
+            boolean done;
+            synchronized (this) {
+                frame.attempts++;
+                done = result == 0 || frame.attempts >= maxAttempts;
+                if (result == 0) {
+                    d.failures = 0;
+                    d.notBefore = System.nanoTime();
+                    sent++;
+                } else {
+                    d.failures++;
+                    d.notBefore = System.nanoTime() + backoff(d.failures);
+                    backoffs++;
+                    if (done)
+                        failed++;
+                    else
+                        d.queues[priority[0]].addFirst(frame);
+                }
+                if (done)
+                    queued--;
+                if (!d.queues[priority[0]].isEmpty())
+                    schedule(d, priority[0]);
+            }
+            if (done)
+                frame.future.complete(result);
+
+            if (listen && idle()) {
+                try {
+                    rf24.startListening();
+                } catch (PigpioException e) {
+                    // next write reports the problem
+                }
+            }
+        }
+    }
+
+    /**
+     * Take destination which is allowed to send, highest priority first, round robin within priority.
+     * @param priority filled with priority of the frame to send
+     * @return destination, null if nothing can be sent now
+     */
+    private Destination next(long now, int[] priority) {
+        for (int p = 0; p < ready.length; p++) {
+            ArrayDeque<Destination> queue = ready[p];
+            for (int n = queue.size(); n > 0; n--) {
+                Destination d = queue.pollFirst();
+                if (d.notBefore - now <= 0) {
+                    // put back after sending, at the end of the queue
+                    d.scheduled[p] = false;
+                    priority[0] = p;
+                    return d;
+                }
+                queue.addLast(d);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return nanoseconds until a destination on hold may send again, -1 if nothing is queued
+     */
+    private long nextReadyIn(long now) {
+        long min = -1;
+        for (ArrayDeque<Destination> queue : ready)
+            for (Destination d : queue) {
+                long wait = Math.max(0, d.notBefore - now);
+                if (min < 0 || wait < min)
+                    min = wait;
+            }
+        return min;
+    }
+
+    private synchronized boolean idle() {
+        return nextReadyIn(System.nanoTime()) != 0;
+    }
+
+    private void schedule(Destination d, int priority) {
+        if (!d.scheduled[priority]) {
+            ready[priority].addLast(d);
+            d.scheduled[priority] = true;
+        }
+    }
+
+    private long backoff(int failures) {
+        long delay = Math.min(backoffMax, backoffBase << Math.min(failures - 1, 20));
+        return (long) (delay * (0.5 + random.nextDouble()));  // jitter +-50%
+    }
+
+    private Destination destination(byte[] address) {
+        long key = 0;
+        for (int i = 0; i < address.length && i < 8; i++)
+            key |= (address[i] & 0xFFL) << (8 * i);
+        Destination d = destinations.get(key);
+        if (d == null) {
+            d = new Destination(address);
+            destinations.put(key, d);
+        }
+        return d;
+    }
+
+    /**
+     * @return number of frames waiting
+     */
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return number of frames sent successfully
+     */
+    public synchronized long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return number of frames failed after all attempts
+     */
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return number of times a destination was put on hold after failed transmission
+     */
+    public synchronized long getBackoffs() {
+        return backoffs;
+    }
+}
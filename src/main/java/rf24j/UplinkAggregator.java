@@ -0,0 +1,333 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups received frames into batches before they are forwarded upstream.<br/>
+ * Frames are grouped by pipe, or by node id taken from payload (see setKeyOffset). Batch is handed
+ * over to the sink when it is full or when its oldest frame waited for configured time.
+ * Batches are published by a separate thread through a bounded queue. When the sink is too slow
+ * and the queue gets full, the receiving side either blocks (RX FIFO of the chip then fills up and
+ * senders get no acknowledgements) or the batch is dropped.<br/>
+ * Batches and frames are pooled, so steady state operation does not allocate.
+ */
+public class UplinkAggregator {
+    private static final int KEYS = 256;
+
+    private final BatchSink sink;
+    private final int maxFrames;
+    private final long maxDelayNanos;
+    private final boolean block;
+    private int keyOffset = -1;
+
+    private final FrameBatch[] open = new FrameBatch[KEYS];
+    private final FrameBatch[] expired = new FrameBatch[KEYS];
+    private final ArrayDeque<FrameBatch> pool = new ArrayDeque<>();
+    private final ArrayBlockingQueue<FrameBatch> ready;
+
+    private long frames = 0;
+    private long batches = 0;
+    private long publishedFrames = 0;
+    private long droppedFrames = 0;
+    private long failedBatches = 0;
+    private long latencyTotal = 0;
+    private long latencyMax = 0;
+    private long receiveErrors = 0;
+
+    private volatile DuplicateFilter filter;
+    private volatile boolean running = false;
+    private Thread publisher;
+    private Thread receiver;
+
+    /**
+     * @param sink destination of batches
+     * @param maxFrames max number of frames in batch
+     * @param maxDelayMillis max time first frame of batch waits before the batch is published
+     * @param queueCapacity number of complete batches waiting for the sink
+     * @param block true to block the caller of add when queue is full, false to drop the batch
+     */
+    public UplinkAggregator(BatchSink sink, int maxFrames, long maxDelayMillis, int queueCapacity, boolean block) {
+        this.sink = sink;
+        this.maxFrames = maxFrames;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.ready = new ArrayBlockingQueue<>(queueCapacity);
+        this.block = block;
+    }
+
+    /**
+     * Group frames by payload byte instead of pipe
+     * @param offset position of node id in payload, -1 to group by pipe
+     */
+    public synchronized void setKeyOffset(int offset) {
+        this.keyOffset = offset;
+    }
+
+    /**
+     * Drop duplicate frames read from radio (see start(RF24)) before they are batched
+     * @param filter duplicate filter, null to batch all frames
+     */
+    public void setDuplicateFilter(DuplicateFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Add frame to batch of its node. Frame is copied.
+     * @param frame received frame
+     * @throws InterruptedException if interrupted while waiting for the sink
+     */
+    public void add(RxFrame frame) throws InterruptedException {
+        FrameBatch full = null;
+        synchronized (this) {
+            int key = keyOffset >= 0 && keyOffset < frame.length ? frame.data[keyOffset] & 0xFF : frame.pipe;
+            FrameBatch batch = open[key];
+            if (batch == null) {
+                batch = obtain();
+                batch.key = key;
+                open[key] = batch;
+            }
+            batch.add(frame);
+            frames++;
+            if (batch.isFull()) {
+                open[key] = null;
+                full = batch;
+            }
+        }
+        if (full != null)
+            enqueue(full);
+    }
+
+    /**
+     * Hand over all open batches to the sink, regardless of their size and age.
+     * @throws InterruptedException if interrupted while waiting for the sink
+     */
+    public void flush() throws InterruptedException {
+        // own array - expired is filled by the publisher thread meanwhile
+        FrameBatch[] batches = new FrameBatch[KEYS];
+        int count = collect(batches, true, 0);
+        for (int i = 0; i < count; i++)
+            enqueue(batches[i]);
+    }
+
+    /**
+     * Start thread publishing batches to the sink.
+     */
+    public synchronized void start() {
+        if (publisher != null)
+            return;
+        running = true;
+        publisher = new Thread(this::publishLoop, "RF24 uplink");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    /**
+     * Start publishing thread and thread reading frames from radio into aggregator.
+     * Radio should be listening already.
+     * @param rf24 radio to read from
+     */
+    public synchronized void start(RF24 rf24) {
+        start();
+        if (receiver != null)
+            return;
+        receiver = new Thread(() -> receiveLoop(rf24), "RF24 uplink receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Stop threads. Open batches are published before the publishing thread ends.
+     * @throws InterruptedException
+     */
+    public void stop() throws InterruptedException {
+        Thread p, r;
+        synchronized (this) {
+            running = false;
+            p = publisher;
+            r = receiver;
+            publisher = null;
+            receiver = null;
+        }
+        if (r != null) {
+            r.interrupt();
+            r.join();
+        }
+        if (p != null)
+            p.join();
+    }
+
+    private void receiveLoop(RF24 rf24) {
+        RxFrame frame = new RxFrame();
+        while (running) {
+            try {
+                if (rf24.available()) {
+                    boolean more;
+                    do {
+                        more = rf24.read(frame);
+                        DuplicateFilter f = filter;
+                        if (f == null || f.accept(frame))
+                            add(frame);
+                    } while (more && running);
+                } else
+                    Thread.sleep(1);
+            } catch (InterruptedException e) {
+                break;
+            } catch (PigpioException e) {
+                synchronized (this) {
+                    receiveErrors++;
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void publishLoop() {
+        long pollNanos = Math.max(maxDelayNanos / 4, TimeUnit.MILLISECONDS.toNanos(1));
+        while (running || !ready.isEmpty()) {
+            try {
+                FrameBatch batch = ready.poll(pollNanos, TimeUnit.NANOSECONDS);
+                if (batch != null)
+                    publish(batch);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            // expired batches are published directly - enqueueing them could block this thread
+            int count = collect(expired, !running, System.nanoTime() - maxDelayNanos);
+            for (int i = 0; i < count; i++)
+                publish(expired[i]);
+        }
+    }
+
+    /**
+     * Remove open batches opened before given time into given array
+     * @param into array for the batches, KEYS long
+     * @param all true to remove all open batches regardless of the time
+     * @param openedBefore System.nanoTime() the batches had to be opened before
+     * @return number of batches removed
+     */
+    private synchronized int collect(FrameBatch[] into, boolean all, long openedBefore) {
+        int count = 0;
+        for (int key = 0; key < KEYS; key++) {
+            FrameBatch batch = open[key];
+            if (batch != null && (all || batch.openedNanos - openedBefore <= 0)) {
+                open[key] = null;
+                into[count++] = batch;
+            }
+        }
+        return count;
+    }
+
+    private void enqueue(FrameBatch batch) throws InterruptedException {
+        if (block)
+            ready.put(batch);
+        else if (!ready.offer(batch)) {
+            synchronized (this) {
+                droppedFrames += batch.size;
+                release(batch);
+            }
+        }
+    }
+
+    private void publish(FrameBatch batch) {
+        long latency = System.nanoTime() - batch.openedNanos;
+        boolean ok = true;
+        try {
+            sink.publish(batch);
+        } catch (Exception e) {
+            ok = false;
+        }
+        synchronized (this) {
+            if (ok) {
+                batches++;
+                publishedFrames += batch.size;
+                latencyTotal += latency;
+                latencyMax = Math.max(latencyMax, latency);
+            } else {
+                failedBatches++;
+                droppedFrames += batch.size;
+            }
+            release(batch);
+        }
+    }
+
+    private FrameBatch obtain() {
+        FrameBatch batch = pool.poll();
+        return batch != null ? batch : new FrameBatch(maxFrames);
+    }
+
+    private void release(FrameBatch batch) {
+        batch.clear();
+        pool.push(batch);
+    }
+
+    /**
+     * @return number of frames added
+     */
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return number of batches published successfully
+     */
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return number of frames dropped because the queue was full or the sink failed
+     */
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * @return number of batches the sink failed to publish
+     */
+    public synchronized long getFailedBatches() {
+        return failedBatches;
+    }
+
+    /**
+     * @return number of errors reported by radio in receiving thread
+     */
+    public synchronized long getReceiveErrors() {
+        return receiveErrors;
+    }
+
+    /**
+     * @return average number of frames in published batch
+     */
+    public synchronized double getAverageBatchSize() {
+        return batches == 0 ? 0 : (double) publishedFrames / batches;
+    }
+
+    /**
+     * @return average time between first frame of batch and its publishing, in milliseconds
+     */
+    public synchronized double getAverageFlushLatencyMillis() {
+        return batches == 0 ? 0 : latencyTotal / 1e6 / batches;
+    }
+
+    /**
+     * @return max time between first frame of batch and its publishing, in milliseconds
+     */
+    public synchronized double getMaxFlushLatencyMillis() {
+        return latencyMax / 1e6;
+    }
+
+    /**
+     * @return number of batches waiting for the sink
+     */
+    public int getQueueDepth() {
+        return ready.size();
+    }
+}
@@ -0,0 +1,121 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays capture file (see PacketCapture) through RF24 running on SimulatedPigpio.<br/>
+ * Received frames are injected into RX FIFO of simulated chip and read back by the driver,
+ * sent frames are written by the driver. Report shows time spent in driver and SPI transactions
+ * needed, so driver changes can be benchmarked against real traffic.<br/>
+ * <br/>
+ * Usage: java rf24j.CaptureReplay capture-file [--realtime]
+ */
+public class CaptureReplay {
+    private static final int CE_PIN = 22;
+    private static final int CSN_PIN = 8;
+
+    private final File file;
+
+    private long rxFrames;
+    private long txFrames;
+    private long rxDropped;
+    private long elapsedNanos;
+    private long spiTransactions;
+
+    public CaptureReplay(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Replay capture
+     * @param realTime keep original timing between frames, otherwise replay as fast as possible
+     * @throws IOException
+     * @throws PigpioException
+     */
+    public void replay(boolean realTime) throws IOException, PigpioException {
+        SimulatedPigpio pigpio = new SimulatedPigpio(new RadioMedium(), CE_PIN, CSN_PIN);
+        RF24 rf24 = new RF24(pigpio);
+        if (!rf24.init(CE_PIN, CSN_PIN))
+            throw new RF24Exception("Simulated radio did not initialize");
+        rf24.setAutoACK(false);  // nobody to acknowledge replayed TX frames
+        pigpio.resetStatistics();
+
+        PacketCapture.Record record = new PacketCapture.Record();
+        RxFrame frame = new RxFrame();
+        byte[][] txBuffs = new byte[RxFrame.MAX_PAYLOAD_SIZE + 1][];
+
+        try (PacketCapture.Reader reader = new PacketCapture.Reader(file)) {
+            long first = -1;
+            long start = System.nanoTime();
+            while (reader.next(record)) {
+                if (first < 0)
+                    first = record.nanos;
+                if (realTime) {
+                    long wait = (record.nanos - first) - (System.nanoTime() - start);
+                    if (wait > 0)
+                        sleep(wait);
+                }
+
+                if (record.direction == PacketCapture.RX) {
+                    if (rf24.getPayloadSize() != record.length) {
+                        rf24.setPayloadSize(record.length);
+                    }
+                    if (!pigpio.inject(record.pipe & 0b111, record.data, record.length))
+                        rxDropped++;
+                    while (rf24.available()) {
+                        rf24.read(frame);
+                        rxFrames++;
+                    }
+                } else {
+                    byte[] buff = txBuffs[record.length];
+                    if (buff == null)
+                        buff = txBuffs[record.length] = new byte[record.length];
+                    System.arraycopy(record.data, 0, buff, 0, record.length);
+                    rf24.write(buff);
+                    txFrames++;
+                }
+            }
+            elapsedNanos = System.nanoTime() - start;
+        }
+
+        spiTransactions = pigpio.getSpiTransactions();
+        rf24.terminate();
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return report of the last replay
+     */
+    public String report() {
+        long frames = rxFrames + txFrames;
+        StringBuilder sb = new StringBuilder();
+        sb.append("Frames replayed  = ").append(frames).append(" (RX ").append(rxFrames).append(", TX ").append(txFrames).append(")");
+        sb.append("\nRX dropped       = ").append(rxDropped);
+        sb.append("\nElapsed          = ").append(elapsedNanos / 1000000).append(" ms");
+        if (frames > 0) {
+            sb.append("\nPer frame        = ").append(elapsedNanos / frames / 1000).append(" us");
+            sb.append("\nSPI transactions = ").append(spiTransactions).append(" (").append(String.format("%.1f", (double) spiTransactions / frames)).append(" per frame)");
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: CaptureReplay capture-file [--realtime]");
+            return;
+        }
+        CaptureReplay replay = new CaptureReplay(new File(args[0]));
+        replay.replay(args.length > 1 && args[1].equals("--realtime"));
+        System.out.println(replay.report());
+    }
+}
@@ -0,0 +1,83 @@
+package rf24j;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DrainRxTest {
+    private SimulatedPigpio pigpio;
+    private RF24 rf24;
+
+    @Before
+    public void setUp() throws Exception {
+        pigpio = new SimulatedPigpio(new RadioMedium(), 22, 8);
+        rf24 = SimulatedPigpio.radio(pigpio);
+    }
+
+    @Test
+    public void staticPayloadCostsOneTransactionPerFrame() throws Exception {
+        inject(3, 32);
+        List<String> frames = new ArrayList<>();
+        pigpio.resetStatistics();
+        int n = rf24.drainRx(f -> frames.add(f.pipe + ":" + f.data[0]), 10);
+
+        assertEquals(3, n);
+        assertEquals("[1:0, 2:1, 3:2]", frames.toString());
+        // 3 payloads, 1 read finding FIFO empty, 1 RX_DR clear
+        assertEquals(5, pigpio.getSpiTransactions());
+        assertFalse(rf24.available());
+    }
+
+    @Test
+    public void readLoopCostsMore() throws Exception {
+        inject(3, 32);
+        RxFrame frame = new RxFrame();
+        int n = 0;
+        pigpio.resetStatistics();
+        while (rf24.available()) {
+            boolean more;
+            do {
+                more = rf24.read(frame);
+                n++;
+            } while (more);
+        }
+
+        assertEquals(3, n);
+        assertEquals(14, pigpio.getSpiTransactions());
+    }
+
+    @Test
+    public void dynamicPayloadReadsWidthFirst() throws Exception {
+        rf24.enableDynamicPayloads();
+        inject(3, 8);
+        List<String> frames = new ArrayList<>();
+        pigpio.resetStatistics();
+        int n = rf24.drainRx(f -> frames.add(f.pipe + ":" + f.data[0] + "/" + f.length), 10);
+
+        assertEquals(3, n);
+        assertEquals("[1:0/8, 2:1/8, 3:2/8]", frames.toString());
+        // width and payload of every frame, 1 width read finding FIFO empty, 1 RX_DR clear
+        assertEquals(8, pigpio.getSpiTransactions());
+    }
+
+    @Test
+    public void maxFramesLeavesRestQueued() throws Exception {
+        inject(3, 32);
+        assertEquals(2, rf24.drainRx(f -> { }, 2));
+        assertEquals(1, rf24.drainRx(f -> { }, 2));
+        assertFalse(rf24.available());
+    }
+
+    private void inject(int frames, int length) {
+        for (int i = 0; i < frames; i++) {
+            byte[] data = new byte[length];
+            data[0] = (byte) i;
+            pigpio.inject(i + 1, data, length);
+        }
+    }
+}
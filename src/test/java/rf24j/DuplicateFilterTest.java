@@ -0,0 +1,110 @@
+package rf24j;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateFilterTest {
+    private static final byte[] ADDRESS = {'D', 'U', 'P', '0', '1'};
+    private static final int NODE = 7;
+
+    private final RxFrame frame = new RxFrame();
+
+    @Test
+    public void reorderedFramesAcceptedOnce() {
+        DuplicateFilter filter = new DuplicateFilter(0, 1, 2, 60000);
+        assertTrue(accept(filter, 10));
+        assertTrue(accept(filter, 12));
+        assertTrue(accept(filter, 11));
+        assertFalse(accept(filter, 11));
+        assertFalse(accept(filter, 12));
+        // oldest number still in the window
+        assertTrue(accept(filter, 12 - DuplicateFilter.WINDOW + 1));
+        assertFalse(accept(filter, 12 - DuplicateFilter.WINDOW + 1));
+
+        assertEquals(4, filter.getAccepted());
+        assertEquals(3, filter.getDuplicates());
+        assertEquals(0, filter.getResets());
+    }
+
+    @Test
+    public void frameBehindWindowResetsNode() {
+        DuplicateFilter filter = new DuplicateFilter(0, 1, 2, 60000);
+        assertTrue(accept(filter, 200));
+        assertTrue(accept(filter, 200 - DuplicateFilter.WINDOW));  // node restarted its counter
+        assertEquals(1, filter.getResets());
+        assertFalse(accept(filter, 200 - DuplicateFilter.WINDOW));
+        assertTrue(accept(filter, 200));  // window follows the new counter
+    }
+
+    @Test
+    public void oneByteSequenceWraps() {
+        DuplicateFilter filter = new DuplicateFilter(0, 1, 1, 60000);
+        assertTrue(accept(filter, 254));
+        assertTrue(accept(filter, 255));
+        assertTrue(accept(filter, 0));
+        assertTrue(accept(filter, 1));
+        assertFalse(accept(filter, 255));
+        assertFalse(accept(filter, 0));
+        assertEquals(0, filter.getResets());
+    }
+
+    @Test
+    public void silentNodeExpires() throws Exception {
+        DuplicateFilter filter = new DuplicateFilter(0, 1, 2, 20);
+        assertTrue(accept(filter, 5));
+        assertFalse(accept(filter, 5));
+        Thread.sleep(50);
+        assertTrue(accept(filter, 5));
+        assertEquals(1, filter.getResets());
+    }
+
+    /**
+     * Sender on a lossy medium sends every frame again until it is acknowledged, so receiver gets
+     * a copy of every frame whose acknowledgement was lost
+     */
+    @Test
+    public void retransmissionsAfterLostAckDropped() throws Exception {
+        RadioMedium medium = new RadioMedium(new Random(5));
+        medium.setLossRate(0.2);
+        RF24 tx = SimulatedPigpio.radio(medium);
+        RF24 rx = SimulatedPigpio.radio(medium);
+        tx.setRetries(0, 0);  // every lost acknowledgement fails the write
+        tx.openWritingPipe(ADDRESS);
+        rx.openReadingPipe(1, ADDRESS);
+        rx.startListening();
+
+        DuplicateFilter filter = new DuplicateFilter(0, 1, 2, 60000);
+        int[] received = {0};
+        int[] times = new int[500];
+        FrameSink sink = f -> {
+            received[0]++;
+            if (filter.accept(f))
+                times[(f.data[1] & 0xFF) | (f.data[2] & 0xFF) << 8]++;
+        };
+        byte[] data = new byte[3];
+        data[0] = NODE;
+        for (int seq = 0; seq < times.length; seq++) {
+            data[1] = (byte) seq;
+            data[2] = (byte) (seq >> 8);
+            while (tx.write(data) != 0)
+                rx.drainRx(sink, 3);
+            rx.drainRx(sink, 3);
+        }
+
+        for (int seq = 0; seq < times.length; seq++)
+            assertEquals("frame " + seq, 1, times[seq]);
+        assertTrue(filter.getDuplicates() > 0);
+        assertEquals(received[0] - times.length, filter.getDuplicates());
+        assertEquals(0, filter.getResets());
+    }
+
+    private boolean accept(DuplicateFilter filter, int seq) {
+        frame.set(new byte[]{NODE, (byte) seq, (byte) (seq >> 8)}, 3, 1);
+        return filter.accept(frame);
+    }
+}
@@ -0,0 +1,137 @@
+package rf24j;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FecTest {
+    private static final byte[] ADDRESS = {'F', 'E', 'C', '0', '1'};
+    private static final int FRAMES = 4000;
+
+    private RadioMedium medium;
+    private RF24 tx;
+    private RF24 rx;
+
+    private boolean[] seen;
+    private int delivered;
+
+    @Before
+    public void setUp() throws Exception {
+        medium = new RadioMedium(new Random(3));
+        tx = SimulatedPigpio.radio(medium);
+        rx = SimulatedPigpio.radio(medium);
+        tx.openWritingPipe(ADDRESS);
+        rx.openReadingPipe(1, ADDRESS);
+        rx.setAutoACK(1, false);
+        rx.startListening();
+        seen = new boolean[FRAMES];
+        delivered = 0;
+    }
+
+    @Test
+    public void burstOfParityCountIsRebuilt() throws Exception {
+        FecDecoder decoder = new FecDecoder(8, 2, this::check);
+        FecEncoder encoder = new FecEncoder(tx, 8, 2, true);
+        // frames 3 and 4 of every group (8 data + 2 parity) are lost
+        int[] index = {0};
+        FrameSink air = f -> {
+            int i = index[0]++ % 10;
+            if (i != 3 && i != 4)
+                decoder.accept(f);
+        };
+        byte[] data = new byte[FecEncoder.MAX_DATA_SIZE];
+        for (int s = 0; s < 80; s++) {
+            encoder.write(data, fill(data, s));
+            rx.drainRx(air, 3);
+        }
+
+        assertEquals(80, delivered);
+        assertEquals(20, decoder.getRecovered());
+        assertEquals(0, decoder.getLost());
+        assertEquals(20, encoder.getParityFrames());
+    }
+
+    @Test
+    public void partialGroupIsProtectedByFlush() throws Exception {
+        FecDecoder decoder = new FecDecoder(8, 2, this::check);
+        FecEncoder encoder = new FecEncoder(tx, 8, 2, true);
+        int[] index = {0};
+        FrameSink air = f -> {
+            if (index[0]++ != 1)
+                decoder.accept(f);
+        };
+        byte[] data = new byte[FecEncoder.MAX_DATA_SIZE];
+        for (int s = 0; s < 5; s++) {
+            encoder.write(data, fill(data, s));
+            rx.drainRx(air, 3);
+        }
+        encoder.flush();
+        rx.drainRx(air, 3);
+
+        assertEquals(5, delivered);
+        assertEquals(1, decoder.getRecovered());
+    }
+
+    @Test
+    public void randomLossMostlyRecovered() throws Exception {
+        medium.setLossRate(0.1);
+        byte[] data = new byte[FecEncoder.MAX_DATA_SIZE];
+        RxFrame frame = new RxFrame();
+        int plain = 0;
+        for (int s = 0; s < FRAMES; s++) {
+            tx.write(data, fill(data, s), true);
+            while (rx.available()) {
+                rx.read(frame);
+                plain++;
+            }
+        }
+
+        FecDecoder decoder = new FecDecoder(8, 2, this::check);
+        FecEncoder encoder = new FecEncoder(tx, 8, 2, true);
+        for (int s = 0; s < FRAMES; s++) {
+            encoder.write(data, fill(data, s));
+            rx.drainRx(decoder, 32);
+        }
+        encoder.flush();
+        rx.drainRx(decoder, 32);
+
+        // about 90% without FEC, 97% with 8 + 2
+        assertTrue("without FEC " + plain, plain < FRAMES * 0.92);
+        assertTrue("with FEC " + delivered, delivered > FRAMES * 0.96);
+        assertTrue(decoder.getRecovered() > 0);
+    }
+
+    /**
+     * Data of frame s - sequence number and a pattern, length varies with s
+     */
+    private static int fill(byte[] data, int s) {
+        int length = 2 + s % 20;
+        data[0] = (byte) s;
+        data[1] = (byte) (s >> 8);
+        for (int i = 2; i < length; i++)
+            data[i] = (byte) (s * 7 + i);
+        return length;
+    }
+
+    private void check(RxFrame frame) {
+        byte[] d = frame.getData();
+        int s = (d[0] & 0xFF) | (d[1] & 0xFF) << 8;
+        byte[] expected = new byte[FecEncoder.MAX_DATA_SIZE];
+        int length = fill(expected, s);
+        assertEquals("length of frame " + s, length, frame.getLength());
+        byte[] actual = new byte[length];
+        System.arraycopy(d, 0, actual, 0, length);
+        byte[] wanted = new byte[length];
+        System.arraycopy(expected, 0, wanted, 0, length);
+        assertArrayEquals("data of frame " + s, wanted, actual);
+        if (!seen[s]) {
+            seen[s] = true;
+            delivered++;
+        }
+    }
+}
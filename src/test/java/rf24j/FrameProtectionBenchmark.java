@@ -0,0 +1,140 @@
+package rf24j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Measures cost of FrameProtection per frame - time and allocated bytes of sealing and opening,
+ * and of a frame sent from one simulated radio to another (see SimulatedPigpio) with and without
+ * protection. Allocation is read from the JVM per thread (com.sun.management.ThreadMXBean), it is
+ * not reported when the JVM does not support it. Radio measurements include allocation of the
+ * simulated chips, only the difference between them is caused by protection. Each measurement is
+ * run a few times, the first runs get the code compiled by JIT and the last one is reported.
+ */
+public class FrameProtectionBenchmark {
+    private static final int ROUNDS = 5;
+    private static final byte[] ADDRESS = {0x50, 0x52, 0x4F, 0x54, 0x01};
+
+    private final int frames;
+    private final int length;
+
+    private final StringBuilder results = new StringBuilder();
+
+    /**
+     * @param frames number of frames of each measurement
+     * @param length data length of the frames (at most FrameProtection.MAX_DATA_SIZE)
+     */
+    public FrameProtectionBenchmark(int frames, int length) {
+        this.frames = frames;
+        this.length = length;
+    }
+
+    /**
+     * Run all measurements
+     * @throws Exception
+     */
+    public void run() throws Exception {
+        byte[] key = new byte[16];
+        new Random(1).nextBytes(key);
+        byte[] data = new byte[length];
+        byte[] out = new byte[RxFrame.MAX_PAYLOAD_SIZE];
+        RxFrame frame = new RxFrame();
+
+        FrameProtection node = new FrameProtection(false);
+        FrameProtection gateway = new FrameProtection(true);
+        node.setKey(1, key);
+        gateway.setKey(1, key);
+
+        long[] seal = null;
+        long[] open = null;
+        for (int r = 0; r < ROUNDS; r++) {
+            long[] m = start();
+            for (int i = 0; i < frames; i++)
+                node.seal(1, data, length, out);
+            seal = stop(m);
+
+            // opening is measured on frames sealed in advance, one frame is sealed per opened one
+            int n = node.seal(1, data, length, out);
+            m = start();
+            for (int i = 0; i < frames; i++) {
+                frame.set(out, n, 1);
+                gateway.open(frame);
+                n = node.seal(1, data, length, out);
+            }
+            open = stop(m);
+            open[0] -= seal[0];
+            open[1] -= seal[1];
+        }
+        line("Seal", seal);
+        line("Open", open);
+
+        RadioMedium medium = new RadioMedium();
+        RF24 tx = SimulatedPigpio.radio(medium);
+        RF24 rx = SimulatedPigpio.radio(medium);
+        tx.openWritingPipe(ADDRESS);
+        rx.openReadingPipe(1, ADDRESS);
+        rx.startListening();
+        FrameSink plainSink = f -> { };
+        FrameSink protectedSink = gateway.sink(plainSink);
+        long[] plain = null;
+        long[] secured = null;
+        for (int r = 0; r < ROUNDS; r++) {
+            long[] m = start();
+            for (int i = 0; i < frames; i++) {
+                tx.write(data, length, false);
+                rx.drainRx(plainSink, 1);
+            }
+            plain = stop(m);
+
+            m = start();
+            for (int i = 0; i < frames; i++) {
+                node.write(tx, 1, data, length);
+                rx.drainRx(protectedSink, 1);
+            }
+            secured = stop(m);
+        }
+        line("Radio plain", plain);
+        line("Radio protected", secured);
+        if (gateway.getRejected() + gateway.getReplayed() != 0)
+            results.append("Rejected frames    = ").append(gateway.getRejected() + gateway.getReplayed()).append('\n');
+    }
+
+    private static long[] start() {
+        return new long[]{System.nanoTime(), allocated()};
+    }
+
+    private static long[] stop(long[] start) {
+        long allocated = allocated();
+        return new long[]{System.nanoTime() - start[0], allocated < 0 ? -1 : allocated - start[1]};
+    }
+
+    private static long allocated() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+
+    private void line(String label, long[] m) {
+        results.append(String.format("%-18s = %.0f ns/frame", label, (double) m[0] / frames));
+        if (m[1] >= 0)
+            results.append(String.format(", %.1f B/frame allocated", (double) m[1] / frames));
+        results.append('\n');
+    }
+
+    /**
+     * @return results in human readable form
+     */
+    public String report() {
+        return "Frames             = " + frames + " x " + length + " bytes of data\n" + results;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : FrameProtection.MAX_DATA_SIZE;
+        FrameProtectionBenchmark benchmark = new FrameProtectionBenchmark(frames, length);
+        benchmark.run();
+        System.out.print(benchmark.report());
+    }
+}
@@ -0,0 +1,186 @@
+package rf24j;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameProtectionTest {
+    private static final byte[] ADDRESS = {'P', 'R', 'O', 'T', '1'};
+    private static final int NODE = 1;
+
+    private FrameProtection node;
+    private FrameProtection gateway;
+
+    @Before
+    public void setUp() {
+        byte[] key = new byte[16];
+        new Random(1).nextBytes(key);
+        node = new FrameProtection(false);
+        gateway = new FrameProtection(true);
+        node.setKey(NODE, key);
+        gateway.setKey(NODE, key);
+    }
+
+    @Test
+    public void reorderedFramesAcceptedOnce() throws Exception {
+        byte[][] sealed = new byte[3][];
+        for (int i = 0; i < sealed.length; i++)
+            sealed[i] = seal(i);
+
+        assertEquals(NODE, open(sealed[0], 0));
+        assertEquals(NODE, open(sealed[2], 2));
+        assertEquals(NODE, open(sealed[1], 1));
+        assertEquals(-1, open(sealed[1], 1));
+        assertEquals(-1, open(sealed[2], 2));
+
+        assertEquals(3, gateway.getOpened());
+        assertEquals(2, gateway.getReplayed());
+        assertEquals(0, gateway.getRejected());
+    }
+
+    @Test
+    public void frameOlderThanWindowRejected() throws Exception {
+        byte[] first = seal(0);
+        byte[] second = seal(1);
+        assertEquals(NODE, open(first, 0));
+        for (int i = 2; i < FrameProtection.WINDOW + 1; i++)
+            assertEquals(NODE, open(seal(i), i));
+
+        // sequence 1 is the oldest number still in the window, sequence 0 fell out of it
+        assertEquals(NODE, open(second, 1));
+        assertEquals(-1, open(first, 0));
+        assertEquals(1, gateway.getReplayed());
+    }
+
+    @Test
+    public void tamperedAndOwnFramesRejected() throws Exception {
+        byte[] sealed = seal(0);
+        sealed[FrameProtection.HEADER_SIZE] ^= 1;
+        assertEquals(-1, open(sealed, 0));
+        assertEquals(1, gateway.getRejected());
+
+        // frame of the node is not accepted by another node - direction is part of the nonce
+        FrameProtection peer = new FrameProtection(false);
+        byte[] key = new byte[16];
+        new Random(1).nextBytes(key);
+        peer.setKey(NODE, key);
+        RxFrame frame = new RxFrame();
+        byte[] own = seal(1);
+        frame.set(own, own.length, 1);
+        assertEquals(-1, peer.open(frame));
+    }
+
+    /**
+     * Vectors computed by an independent AES-CCM implementation per RFC 3610 with M = 4, L = 2, no
+     * associated data, key C0..CF and nonce [node, direction, sequence number LSB first, 8 x 00]
+     */
+    @Test
+    public void sealMatchesRfc3610Vectors() throws Exception {
+        byte[] key = new byte[16];
+        for (int i = 0; i < key.length; i++)
+            key[i] = (byte) (0xC0 + i);
+        FrameProtection sender = new FrameProtection(false);
+        sender.setKey(0x21, key, 0x030201);
+        byte[] data = new byte[FrameProtection.MAX_DATA_SIZE];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (0x08 + i);
+        byte[] out = new byte[RxFrame.MAX_PAYLOAD_SIZE];
+
+        int n = sender.seal(0x21, data, data.length, out);
+        assertEquals("2101020317a6b06318c62aa2ad81171fc78a3973d14366c4b934ed9ffccceda0", hex(out, n));
+        sender.setKey(0x21, key, 0x030201);
+        n = sender.seal(0x21, new byte[]{0x42}, 1, out);
+        assertEquals("2101020301ec4afcd8d6", hex(out, n));
+        // direction is part of the nonce - gateway seals sequence 0 of the same node differently
+        FrameProtection gatewaySender = new FrameProtection(true);
+        gatewaySender.setKey(0x21, key);
+        byte[] text = "gateway".getBytes(StandardCharsets.US_ASCII);
+        n = gatewaySender.seal(0x21, text, text.length, out);
+        assertEquals("2100000007cf4957c9a55644f484f017", hex(out, n));
+
+        FrameProtection receiver = new FrameProtection(false);
+        receiver.setKey(0x21, key);
+        RxFrame frame = new RxFrame();
+        frame.set(out, n, 1);
+        assertEquals(0x21, receiver.open(frame));
+        assertEquals("gateway", new String(frame.data, 0, frame.length, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void rejectedFrameLeavesNoPlaintext() throws Exception {
+        byte[] sealed = seal(0);
+        sealed[sealed.length - 1] ^= 1;  // wrong MIC
+        RxFrame frame = new RxFrame();
+        frame.set(sealed, sealed.length, 1);
+        assertEquals(-1, gateway.open(frame));
+        for (int i = 0; i < 4; i++)
+            assertEquals(0, frame.data[FrameProtection.HEADER_SIZE + i]);
+    }
+
+    private static String hex(byte[] b, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            sb.append(String.format("%02x", b[i] & 0xFF));
+        return sb.toString();
+    }
+
+    /**
+     * Frame sent over simulated radios and injected into the receiver again is dropped
+     */
+    @Test
+    public void replayedOverRadioRejected() throws Exception {
+        RadioMedium medium = new RadioMedium();
+        SimulatedPigpio rxChip = new SimulatedPigpio(medium, 22, 8);
+        RF24 tx = SimulatedPigpio.radio(medium);
+        RF24 rx = SimulatedPigpio.radio(rxChip);
+        tx.openWritingPipe(ADDRESS);
+        rx.openReadingPipe(1, ADDRESS);
+        rx.startListening();
+
+        List<byte[]> air = new ArrayList<>();
+        List<String> delivered = new ArrayList<>();
+        FrameSink protectedSink = gateway.sink(f -> delivered.add(new String(f.data, 0, f.length, StandardCharsets.US_ASCII)));
+        FrameSink sink = f -> {
+            air.add(f.data.clone());
+            protectedSink.accept(f);
+        };
+        for (int i = 0; i < 3; i++) {
+            byte[] data = ("frame " + i).getBytes(StandardCharsets.US_ASCII);
+            assertEquals(0, node.write(tx, NODE, data, data.length));
+            rx.drainRx(sink, 3);
+        }
+        for (byte[] recorded : air)
+            rxChip.inject(1, recorded, recorded.length);
+        rx.drainRx(sink, 3);
+
+        assertEquals("[frame 0, frame 1, frame 2]", delivered.toString());
+        assertEquals(3, gateway.getReplayed());
+    }
+
+    private byte[] seal(int expectedSequence) throws RF24Exception {
+        byte[] data = {(byte) expectedSequence, 1, 2, 3};
+        byte[] out = new byte[RxFrame.MAX_PAYLOAD_SIZE];
+        int n = node.seal(NODE, data, data.length, out);
+        assertEquals(expectedSequence, (out[1] & 0xFF) | (out[2] & 0xFF) << 8 | (out[3] & 0xFF) << 16);
+        byte[] frame = new byte[n];
+        System.arraycopy(out, 0, frame, 0, n);
+        return frame;
+    }
+
+    private int open(byte[] sealed, int expectedData) {
+        RxFrame frame = new RxFrame();
+        frame.set(sealed, sealed.length, 1);
+        int result = gateway.open(frame);
+        if (result >= 0) {
+            assertEquals(4, frame.length);
+            assertEquals((byte) expectedData, frame.data[0]);
+        }
+        return result;
+    }
+}
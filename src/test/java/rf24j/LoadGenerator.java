@@ -0,0 +1,509 @@
+package rf24j;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives gateways with many simulated nodes (see SimulatedPigpio) to find out how much traffic a
+ * gateway handles, and runs long soak tests.<br/>
+ * Every node sends frames to its gateway at configured rate (periodic or Poisson arrivals) with
+ * payload sizes drawn from configured distribution. Nodes are spread over the gateways, every
+ * gateway has its own channel. Loss and interference are configured on the medium (see getMedium),
+ * transmissions occupy the channel for their airtime, so nodes sending at the same time collide.
+ * <br/>
+ * A single thread plays all nodes and gateways, like TdmaSimulation does: nodes start their frames
+ * (RF24.startWrite) when they are due and collect the result when the next frame is due
+ * (RF24.checkWrite), so frames of many nodes are in flight at once. Gateways are read (RF24.drainRx)
+ * whenever their IRQ is pending. Frame carries node id and sequence number, latency is measured from
+ * startWrite to the IRQ of the gateway - the simulation delivers frames instantly, so it shows the
+ * cost of the driver and of reading the gateway, not the airtime.<br/>
+ * <br/>
+ * Report covers throughput, latency percentiles, where frames were lost, SPI transactions per frame
+ * and heap / GC of the JVM. Progress lines printed during the run (see run) show whether throughput
+ * or heap drift during a soak test. Nothing is allocated per frame, so GC activity comes from the
+ * simulated chips.
+ */
+public class LoadGenerator {
+    public enum Arrival {
+        PERIODIC,
+        POISSON
+    }
+
+    private static final int CHANNEL = 76;
+    private static final int CHANNEL_SPACING = 4;
+    private static final int IRQ_PIN = 24;
+    private static final int HEADER_SIZE = 4;  // node id, sequence number (2 bytes each, LSB first)
+    private static final int RING = 64;  // send times kept per node to match frames received
+
+    private final int nodeCount;
+    private final int gatewayCount;
+    private final Random random;
+    private final RadioMedium medium;
+
+    private double rate = 10;
+    private Arrival arrival = Arrival.POISSON;
+    private int[] sizes = {RxFrame.MAX_PAYLOAD_SIZE};
+    private int[] cumulativeWeights = {1};
+    private boolean collisions = true;
+
+    private RF24[] gateways;
+    private SimulatedPigpio[] gatewayChips;
+    private RF24[] nodes;
+    private SimulatedPigpio[] nodeChips;
+    private final byte[][] payloads = new byte[RxFrame.MAX_PAYLOAD_SIZE + 1][];
+
+    private long[] next;
+    private int[] heap;
+    private int[] sequence;
+    private boolean[] inFlight;
+    private long[] sentNanos;
+    private int[] sentSequence;
+
+    private final Histogram latency = new Histogram();
+    private final Histogram lag = new Histogram();
+    private final FrameSink frameSink = this::onFrame;
+
+    private long sent;
+    private long acked;
+    private long failed;
+    private long busy;
+    private long delivered;
+    private long deliveredBytes;
+    private long unmatched;
+    private long elapsedNanos;
+
+    private long spiNodes;
+    private long spiGateways;
+    private long rxFifoFull;
+    private long mediumLosses;
+    private long interferenceLosses;
+    private long mediumCollisions;
+
+    private long heapStart;
+    private long heapEnd;
+    private long heapMax;
+    private long gcCount;
+    private long gcMillis;
+    private long allocated = -1;
+
+    /**
+     * @param nodeCount number of nodes (at most 65535)
+     * @param gatewayCount number of gateways
+     * @param seed seed of random generators, same seed gives the same traffic
+     */
+    public LoadGenerator(int nodeCount, int gatewayCount, long seed) {
+        if (nodeCount < 1 || nodeCount > 0xFFFF || gatewayCount < 1 || CHANNEL + (gatewayCount - 1) * CHANNEL_SPACING > 125)
+            throw new IllegalArgumentException("Invalid number of nodes or gateways: " + nodeCount + ", " + gatewayCount);
+        this.nodeCount = nodeCount;
+        this.gatewayCount = gatewayCount;
+        this.random = new Random(seed);
+        this.medium = new RadioMedium(new Random(random.nextLong()));
+    }
+
+    /**
+     * @param framesPerSecond frames sent by every node per second
+     * @param arrival PERIODIC to send in fixed intervals, POISSON for random intervals
+     */
+    public void setRate(double framesPerSecond, Arrival arrival) {
+        this.rate = framesPerSecond;
+        this.arrival = arrival;
+    }
+
+    /**
+     * Draw payload sizes uniformly from range
+     * @param min min payload size, at least 4 (node id and sequence number)
+     * @param max max payload size, at most 32
+     */
+    public void setPayloadSizes(int min, int max) {
+        int[] s = new int[max - min + 1];
+        int[] w = new int[s.length];
+        for (int i = 0; i < s.length; i++) {
+            s[i] = min + i;
+            w[i] = 1;
+        }
+        setPayloadSizes(s, w);
+    }
+
+    /**
+     * Draw payload sizes from weighted list, e.g. {8, 32} with weights {9, 1} for mostly short frames
+     * @param sizes payload sizes, 4 - 32
+     * @param weights relative weight of every size
+     */
+    public void setPayloadSizes(int[] sizes, int[] weights) {
+        int[] cumulative = new int[sizes.length];
+        int sum = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] < HEADER_SIZE || sizes[i] > RxFrame.MAX_PAYLOAD_SIZE)
+                throw new IllegalArgumentException("Invalid payload size: " + sizes[i]);
+            sum += weights[i];
+            cumulative[i] = sum;
+        }
+        this.sizes = sizes.clone();
+        this.cumulativeWeights = cumulative;
+    }
+
+    /**
+     * @param collisions false to let transmissions overlap without colliding
+     */
+    public void setCollisions(boolean collisions) {
+        this.collisions = collisions;
+    }
+
+    /**
+     * @return medium shared by nodes and gateways, to configure loss and interference
+     */
+    public RadioMedium getMedium() {
+        return medium;
+    }
+
+    private RF24 radio(SimulatedPigpio chip, int channel) throws Exception {
+        RF24 rf24 = SimulatedPigpio.radio(chip);
+        rf24.setDataRate(RF24.RF24_2MBPS);
+        rf24.setChannel(channel);
+        rf24.enableDynamicPayloads();
+        return rf24;
+    }
+
+    private static byte[] gatewayAddress(int gateway) {
+        return new byte[]{(byte) gateway, 0x4C, 0x47, 0x57, 0x47};
+    }
+
+    private void open() throws Exception {
+        gateways = new RF24[gatewayCount];
+        gatewayChips = new SimulatedPigpio[gatewayCount];
+        for (int g = 0; g < gatewayCount; g++) {
+            gatewayChips[g] = new SimulatedPigpio(medium, 22, 8);
+            gateways[g] = radio(gatewayChips[g], CHANNEL + g * CHANNEL_SPACING);
+            gateways[g].openReadingPipe(1, gatewayAddress(g));
+            gateways[g].setIrqPin(IRQ_PIN);
+            gateways[g].startListening();
+        }
+        nodes = new RF24[nodeCount];
+        nodeChips = new SimulatedPigpio[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            int g = i % gatewayCount;
+            nodeChips[i] = new SimulatedPigpio(medium, 22, 8);
+            nodes[i] = radio(nodeChips[i], CHANNEL + g * CHANNEL_SPACING);
+            nodes[i].openWritingPipe(gatewayAddress(g));
+        }
+
+        int maxSize = 0;
+        for (int size : sizes) {
+            payloads[size] = new byte[size];
+            maxSize = Math.max(maxSize, size);
+        }
+        RF24 g = gateways[0];
+        if (collisions)
+            medium.setAirtime(TdmaSchedule.airtimeMicros(g.getDataRate(), g.getAddressWidth(), g.getCRCLength(), maxSize));
+
+        for (SimulatedPigpio chip : gatewayChips)
+            chip.resetStatistics();  // SPI transactions of the setup are not counted
+        for (SimulatedPigpio chip : nodeChips)
+            chip.resetStatistics();
+
+        next = new long[nodeCount];
+        heap = new int[nodeCount];
+        sequence = new int[nodeCount];
+        inFlight = new boolean[nodeCount];
+        sentNanos = new long[nodeCount * RING];
+        sentSequence = new int[nodeCount * RING];
+    }
+
+    /**
+     * Run load for given time
+     * @param durationMillis length of the run
+     * @param progressMillis interval of progress lines, 0 for none
+     * @param out stream progress lines are printed to
+     * @throws Exception
+     */
+    public void run(long durationMillis, long progressMillis, PrintStream out) throws Exception {
+        open();
+        System.gc();
+        heapStart = heapUsed();
+        heapMax = heapStart;
+        long gcCountStart = gcCount();
+        long gcMillisStart = gcMillis();
+        long allocatedStart = allocated();
+
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long sampleNanos = TimeUnit.MILLISECONDS.toNanos(progressMillis > 0 ? Math.min(progressMillis, 1000) : 1000);
+        long nextSample = start + sampleNanos;
+        long progressNanos = TimeUnit.MILLISECONDS.toNanos(progressMillis);
+        long nextProgress = progressMillis > 0 ? start + progressNanos : Long.MAX_VALUE;
+        long progressSent = 0;
+        long progressDelivered = 0;
+        long progressTime = start;
+
+        // nodes start at random points of their first interval, not all at once
+        for (int i = 0; i < nodeCount; i++) {
+            next[i] = start + (long) (random.nextDouble() * interval);
+            heap[i] = i;
+        }
+        for (int i = nodeCount / 2 - 1; i >= 0; i--)
+            siftDown(i);
+
+        while (true) {
+            int node = heap[0];
+            long due = next[node];
+            if (due - end >= 0)
+                break;
+            long now;
+            while ((now = System.nanoTime()) - due < 0)
+                poll();
+            lag.record(now - due);
+            send(node);
+            next[node] = due + (arrival == Arrival.PERIODIC ? interval : (long) (-Math.log(1 - random.nextDouble()) * interval));
+            siftDown(0);
+            poll();
+
+            if (now - nextSample >= 0) {
+                heapMax = Math.max(heapMax, heapUsed());
+                nextSample = now + sampleNanos;
+            }
+            if (now - nextProgress >= 0) {
+                double seconds = (now - progressTime) / 1e9;
+                out.println(String.format("%6.0f s: %8.0f frames/s sent, %8.0f delivered, p99 %6d us, heap %5d MB, GC %d",
+                        (now - start) / 1e9, (sent - progressSent) / seconds, (delivered - progressDelivered) / seconds,
+                        latency.percentile(0.99) / 1000, heapUsed() >> 20, gcCount() - gcCountStart));
+                progressSent = sent;
+                progressDelivered = delivered;
+                progressTime = now;
+                nextProgress = now + progressNanos;
+            }
+        }
+
+        // collect results of frames still in flight and frames waiting in gateways
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        for (int i = 0; i < nodeCount; i++) {
+            while (inFlight[i] && System.nanoTime() - deadline < 0)
+                result(i, nodes[i].checkWrite());
+            poll();
+        }
+        elapsedNanos = System.nanoTime() - start;
+
+        allocated = allocatedStart < 0 ? -1 : allocated() - allocatedStart;
+        gcCount = gcCount() - gcCountStart;
+        gcMillis = gcMillis() - gcMillisStart;
+        heapEnd = heapUsed();
+        heapMax = Math.max(heapMax, heapEnd);
+
+        for (SimulatedPigpio chip : nodeChips)
+            spiNodes += chip.getSpiTransactions();
+        for (SimulatedPigpio chip : gatewayChips) {
+            spiGateways += chip.getSpiTransactions();
+            rxFifoFull += chip.getRxDropped();
+        }
+        mediumLosses = medium.getLosses() - medium.getInterferenceLosses();
+        interferenceLosses = medium.getInterferenceLosses();
+        mediumCollisions = medium.getCollisions();
+    }
+
+    private void send(int node) throws Exception {
+        RF24 rf24 = nodes[node];
+        if (inFlight[node] && !result(node, rf24.checkWrite())) {
+            busy++;  // previous frame is still being retransmitted
+            return;
+        }
+
+        int size = size();
+        byte[] payload = payloads[size];
+        int seq = sequence[node]++ & 0xFFFF;
+        payload[0] = (byte) node;
+        payload[1] = (byte) (node >> 8);
+        payload[2] = (byte) seq;
+        payload[3] = (byte) (seq >> 8);
+        int slot = node * RING + (seq & (RING - 1));
+        sentSequence[slot] = seq;
+        sentNanos[slot] = System.nanoTime();
+        rf24.startWrite(payload);
+        inFlight[node] = true;
+        sent++;
+    }
+
+    /**
+     * @return true if the frame in flight is finished
+     */
+    private boolean result(int node, int result) {
+        if (result < 0)
+            return false;
+        if (result == 0)
+            acked++;
+        else
+            failed++;
+        inFlight[node] = false;
+        return true;
+    }
+
+    private void poll() throws Exception {
+        for (RF24 gateway : gateways)
+            if (gateway.isIrqPending())
+                gateway.drainRx(frameSink, Integer.MAX_VALUE);
+    }
+
+    private void onFrame(RxFrame frame) {
+        byte[] b = frame.data;
+        int node = (b[0] & 0xFF) | (b[1] & 0xFF) << 8;
+        int seq = (b[2] & 0xFF) | (b[3] & 0xFF) << 8;
+        int slot = node * RING + (seq & (RING - 1));
+        if (frame.length < HEADER_SIZE || node >= nodeCount || sentSequence[slot] != seq) {
+            unmatched++;
+            return;
+        }
+        latency.record(frame.captureNanos - sentNanos[slot]);
+        delivered++;
+        deliveredBytes += frame.length;
+    }
+
+    private int size() {
+        if (sizes.length == 1)
+            return sizes[0];
+        int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (cumulativeWeights[i] <= r)
+            i++;
+        return sizes[i];
+    }
+
+    private void siftDown(int i) {
+        int node = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= nodeCount)
+                break;
+            if (child + 1 < nodeCount && next[heap[child + 1]] - next[heap[child]] < 0)
+                child++;
+            if (next[heap[child]] - next[node] >= 0)
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = node;
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, bean.getCollectionCount());
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, bean.getCollectionTime());
+        return millis;
+    }
+
+    private static long allocated() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+
+    /**
+     * @return results in human readable form
+     */
+    public String report() {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append("Nodes / gateways   = ").append(nodeCount).append(" / ").append(gatewayCount);
+        sb.append(String.format("%nOffered load       = %.1f frames/s per node (%s), %.0f frames/s total", rate, arrival, rate * nodeCount));
+        sb.append("\nDuration           = ").append(String.format("%.1f", seconds)).append(" s");
+        sb.append(String.format("%nThroughput         = %.0f frames/s, %.0f B/s", delivered / seconds, deliveredBytes / seconds));
+        sb.append("\nFrames sent        = ").append(sent).append(", delivered ").append(delivered)
+                .append(String.format(" (%.2f %%)", sent == 0 ? 0 : 100.0 * delivered / sent));
+        if (delivered > 0)
+            sb.append("\nLatency p50/p90/p99/p99.9/max = ").append(latency.percentile(0.5) / 1000).append(" / ")
+                    .append(latency.percentile(0.9) / 1000).append(" / ").append(latency.percentile(0.99) / 1000).append(" / ")
+                    .append(latency.percentile(0.999) / 1000).append(" / ").append(latency.getMax() / 1000).append(" us");
+        sb.append("\nSender lag p99/max = ").append(lag.percentile(0.99) / 1000).append(" / ").append(lag.getMax() / 1000).append(" us behind schedule");
+        sb.append("\nNot sent, busy     = ").append(busy).append(" (previous frame of the node still in flight)");
+        sb.append("\nFailed (MAX_RT)    = ").append(failed).append(", acknowledged ").append(acked);
+        sb.append("\nRX FIFO full       = ").append(rxFifoFull).append(" frames dropped by gateways");
+        sb.append("\nAir losses         = ").append(mediumLosses).append(" random, ").append(interferenceLosses)
+                .append(" interference, ").append(mediumCollisions).append(" collisions (attempts, incl. ACKs and retries)");
+        if (unmatched > 0)
+            sb.append("\nUnmatched frames   = ").append(unmatched);
+        sb.append(String.format("%nSPI per frame      = %.1f node, %.1f gateway", sent == 0 ? 0.0 : (double) spiNodes / sent,
+                delivered == 0 ? 0.0 : (double) spiGateways / delivered));
+        sb.append("\nHeap               = ").append(heapStart >> 20).append(" MB at start, ").append(heapEnd >> 20)
+                .append(" MB at end, ").append(heapMax >> 20).append(" MB max");
+        sb.append("\nGC                 = ").append(gcCount).append(" collections, ").append(gcMillis).append(" ms");
+        if (allocated >= 0 && sent > 0)
+            sb.append(String.format("%nAllocated          = %.0f B per frame sent (simulated chips included)", (double) allocated / sent));
+        return sb.toString();
+    }
+
+    /**
+     * Log-linear histogram of nanosecond values - 8 buckets per power of two, so percentiles are
+     * accurate to 12.5%. Fixed size, recording does not allocate.
+     */
+    private static class Histogram {
+        private final long[] counts = new long[488];
+        private long total = 0;
+        private long max = 0;
+
+        void record(long nanos) {
+            long v = Math.max(0, nanos);
+            counts[index(v)]++;
+            total++;
+            max = Math.max(max, v);
+        }
+
+        long percentile(double p) {
+            long target = (long) Math.ceil(p * total);
+            long count = 0;
+            for (int i = 0; i < counts.length; i++) {
+                count += counts[i];
+                if (count >= target && count > 0)
+                    return Math.min(max, lower(i + 1) - 1);
+            }
+            return max;
+        }
+
+        long getMax() {
+            return max;
+        }
+
+        private static int index(long v) {
+            if (v < 8)
+                return (int) v;
+            int e = 63 - Long.numberOfLeadingZeros(v);
+            return (e - 2) * 8 + (int) ((v >>> (e - 3)) & 7);
+        }
+
+        private static long lower(int index) {
+            if (index < 8)
+                return index;
+            return (8L + index % 8) << (index / 8 - 1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int gateways = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 5;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+        long progress = args.length > 4 ? Long.parseLong(args[4]) : 0;
+        double loss = args.length > 5 ? Double.parseDouble(args[5]) : 0.01;
+
+        LoadGenerator generator = new LoadGenerator(nodes, gateways, 1);
+        generator.setRate(rate, Arrival.POISSON);
+        generator.setPayloadSizes(new int[]{8, 16, 32}, new int[]{6, 3, 1});
+        generator.getMedium().setLossRate(loss);
+        generator.getMedium().setBurstLoss(0.001, 0.1, 0.5);
+        generator.run(TimeUnit.SECONDS.toMillis(seconds), TimeUnit.SECONDS.toMillis(progress), System.out);
+        System.out.println(generator.report());
+    }
+}
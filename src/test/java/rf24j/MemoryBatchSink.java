@@ -0,0 +1,68 @@
+package rf24j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BatchSink keeping copies of published payloads in memory.
+ * Stands in for the cloud connection in tests and simulations.
+ */
+public class MemoryBatchSink implements BatchSink {
+    private final List<List<byte[]>> batches = new ArrayList<>();
+    private long delayMillis = 0;
+    private boolean failing = false;
+
+    /**
+     * Make every publish take given time, to simulate slow uplink.
+     * @param delayMillis delay in milliseconds
+     */
+    public synchronized void setDelay(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Make every publish fail, to simulate uplink which is down.
+     * @param failing true to fail
+     */
+    public synchronized void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    @Override
+    public void publish(FrameBatch batch) throws Exception {
+        long delay;
+        boolean fail;
+        synchronized (this) {
+            delay = delayMillis;
+            fail = failing;
+        }
+        if (delay > 0)
+            Thread.sleep(delay);
+        if (fail)
+            throw new Exception("Uplink down");
+
+        List<byte[]> payloads = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            RxFrame frame = batch.get(i);
+            payloads.add(Arrays.copyOf(frame.getData(), frame.getLength()));
+        }
+        synchronized (this) {
+            batches.add(payloads);
+        }
+    }
+
+    /**
+     * @return copy of list of published batches, each batch is a list of payloads
+     */
+    public synchronized List<List<byte[]>> getBatches() {
+        return new ArrayList<>(batches);
+    }
+
+    /**
+     * Remove all published batches
+     */
+    public synchronized void clear() {
+        batches.clear();
+    }
+}
@@ -0,0 +1,179 @@
+package rf24j;
+
+import jpigpio.PigpioException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PipelinedPigpioSocketTest {
+    private static final int BAD_PIN = 99;
+    private static final long TICK = 0xFFFFFFF0L;
+
+    private FakePigpiod daemon;
+    private PipelinedPigpioSocket pigpio;
+
+    @Before
+    public void setUp() throws Exception {
+        daemon = new FakePigpiod();
+        pigpio = new PipelinedPigpioSocket("127.0.0.1", daemon.getPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pigpio.gpioTerminate();
+        daemon.close();
+    }
+
+    @Test
+    public void batchGoesOutInOneRoundTrip() throws Exception {
+        byte[] cmd = {0x07};
+        byte[] data = {(byte) 0xFF, (byte) 0xFF};
+        pigpio.beginBatch();
+        pigpio.gpioWrite(8, false);
+        pigpio.spiXfer(0, cmd, cmd);
+        pigpio.spiXfer(0, data, data);
+        pigpio.gpioWrite(8, true);
+        pigpio.queueDelay(100);
+        assertEquals(0x07, cmd[0]);  // results are not available before endBatch
+        assertEquals(0, pigpio.getRoundTrips());
+        pigpio.endBatch();
+
+        assertEquals(1, pigpio.getRoundTrips());
+        assertEquals(5, pigpio.getCommands());
+        assertArrayEquals(new byte[]{~0x07}, cmd);
+        assertArrayEquals(new byte[]{0x00, 0x00}, data);
+        assertEquals("[4 8 0, 75 0 0 [7], 75 0 0 [-1, -1], 4 8 1, 46 100 0]", daemon.log.toString());
+    }
+
+    @Test
+    public void nestedBatchFlushedByOutermostEnd() throws Exception {
+        pigpio.beginBatch();
+        pigpio.gpioWrite(8, false);
+        pigpio.beginBatch();
+        pigpio.gpioWrite(8, true);
+        pigpio.endBatch();
+        assertEquals(0, pigpio.getRoundTrips());
+        pigpio.endBatch();
+        assertEquals(1, pigpio.getRoundTrips());
+        assertEquals(2, daemon.log.size());
+    }
+
+    @Test
+    public void resultTakenFromOffset12() throws Exception {
+        assertTrue(pigpio.gpioRead(1));
+        assertFalse(pigpio.gpioRead(2));
+        assertEquals(4, pigpio.gpioGetMode(3));
+        assertEquals(TICK, pigpio.gpioTick());
+        assertEquals(4, pigpio.getRoundTrips());  // outside of batch every command is sent right away
+    }
+
+    @Test
+    public void errorResultThrowsAndKeepsConnectionInSync() throws Exception {
+        try {
+            pigpio.gpioSetMode(BAD_PIN, 1);
+            fail();
+        } catch (PigpioException e) {
+            assertEquals(PigpioException.PI_BAD_GPIO, e.getErrorCode());
+        }
+
+        byte[] rx = {0x01};
+        pigpio.beginBatch();
+        pigpio.gpioSetMode(BAD_PIN, 1);
+        pigpio.spiXfer(0, rx, rx);
+        try {
+            pigpio.endBatch();
+            fail();
+        } catch (PigpioException e) {
+            assertEquals(PigpioException.PI_BAD_GPIO, e.getErrorCode());
+        }
+        // responses of the rest of the batch were read
+        assertArrayEquals(new byte[]{~0x01}, rx);
+        assertTrue(pigpio.gpioRead(1));
+    }
+
+    /**
+     * pigpiod speaking its socket protocol - 16 byte command (cmd, p1, p2, p3 = length of extension,
+     * little endian) followed by the extension, 16 byte response with result at offset 12.
+     * SPIX returns inverted data, READ returns level = pin & 1, MODEG 4, any command on BAD_PIN fails.
+     */
+    private static class FakePigpiod {
+        final List<String> log = Collections.synchronizedList(new ArrayList<>());
+        private final ServerSocket server;
+        private final Thread thread;
+
+        FakePigpiod() throws IOException {
+            server = new ServerSocket(0);
+            thread = new Thread(this::serve, "fake pigpiod");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return server.getLocalPort();
+        }
+
+        void close() throws Exception {
+            server.close();
+            thread.join(1000);
+        }
+
+        private void serve() {
+            try (Socket socket = server.accept()) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                ByteBuffer message = ByteBuffer.allocate(PipelinedPigpioSocket.MESSAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                while (true) {
+                    in.readFully(message.array());
+                    int cmd = message.getInt(0);
+                    int p1 = message.getInt(4);
+                    int p2 = message.getInt(8);
+                    byte[] ext = new byte[message.getInt(12)];
+                    in.readFully(ext);
+                    log.add(cmd + " " + p1 + " " + p2 + (cmd == PipelinedPigpioSocket.CMD_SPIX ? " " + Arrays.toString(ext) : ""));
+
+                    int result = 0;
+                    byte[] data = null;
+                    if (p1 == BAD_PIN)
+                        result = PigpioException.PI_BAD_GPIO;
+                    else if (cmd == PipelinedPigpioSocket.CMD_READ)
+                        result = p1 & 1;
+                    else if (cmd == PipelinedPigpioSocket.CMD_MODEG)
+                        result = 4;
+                    else if (cmd == PipelinedPigpioSocket.CMD_TICK)
+                        result = (int) TICK;
+                    else if (cmd == PipelinedPigpioSocket.CMD_SPIX) {
+                        data = new byte[ext.length];
+                        for (int i = 0; i < ext.length; i++)
+                            data[i] = (byte) ~ext[i];
+                        result = data.length;
+                    }
+                    message.putInt(12, result);
+                    out.write(message.array());
+                    if (data != null)
+                        out.write(data);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // connection closed
+            }
+        }
+    }
+}
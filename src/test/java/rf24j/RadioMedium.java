@@ -0,0 +1,210 @@
+package rf24j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Air shared by simulated radios (see SimulatedPigpio).<br/>
+ * Packets are delivered instantly to every radio listening on the same channel, data rate
+ * and address. Each transmission attempt and each acknowledgement can be lost with configured
+ * probability. Medium object serves as lock for all radios attached to it.<br/>
+ * Optionally transmissions occupy the channel for configured airtime (see setAirtime). Attempt which
+ * overlaps with an attempt of another radio on the same channel collides and is lost. Retransmissions
+ * are placed ARD apart on a virtual time line, so radios using the same retry delay keep colliding
+ * just like real ones do.<br/>
+ * Interference adds losses on top of that - constant on given channels (e.g. a WiFi network,
+ * see setChannelLoss) or in bursts on all channels (two-state Gilbert-Elliott model, see setBurstLoss).
+ */
+public class RadioMedium {
+    private final List<SimulatedPigpio> radios = new CopyOnWriteArrayList<>();
+    private final Random random;
+    private double lossRate = 0;
+    private final double[] channelLoss = new double[128];
+    private double burstEnter = 0;
+    private double burstExit = 1;
+    private double burstLoss = 0;
+    private boolean burst = false;
+
+    private long airtimeNanos = 0;
+    private final List<Transmission> onAir = new ArrayList<>();
+
+    private long attempts = 0;
+    private long losses = 0;
+    private long interferenceLosses = 0;
+    private long collisions = 0;
+
+    private static class Transmission {
+        final Object sender;
+        final int channel;
+        final long start;
+        final long end;
+
+        Transmission(Object sender, int channel, long start, long end) {
+            this.sender = sender;
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    public RadioMedium() {
+        this(new Random());
+    }
+
+    /**
+     * @param random random generator used by loss model, seeded one makes runs repeatable
+     */
+    public RadioMedium(Random random) {
+        this.random = random;
+    }
+
+    void attach(SimulatedPigpio radio) {
+        radios.add(radio);
+    }
+
+    void detach(SimulatedPigpio radio) {
+        radios.remove(radio);
+    }
+
+    List<SimulatedPigpio> getRadios() {
+        return radios;
+    }
+
+    /**
+     * Set probability of losing single transmission attempt or acknowledgement
+     * @param lossRate probability 0 - 1
+     */
+    public synchronized void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    /**
+     * @return probability of losing single transmission attempt or acknowledgement
+     */
+    public synchronized double getLossRate() {
+        return lossRate;
+    }
+
+    /**
+     * Set probability of losing a frame on the channel because of interference
+     * @param channel RF channel
+     * @param lossRate probability 0 - 1
+     */
+    public synchronized void setChannelLoss(int channel, double lossRate) {
+        channelLoss[channel & 0x7F] = lossRate;
+    }
+
+    /**
+     * Simulate bursts of interference on all channels. Before every frame the medium moves into
+     * burst with probability enterRate and leaves it with probability exitRate, so a burst lasts
+     * 1 / exitRate frames on average.
+     * @param enterRate probability of burst starting, 0 to disable bursts
+     * @param exitRate probability of burst ending
+     * @param lossRate probability of losing a frame during burst
+     */
+    public synchronized void setBurstLoss(double enterRate, double exitRate, double lossRate) {
+        this.burstEnter = enterRate;
+        this.burstExit = exitRate;
+        this.burstLoss = lossRate;
+        this.burst = false;
+    }
+
+    /**
+     * Decide whether a frame sent on the channel gets lost. Called with medium locked.
+     * @param channel RF channel
+     * @return true if frame is lost
+     */
+    boolean lost(int channel) {
+        attempts++;
+        if (lossRate > 0 && random.nextDouble() < lossRate) {
+            losses++;
+            return true;
+        }
+        if (burstEnter > 0)
+            burst = random.nextDouble() < (burst ? 1 - burstExit : burstEnter);
+        double interference = channelLoss[channel & 0x7F];
+        if (burst)
+            interference = 1 - (1 - interference) * (1 - burstLoss);
+        if (interference > 0 && random.nextDouble() < interference) {
+            losses++;
+            interferenceLosses++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Simulate collisions - every transmission attempt occupies the channel for given time
+     * @param micros airtime of one attempt, 0 to disable collisions
+     */
+    public synchronized void setAirtime(long micros) {
+        this.airtimeNanos = micros * 1000;
+        onAir.clear();
+    }
+
+    /**
+     * @return airtime of one attempt in nanoseconds, 0 if collisions are not simulated
+     */
+    long getAirtimeNanos() {
+        return airtimeNanos;
+    }
+
+    /**
+     * Put transmission attempt on air and decide whether it collides with attempt of another radio.
+     * Called with medium locked.
+     * @param sender radio sending
+     * @param channel RF channel
+     * @param start virtual start time of attempt (System.nanoTime based)
+     * @return true if attempt collided
+     */
+    boolean collided(Object sender, int channel, long start) {
+        if (airtimeNanos == 0)
+            return false;
+        long end = start + airtimeNanos;
+        long horizon = System.nanoTime() - 100 * airtimeNanos;
+        boolean collision = false;
+        for (int i = onAir.size() - 1; i >= 0; i--) {
+            Transmission t = onAir.get(i);
+            if (t.end - horizon < 0) {
+                onAir.remove(i);
+                continue;
+            }
+            if (t.sender != sender && t.channel == channel && t.start - end < 0 && start - t.end < 0)
+                collision = true;
+        }
+        onAir.add(new Transmission(sender, channel, start, end));
+        if (collision)
+            collisions++;
+        return collision;
+    }
+
+    /**
+     * @return number of attempts lost because of collision
+     */
+    public synchronized long getCollisions() {
+        return collisions;
+    }
+
+    /**
+     * @return number of frames (including acknowledgements) put on air
+     */
+    public synchronized long getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return number of frames (including acknowledgements) lost
+     */
+    public synchronized long getLosses() {
+        return losses;
+    }
+
+    /**
+     * @return number of frames (including acknowledgements) lost because of interference, included in getLosses
+     */
+    public synchronized long getInterferenceLosses() {
+        return interferenceLosses;
+    }
+}
@@ -0,0 +1,839 @@
+package rf24j;
+
+import jpigpio.Alert;
+import jpigpio.GPIOListener;
+import jpigpio.NotImplementedException;
+import jpigpio.PigpioException;
+import jpigpio.Pulse;
+import jpigpio.impl.CommonPigpio;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Stand-in for JPigpio with a simulated nRF24 chip connected to SPI.<br/>
+ * It understands the SPI commands used by RF24 (register access, payloads, flushes), CE and CSN
+ * pins and the IRQ pin, so RF24 can be run without hardware. Simulated chips exchange packets
+ * through RadioMedium, including auto acknowledgements and retransmissions.<br/>
+ * Timing is not simulated - delays return immediately and packets are delivered instantly.
+ * Only with collision model of RadioMedium (see RadioMedium.setAirtime) transmissions take time -
+ * TX_DS or MAX_RT is raised once the last attempt is over.
+ * Methods not related to the radio throw NotImplementedException.
+ */
+public class SimulatedPigpio extends CommonPigpio {
+    private static final int FIFO_SIZE = 3;
+
+    private static class Packet {
+        final byte[] data = new byte[RxFrame.MAX_PAYLOAD_SIZE];
+        int length;
+        int pipe;
+        boolean noAck;
+    }
+
+    private final RadioMedium medium;
+    private final int cePin;
+    private final int csnPin;
+
+    private final int[] modes = new int[64];
+    private int irqPin = -1;
+    private Alert irqAlert;
+    private boolean irqActive = false;
+
+    private final byte[] regs = new byte[0x20];
+    private final byte[][] rxAddr = new byte[6][5];
+    private final byte[] txAddr = new byte[5];
+    private final ArrayDeque<Packet> rxFifo = new ArrayDeque<>();
+    private final ArrayDeque<Packet> txFifo = new ArrayDeque<>();
+
+    private boolean ce = false;
+    private long busyUntil = 0;
+    private int pendingFlag = 0;
+    private boolean selected = false;
+    private int cmd = -1;
+    private int dataIndex;
+    private final byte[] wbuf = new byte[RxFrame.MAX_PAYLOAD_SIZE];
+
+    private long spiTransactions = 0;
+    private long spiBytes = 0;
+    private long txPackets = 0;
+    private long txFailures = 0;
+    private long rxPackets = 0;
+    private long rxDropped = 0;
+
+    /**
+     * Create simulated chip attached to medium
+     * @param medium air shared with other simulated chips
+     * @param cePin gpio used as CE
+     * @param csnPin gpio used as CSN
+     */
+    public SimulatedPigpio(RadioMedium medium, int cePin, int csnPin) {
+        this.medium = medium;
+        this.cePin = cePin;
+        this.csnPin = csnPin;
+        powerOnReset();
+        medium.attach(this);
+    }
+
+    /**
+     * Create radio on new simulated chip attached to medium
+     * @param medium air shared with other simulated chips
+     * @return radio initialized with CE on gpio 22, CSN on gpio 8 and no SPI delay
+     * @throws PigpioException
+     */
+    public static RF24 radio(RadioMedium medium) throws PigpioException {
+        return radio(new SimulatedPigpio(medium, 22, 8));
+    }
+
+    /**
+     * Create radio on simulated chip
+     * @param chip simulated chip with CE on gpio 22 and CSN on gpio 8
+     * @return radio initialized without SPI delay
+     * @throws PigpioException
+     */
+    public static RF24 radio(SimulatedPigpio chip) throws PigpioException {
+        RF24 rf24 = new RF24(chip);
+        rf24.init(22, 8);
+        rf24.setSpiDelay(0);
+        return rf24;
+    }
+
+    private void powerOnReset() {
+        regs[RF24.CONFIG_REGISTER] = 0x08;
+        regs[RF24.EN_AA_REGISTER] = 0x3F;
+        regs[RF24.EN_RXADDR_REGISTER] = 0x03;
+        regs[RF24.SETUP_AW_REGISTER] = 0x03;
+        regs[RF24.SETUP_RETR_REGISTER] = 0x03;
+        regs[RF24.RF_CH_REGISTER] = 0x02;
+        regs[RF24.RF_SETUP] = 0x0E;
+        for (int i = 0; i < 5; i++) {
+            rxAddr[0][i] = (byte) 0xE7;
+            rxAddr[1][i] = (byte) 0xC2;
+            txAddr[i] = (byte) 0xE7;
+        }
+        for (int p = 2; p < 6; p++)
+            rxAddr[p][0] = (byte) (0xC1 + p);
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // GPIO
+
+    @Override
+    public void gpioInitialize() throws PigpioException {
+    }
+
+    @Override
+    public void gpioTerminate() throws PigpioException {
+        medium.detach(this);
+    }
+
+    @Override
+    public void gpioSetMode(int pin, int mode) throws PigpioException {
+        modes[pin] = mode;
+    }
+
+    @Override
+    public int gpioGetMode(int pin) throws PigpioException {
+        return modes[pin];
+    }
+
+    @Override
+    public void gpioSetPullUpDown(int pin, int pud) throws PigpioException {
+    }
+
+    @Override
+    public boolean gpioRead(int pin) throws PigpioException {
+        synchronized (medium) {
+            settle();
+            if (pin == irqPin)
+                return !irqActive;
+            if (pin == cePin)
+                return ce;
+            if (pin == csnPin)
+                return !selected;
+            return false;
+        }
+    }
+
+    @Override
+    public void gpioWrite(int pin, boolean value) throws PigpioException {
+        synchronized (medium) {
+            if (pin == csnPin) {
+                if (!value) {
+                    selected = true;
+                    cmd = -1;
+                    spiTransactions++;
+                } else if (selected) {
+                    selected = false;
+                    commit();
+                }
+            } else if (pin == cePin) {
+                if (ce && !value)
+                    regs[RF24.RPD] = 0;
+                ce = value;
+                if (ce && txMode())
+                    while (!txFifo.isEmpty() && transmitHead()) ;
+            }
+        }
+    }
+
+    @Override
+    public void gpioTrigger(int pin, long pulseLen, boolean level) throws PigpioException {
+        synchronized (medium) {
+            if (pin == cePin && level && txMode())
+                transmitHead();
+        }
+    }
+
+    @Override
+    public void gpioSetAlertFunc(int pin, Alert alert) throws PigpioException {
+        synchronized (medium) {
+            irqPin = pin;
+            irqAlert = alert;
+        }
+    }
+
+    @Override
+    public void gpioDelay(long delay) throws PigpioException {
+        // time is not simulated
+    }
+
+    @Override
+    public long gpioTick() throws PigpioException {
+        return (System.nanoTime() / 1000) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public long getCurrentTick() throws PigpioException {
+        return gpioTick();
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // SPI
+
+    @Override
+    public int spiOpen(int channel, int baudRate, int flags) throws PigpioException {
+        return channel;
+    }
+
+    @Override
+    public void spiClose(int handle) throws PigpioException {
+    }
+
+    @Override
+    public int spiRead(int handle, byte[] data) throws PigpioException {
+        return spiXfer(handle, data, data);
+    }
+
+    @Override
+    public int spiWrite(int handle, byte[] data) throws PigpioException {
+        return spiXfer(handle, data, new byte[data.length]);
+    }
+
+    @Override
+    public int spiXfer(int handle, byte[] txData, byte[] rxData) throws PigpioException {
+        synchronized (medium) {
+            for (int i = 0; i < txData.length; i++)
+                rxData[i] = shift(txData[i]);
+            spiBytes += txData.length;
+            return txData.length;
+        }
+    }
+
+    /**
+     * Process one byte received by chip and return byte sent back
+     */
+    private byte shift(byte b) {
+        settle();
+        if (cmd < 0) {
+            cmd = b & 0xFF;
+            dataIndex = 0;
+            byte status = status();
+            if (cmd == 0xE1)
+                txFifo.clear();
+            else if (cmd == 0xE2)
+                rxFifo.clear();
+            return status;
+        }
+
+        int i = dataIndex++;
+        if ((cmd & 0xE0) == 0x00)               // R_REGISTER
+            return readRegister(cmd & 0x1F, i);
+        if ((cmd & 0xE0) == 0x20) {             // W_REGISTER
+            if (i < wbuf.length) wbuf[i] = b;
+            return 0;
+        }
+        switch (cmd) {
+            case 0x60:                          // R_RX_PL_WID
+                return (byte) (rxFifo.isEmpty() ? 0 : rxFifo.peek().length);
+            case 0x61:                          // R_RX_PAYLOAD
+                Packet p = rxFifo.peek();
+                return p == null || i >= p.length ? 0 : p.data[i];
+            case 0xA0:                          // W_TX_PAYLOAD
+            case 0xB0:                          // W_TX_PAYLOAD_NOACK
+                if (i < wbuf.length) wbuf[i] = b;
+                return 0;
+        }
+        return 0;
+    }
+
+    /**
+     * Execute command once CSN goes high
+     */
+    private void commit() {
+        if (cmd < 0)
+            return;
+        if ((cmd & 0xE0) == 0x20 && dataIndex > 0)
+            writeRegister(cmd & 0x1F, Math.min(dataIndex, 5));
+        else if (cmd == 0x61 && dataIndex > 0)
+            rxFifo.poll();
+        else if ((cmd == 0xA0 || cmd == 0xB0 && (regs[RF24.FEATURE] & 1 << RF24.EN_DYN_ACK) != 0)
+                && dataIndex > 0 && txFifo.size() < FIFO_SIZE) {
+            Packet p = new Packet();
+            p.length = Math.min(dataIndex, p.data.length);
+            System.arraycopy(wbuf, 0, p.data, 0, p.length);
+            p.noAck = cmd == 0xB0;
+            txFifo.add(p);
+            if (ce && txMode())
+                while (!txFifo.isEmpty() && transmitHead()) ;
+        }
+        updateIrq();
+    }
+
+    private byte status() {
+        int pipe = rxFifo.isEmpty() ? 0b111 : rxFifo.peek().pipe;
+        return (byte) ((regs[RF24.STATUS_REGISTER] & 0x70) | pipe << 1 | (txFifo.size() == FIFO_SIZE ? 1 : 0));
+    }
+
+    private byte readRegister(int reg, int index) {
+        switch (reg) {
+            case RF24.STATUS_REGISTER:
+                return status();
+            case RF24.FIFO_STATUS_REGISTER:
+                return (byte) ((txFifo.size() == FIFO_SIZE ? 1 << RF24.FIFO_FULL : 0)
+                        | (txFifo.isEmpty() ? 1 << RF24.TX_EMPTY : 0)
+                        | (rxFifo.size() == FIFO_SIZE ? 1 << RF24.RX_FULL : 0)
+                        | (rxFifo.isEmpty() ? 1 << RF24.RX_EMPTY : 0));
+            case RF24.RX_ADDR_P0:
+            case RF24.RX_ADDR_P1:
+                return rxAddr[reg - RF24.RX_ADDR_P0][index % 5];
+            case RF24.RX_ADDR_P2:
+            case RF24.RX_ADDR_P3:
+            case RF24.RX_ADDR_P4:
+            case RF24.RX_ADDR_P5:
+                return rxAddr[reg - RF24.RX_ADDR_P0][0];
+            case RF24.TX_ADDR:
+                return txAddr[index % 5];
+        }
+        return regs[reg];
+    }
+
+    private void writeRegister(int reg, int length) {
+        switch (reg) {
+            case RF24.STATUS_REGISTER:
+                regs[reg] &= ~(wbuf[0] & 0x70);  // write 1 to clear
+                return;
+            case RF24.FIFO_STATUS_REGISTER:
+            case RF24.OBSERVE_TX:
+            case RF24.RPD:
+                return;  // read only
+            case RF24.RX_ADDR_P0:
+            case RF24.RX_ADDR_P1:
+                System.arraycopy(wbuf, 0, rxAddr[reg - RF24.RX_ADDR_P0], 0, length);
+                return;
+            case RF24.RX_ADDR_P2:
+            case RF24.RX_ADDR_P3:
+            case RF24.RX_ADDR_P4:
+            case RF24.RX_ADDR_P5:
+                rxAddr[reg - RF24.RX_ADDR_P0][0] = wbuf[0];
+                return;
+            case RF24.TX_ADDR:
+                System.arraycopy(wbuf, 0, txAddr, 0, length);
+                return;
+            case RF24.RF_CH_REGISTER:
+                regs[RF24.OBSERVE_TX] &= 0x0F;  // PLOS_CNT is reset by writing RF_CH
+                break;
+        }
+        regs[reg] = wbuf[0];
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Radio
+
+    private boolean poweredUp() {
+        return (regs[RF24.CONFIG_REGISTER] & 1 << RF24.PWR_UP) != 0;
+    }
+
+    private boolean txMode() {
+        return poweredUp() && (regs[RF24.CONFIG_REGISTER] & 1 << RF24.PRIM_RX) == 0;
+    }
+
+    private boolean rxMode() {
+        return ce && poweredUp() && (regs[RF24.CONFIG_REGISTER] & 1 << RF24.PRIM_RX) != 0;
+    }
+
+    int channel() {
+        return regs[RF24.RF_CH_REGISTER] & 0x7F;
+    }
+
+    private int dataRate() {
+        return regs[RF24.RF_SETUP] & (1 << 5 | 1 << 3);
+    }
+
+    private int addressWidth() {
+        return (regs[RF24.SETUP_AW_REGISTER] & 0b11) + 2;
+    }
+
+    /**
+     * Send packet at the head of TX FIFO, including retransmissions. Called with medium locked.
+     * @return true if packet was sent successfully (it is removed from FIFO)
+     */
+    private boolean transmitHead() {
+        Packet p = txFifo.peek();
+        if (p == null || (regs[RF24.STATUS_REGISTER] & 1 << RF24.MAX_RT) != 0)
+            return false;  // MAX_RT has to be cleared before communication can continue
+        if (pendingFlag != 0)
+            return false;  // previous packet still on air
+
+        boolean expectAck = !p.noAck && (regs[RF24.EN_AA_REGISTER] & 1) != 0;
+        int maxRetries = expectAck ? regs[RF24.SETUP_RETR_REGISTER] & 0x0F : 0;
+        int width = addressWidth();
+        boolean ackAddressOk = equal(rxAddr[0], txAddr, width);
+
+        // attempts start after the previous transmission ended and are ARD apart
+        long airtime = medium.getAirtimeNanos();
+        long start = Math.max(System.nanoTime(), busyUntil);
+        long period = airtime + (((regs[RF24.SETUP_RETR_REGISTER] >> 4 & 0x0F) + 1) * 250000L);
+
+        boolean delivered = false;
+        boolean acked = false;
+        int retries = 0;
+        for (; retries <= maxRetries; retries++) {
+            SimulatedPigpio ackFrom = null;
+            boolean stored = false;
+            busyUntil = start + retries * period + airtime;
+            if (!medium.collided(this, channel(), start + retries * period) && !medium.lost(channel())) {
+                for (SimulatedPigpio r : medium.getRadios()) {
+                    if (r == this)
+                        continue;
+                    int pipe = r.accept(channel(), dataRate(), width, txAddr, p.length);
+                    if (pipe < 0)
+                        continue;
+                    // receiver does not acknowledge packet it could not store
+                    if (!delivered) {
+                        if (!r.store(p, pipe))
+                            continue;
+                        stored = true;
+                    }
+                    if (!p.noAck && (r.regs[RF24.EN_AA_REGISTER] & 1 << pipe) != 0)
+                        ackFrom = r;
+                }
+                // retransmissions of a stored packet are recognised by PID and only acknowledged
+                delivered |= stored;
+            }
+            if (!expectAck)
+                break;
+            if (ackFrom != null && ackAddressOk && !medium.lost(channel())) {
+                acked = true;
+                break;
+            }
+        }
+
+        txPackets++;
+        int observe = regs[RF24.OBSERVE_TX] & 0xF0;
+        int flag;
+        if (!expectAck || acked) {
+            txFifo.poll();
+            flag = 1 << RF24.TX_DS;
+            regs[RF24.OBSERVE_TX] = (byte) (observe | Math.min(retries, 15));
+        } else {
+            txFailures++;
+            flag = 1 << RF24.MAX_RT;
+            int plos = Math.min((observe >> 4) + 1, 15);
+            regs[RF24.OBSERVE_TX] = (byte) (plos << 4 | maxRetries);
+        }
+        if (airtime > 0) {
+            pendingFlag = flag;  // raised by settle once the transmission is over
+            return false;
+        }
+        regs[RF24.STATUS_REGISTER] |= flag;
+        updateIrq();
+        return !expectAck || acked;
+    }
+
+    /**
+     * Finish transmission which is over by now and send next packet from TX FIFO.
+     * Called with medium locked.
+     */
+    private void settle() {
+        if (pendingFlag == 0 || System.nanoTime() - busyUntil < 0)
+            return;
+        regs[RF24.STATUS_REGISTER] |= pendingFlag;
+        pendingFlag = 0;
+        updateIrq();
+        if (ce && txMode())
+            transmitHead();
+    }
+
+    /**
+     * Check whether this chip receives packet sent with given parameters. Called with medium locked.
+     * @return pipe packet is received on, -1 if it is not received
+     */
+    private int accept(int channel, int dataRate, int width, byte[] address, int length) {
+        if (!rxMode() || channel() != channel || dataRate() != dataRate || addressWidth() != width)
+            return -1;
+
+        for (int pipe = 0; pipe < 6; pipe++) {
+            if ((regs[RF24.EN_RXADDR_REGISTER] & 1 << pipe) == 0)
+                continue;
+            boolean match = pipe < 2
+                    ? equal(rxAddr[pipe], address, width)
+                    : rxAddr[pipe][0] == address[0] && equalFrom(rxAddr[1], address, 1, width);
+            if (!match)
+                continue;
+
+            boolean dynamic = (regs[RF24.FEATURE] & 1 << RF24.EN_DPL) != 0 && (regs[RF24.DYNPD] & 1 << pipe) != 0;
+            if (!dynamic && regs[RF24.RX_PW_P0 + pipe] != length)
+                return -1;  // static payload width differs - CRC would not match
+            return pipe;
+        }
+        return -1;
+    }
+
+    /**
+     * Store received packet into RX FIFO. Called with medium locked.
+     * @return false if FIFO is full
+     */
+    private boolean store(Packet p, int pipe) {
+        regs[RF24.RPD] = 1;
+        if (rxFifo.size() == FIFO_SIZE) {
+            rxDropped++;
+            return false;
+        }
+        Packet copy = new Packet();
+        System.arraycopy(p.data, 0, copy.data, 0, p.length);
+        copy.length = p.length;
+        copy.pipe = pipe;
+        rxFifo.add(copy);
+        rxPackets++;
+        regs[RF24.STATUS_REGISTER] |= 1 << RF24.RX_DR;
+        updateIrq();
+        return true;
+    }
+
+    /**
+     * Put packet directly into RX FIFO, as if it was received on given pipe.
+     * @param pipe pipe number 0-5
+     * @param data payload
+     * @param length payload length
+     * @return false if RX FIFO is full and packet was dropped
+     */
+    public boolean inject(int pipe, byte[] data, int length) {
+        synchronized (medium) {
+            Packet p = new Packet();
+            p.length = Math.min(length, p.data.length);
+            System.arraycopy(data, 0, p.data, 0, p.length);
+            return store(p, pipe);
+        }
+    }
+
+    /**
+     * Raise IRQ alert on transition to active state. Called with medium locked.
+     */
+    private void updateIrq() {
+        int flags = regs[RF24.STATUS_REGISTER] & 0x70;
+        int masked = regs[RF24.CONFIG_REGISTER] & 0x70;
+        boolean active = (flags & ~masked) != 0;
+        if (active && !irqActive && irqAlert != null) {
+            try {
+                irqAlert.alert(irqPin, 0, gpioTick());
+            } catch (PigpioException e) {
+                // cannot happen, tick is computed locally
+            }
+        }
+        irqActive = active;
+    }
+
+    private static boolean equal(byte[] a, byte[] b, int width) {
+        return equalFrom(a, b, 0, width);
+    }
+
+    private static boolean equalFrom(byte[] a, byte[] b, int from, int width) {
+        for (int i = from; i < width; i++)
+            if (a[i] != b[i])
+                return false;
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Statistics
+
+    /**
+     * @return number of SPI transactions (CSN low pulses)
+     */
+    public long getSpiTransactions() {
+        synchronized (medium) {
+            return spiTransactions;
+        }
+    }
+
+    /**
+     * @return number of bytes transferred over SPI
+     */
+    public long getSpiBytes() {
+        synchronized (medium) {
+            return spiBytes;
+        }
+    }
+
+    /**
+     * @return number of packets sent (including failed ones)
+     */
+    public long getTxPackets() {
+        synchronized (medium) {
+            return txPackets;
+        }
+    }
+
+    /**
+     * @return number of packets which reached max number of retransmissions
+     */
+    public long getTxFailures() {
+        synchronized (medium) {
+            return txFailures;
+        }
+    }
+
+    /**
+     * @return number of packets stored into RX FIFO
+     */
+    public long getRxPackets() {
+        synchronized (medium) {
+            return rxPackets;
+        }
+    }
+
+    /**
+     * @return number of packets dropped because RX FIFO was full
+     */
+    public long getRxDropped() {
+        synchronized (medium) {
+            return rxDropped;
+        }
+    }
+
+    /**
+     * Reset all counters to zero
+     */
+    public void resetStatistics() {
+        synchronized (medium) {
+            spiTransactions = 0;
+            spiBytes = 0;
+            txPackets = 0;
+            txFailures = 0;
+            rxPackets = 0;
+            rxDropped = 0;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Not simulated
+
+    @Override
+    public void gpioServo(int gpio, int pulseWidth) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void setServoPulseWidth(int gpio, int pulseWidth) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int getServoPulseWidth(int gpio) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int notifyOpen() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void notifyBegin(int handle, int bits) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void notifyPause(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void notifyClose(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void setWatchdog(int gpio, int timeout) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void waveClear() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveAddGeneric(ArrayList<Pulse> pulses) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveAddSerial(int userGpio, int baud, byte[] data, int offset, int bbBits, int bbStop) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void waveAddNew() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public boolean waveTxBusy() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveTxStop() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveCreate() throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void waveDelete(int waveId) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveSendOnce(int waveId) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int waveSendRepeat(int waveId) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int i2cOpen(int i2cBus, int i2cAddr) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void i2cClose(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int i2cReadDevice(int handle, byte[] data) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void i2cWriteDevice(int handle, byte[] data) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int serialOpen(String tty, int baudRate, int flags) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void serialClose(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public byte serialReadByte(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void serialWriteByte(int handle, byte data) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public byte[] serialRead(int handle, int count) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void serialWrite(int handle, byte[] data) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int serialDataAvailable(int handle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void setPWMDutycycle(int gpio, int dutycycle) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int getPWMDutycycle(int gpio) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void setPWMRange(int gpio, int range) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int getPWMRange(int gpio) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int getPWMRealRange(int gpio) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int setPWMFrequency(int gpio, int frequency) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public int getPWMFrequency(int gpio) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void setDebug(boolean flag) throws PigpioException {
+    }
+
+    @Override
+    public long gpioxPulseAndWait(int gpio, int pulseHoldTime, long pulseLength, long timeout, boolean pulseLevel) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void addCallback(GPIOListener listener) throws PigpioException {
+        throw new NotImplementedException();
+    }
+
+    @Override
+    public void removeCallback(GPIOListener listener) throws PigpioException {
+        throw new NotImplementedException();
+    }
+}
@@ -0,0 +1,219 @@
+package rf24j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs TDMA gateway with many nodes on simulated radios (see SimulatedPigpio) and reports collisions
+ * and latency of every node.<br/>
+ * Radio medium simulates airtime of the frames, so overlapping transmissions collide. Most nodes get
+ * their slot in advance, the rest joins through join slots. Once all nodes have a slot, every node
+ * sends one frame per superframe and the time from the beacon to the frame reaching the gateway is
+ * recorded per node. Gateway and nodes are driven by a single thread, which sends for each node at
+ * the start of its slot, like hundreds of independent nodes would, and lets the gateway read frames
+ * in between.
+ */
+public class TdmaSimulation {
+    private static final byte[] BEACON_ADDRESS = {(byte) 0xBE, (byte) 0xAC, 0x01, 0x02, 0x03};
+    private static final byte[] GATEWAY_ADDRESS = {(byte) 0xA0, (byte) 0xAC, 0x01, 0x02, 0x03};
+
+    /**
+     * Superframes run after all nodes joined before measuring starts, to get the code compiled by JIT
+     */
+    private static final int WARMUP = 5;
+
+    private final int nodeCount;
+    private final int joining;
+    private final int superframes;
+
+    private final RadioMedium medium;
+    private final TdmaGateway gateway;
+    private final TdmaNode[] nodes;
+
+    private final long[][] latency;  // per node, per measured superframe
+    private final int[] received;
+    private volatile boolean measuring = false;
+    private long measuredSuperframe = 0;
+
+    private long joinSuperframes = -1;
+    private long dataCollisions;
+    private long late;
+    private long failed;
+    private long elapsedNanos;
+
+    /**
+     * @param nodeCount number of nodes
+     * @param joining number of nodes which join instead of getting slot in advance
+     * @param superframes number of superframes measured
+     * @param seed seed of random generators
+     * @throws Exception
+     */
+    public TdmaSimulation(int nodeCount, int joining, int superframes, long seed) throws Exception {
+        this.nodeCount = nodeCount;
+        this.joining = joining;
+        this.superframes = superframes;
+        this.latency = new long[nodeCount][superframes];
+        this.received = new int[nodeCount];
+
+        Random random = new Random(seed);
+        medium = new RadioMedium(random);
+
+        RF24 g = radio();
+        medium.setAirtime(TdmaSchedule.airtimeMicros(g.getDataRate(), g.getAddressWidth(), g.getCRCLength(), g.getPayloadSize()));
+        gateway = new TdmaGateway(g, BEACON_ADDRESS, GATEWAY_ADDRESS, this::onFrame);
+        gateway.configure(4, 1, 200);
+        gateway.open();
+
+        nodes = new TdmaNode[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodes[i] = new TdmaNode(radio(), i, BEACON_ADDRESS, GATEWAY_ADDRESS, new Random(random.nextLong()));
+            nodes[i].open();
+            if (i >= joining)
+                nodes[i].setSlot(gateway.assign(i));
+        }
+    }
+
+    private RF24 radio() throws Exception {
+        RF24 rf24 = SimulatedPigpio.radio(medium);
+        rf24.setDataRate(RF24.RF24_2MBPS);
+        rf24.setIrqPin(24);  // frames are timestamped when they arrive
+        return rf24;
+    }
+
+    private void onFrame(RxFrame frame) {
+        int id = TdmaSchedule.nodeId(frame);
+        if (!measuring || id < 0 || id >= nodeCount)
+            return;
+        int n = received[id];
+        if (n < superframes) {
+            latency[id][n] = frame.getCaptureNanos() - gateway.getSuperframeNanos();
+            received[id] = n + 1;
+        }
+    }
+
+    /**
+     * Run join phase and measured superframes
+     * @throws Exception
+     */
+    public void run() throws Exception {
+        byte[] data = new byte[RxFrame.MAX_PAYLOAD_SIZE - TdmaSchedule.DATA_HEADER_SIZE];
+        long[] keys = new long[nodeCount];  // slot and index of node, to serve nodes in slot order
+
+        long collisions = 0;
+        long start = 0;
+        for (long superframe = 0; ; superframe++) {
+            if (joinSuperframes < 0 && allJoined())
+                joinSuperframes = superframe;
+            if (!measuring && joinSuperframes >= 0 && superframe - joinSuperframes == WARMUP) {
+                collisions = medium.getCollisions();
+                late = -late();
+                failed = -failed();
+                measuredSuperframe = superframe;
+                start = System.nanoTime();
+                measuring = true;
+            }
+            if (measuring && superframe - measuredSuperframe == superframes)
+                break;
+
+            // superframe ended - nodes open their beacon window
+            for (TdmaNode node : nodes)
+                node.receive();
+            long end = gateway.beginSuperframe();
+
+            // single thread plays all nodes and the gateway - node reads the beacon right before its slot
+            // (it is timestamped by IRQ on arrival), gateway reads frames while waiting for the slots
+            for (int i = 0; i < nodeCount; i++)
+                keys[i] = (nodes[i].getSlot() < 0 ? Integer.MAX_VALUE : nodes[i].getSlot()) * (long) nodeCount + i;
+            Arrays.sort(keys);
+            for (long key : keys) {
+                TdmaNode node = nodes[(int) (key % nodeCount)];
+                node.receive();
+                if (node.getQueued() == 0)
+                    node.send(data);
+                long t = node.nextSlotNanos();
+                if (t < 0)
+                    continue;
+                while (System.nanoTime() - t < 0)
+                    gateway.poll();
+                node.transmit();
+            }
+            while (System.nanoTime() - end < 0)
+                gateway.poll();
+            gateway.endSuperframe();
+        }
+        elapsedNanos = System.nanoTime() - start;
+        measuring = false;
+        dataCollisions = medium.getCollisions() - collisions;
+        late += late();
+        failed += failed();
+    }
+
+    private long late() {
+        long late = 0;
+        for (TdmaNode node : nodes)
+            late += node.getLate();
+        return late;
+    }
+
+    private long failed() {
+        long failed = 0;
+        for (TdmaNode node : nodes)
+            failed += node.getFailed();
+        return failed;
+    }
+
+    private boolean allJoined() {
+        for (TdmaNode node : nodes)
+            if (node.getSlot() < 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * @return results in human readable form
+     */
+    public String report() {
+        TdmaSchedule schedule = gateway.getSchedule();
+        long expected = (long) nodeCount * superframes;
+        long delivered = 0;
+        double spreadSum = 0;
+        long spreadMax = 0;
+        List<Long> all = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            delivered += received[i];
+            if (received[i] == 0)
+                continue;
+            long[] l = Arrays.copyOf(latency[i], received[i]);
+            Arrays.sort(l);
+            long spread = l[l.length - 1] - l[0];
+            spreadSum += spread;
+            spreadMax = Math.max(spreadMax, spread);
+            for (long x : l)
+                all.add(x);
+        }
+        all.sort(null);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Nodes              = ").append(nodeCount).append(" (").append(joining).append(" joined in ").append(joinSuperframes).append(" superframes)");
+        sb.append("\nSlot               = ").append(schedule.getSlotMicros()).append(" us, superframe ").append(schedule.superframeMicros() / 1000).append(" ms");
+        sb.append("\nFrames delivered   = ").append(delivered).append(" / ").append(expected);
+        sb.append("\nCollisions         = ").append(dataCollisions).append(" in ").append(superframes).append(" superframes");
+        sb.append("\nFailed / late      = ").append(failed).append(" / ").append(late);
+        if (!all.isEmpty()) {
+            sb.append("\nLatency p50 / p99  = ").append(all.get(all.size() / 2) / 1000).append(" / ").append(all.get(all.size() * 99 / 100) / 1000).append(" us after beacon");
+            sb.append("\nPer node spread    = ").append(String.format("%.0f", spreadSum / nodeCount / 1000)).append(" us avg, ").append(spreadMax / 1000).append(" us max");
+        }
+        sb.append("\nElapsed            = ").append(elapsedNanos / 1000000).append(" ms");
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int superframes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        TdmaSimulation simulation = new TdmaSimulation(nodes, Math.min(10, nodes), superframes, 1);
+        simulation.run();
+        System.out.println(simulation.report());
+    }
+}
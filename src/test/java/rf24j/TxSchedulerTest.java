@@ -0,0 +1,105 @@
+package rf24j;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TxSchedulerTest {
+    private static final byte[] NODE_A = {'N', 'O', 'D', 'E', 'A'};
+    private static final byte[] NODE_B = {'N', 'O', 'D', 'E', 'B'};
+    private static final byte[] NODE_GONE = {'G', 'O', 'N', 'E', '0'};
+
+    private RadioMedium medium;
+    private RF24 tx;
+    private RF24 rxA;
+    private RF24 rxB;
+    private TxScheduler scheduler;
+
+    private final List<String> completed = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws Exception {
+        medium = new RadioMedium(new Random(1));
+        tx = SimulatedPigpio.radio(medium);
+        rxA = receiver(NODE_A);
+        rxB = receiver(NODE_B);
+        scheduler = new TxScheduler(tx, false, new Random(1));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.stop();
+    }
+
+    @Test
+    public void controlGoesFirstAndDestinationsTakeTurns() throws Exception {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            futures.add(submit(NODE_A, "A", TxScheduler.Priority.BULK));
+        for (int i = 0; i < 2; i++)
+            futures.add(submit(NODE_B, "B", TxScheduler.Priority.BULK));
+        futures.add(submit(NODE_B, "C", TxScheduler.Priority.CONTROL));
+
+        scheduler.start();
+        for (CompletableFuture<Integer> f : futures)
+            assertEquals(0, (int) f.get(5, TimeUnit.SECONDS));
+
+        assertEquals("[C, A, B, A, B, A, A]", completed.toString());
+        assertEquals(7, scheduler.getSent());
+        assertEquals(0, scheduler.getBackoffs());
+    }
+
+    @Test
+    public void unreachableNodeBacksOffWithoutBlockingOthers() throws Exception {
+        scheduler.setBackoff(50, 200, 3);
+        CompletableFuture<Integer> gone = submit(NODE_GONE, "G", TxScheduler.Priority.BULK);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            futures.add(submit(NODE_A, "A", TxScheduler.Priority.BULK));
+
+        long start = System.nanoTime();
+        scheduler.start();
+        for (CompletableFuture<Integer> f : futures)
+            assertEquals(0, (int) f.get(5, TimeUnit.SECONDS));
+        assertEquals(1, (int) gone.get(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // node on hold does not delay the others, its attempts are spread by the backoff
+        assertEquals("[A, A, A, G]", completed.toString());
+        assertTrue("attempts after " + elapsed + " ms", elapsed >= 25 + 50);
+        assertEquals(3, scheduler.getBackoffs());
+        assertEquals(3, scheduler.getSent());
+        assertEquals(1, scheduler.getFailed());
+    }
+
+    private CompletableFuture<Integer> submit(byte[] address, String label, TxScheduler.Priority priority) {
+        CompletableFuture<Integer> future = scheduler.submit(address, new byte[]{1, 2, 3}, priority);
+        return future.whenComplete((result, error) -> {
+            completed.add(label);
+            try {
+                // receivers are not listened to by anyone, keep their RX FIFO from filling up
+                rxA.drainRx(f -> { }, 3);
+                rxB.drainRx(f -> { }, 3);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private RF24 receiver(byte[] address) throws Exception {
+        RF24 rf24 = SimulatedPigpio.radio(medium);
+        rf24.openReadingPipe(1, address);
+        rf24.startListening();
+        return rf24;
+    }
+}
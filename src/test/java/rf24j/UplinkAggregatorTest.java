@@ -0,0 +1,135 @@
+package rf24j;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UplinkAggregatorTest {
+    private MemoryBatchSink sink;
+    private UplinkAggregator aggregator;
+
+    @Before
+    public void setUp() {
+        sink = new MemoryBatchSink();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (aggregator != null)
+            aggregator.stop();
+    }
+
+    @Test
+    public void fullBatchPublishedPerNode() throws Exception {
+        aggregator = new UplinkAggregator(sink, 3, 2000, 4, true);
+        aggregator.setKeyOffset(0);
+        aggregator.start();
+        add(1, 0);
+        add(2, 0);
+        add(1, 1);
+        add(1, 2);
+
+        await(() -> sink.getBatches().size() == 1);
+        List<byte[]> batch = sink.getBatches().get(0);
+        assertEquals(3, batch.size());
+        for (int i = 0; i < 3; i++)
+            assertEquals("[1, " + i + "]", Arrays.toString(batch.get(i)));
+
+        // batch of node 2 is not full and not old, it waits for flush
+        aggregator.flush();
+        await(() -> sink.getBatches().size() == 2);
+        assertEquals(1, sink.getBatches().get(1).size());
+        assertEquals(4, aggregator.getFrames());
+        assertEquals(2, aggregator.getBatches());
+        assertEquals(2.0, aggregator.getAverageBatchSize(), 0);
+    }
+
+    @Test
+    public void oldBatchPublishedBeforeItIsFull() throws Exception {
+        aggregator = new UplinkAggregator(sink, 10, 50, 4, true);
+        aggregator.start();
+        long start = System.nanoTime();
+        add(1, 0);
+        add(1, 1);
+
+        await(() -> sink.getBatches().size() == 1);
+        long waited = (System.nanoTime() - start) / 1000000;
+        assertTrue("published after " + waited + " ms", waited >= 50);
+        assertEquals(2, sink.getBatches().get(0).size());
+        assertTrue(aggregator.getMaxFlushLatencyMillis() >= 50);
+    }
+
+    @Test
+    public void fullQueueDropsBatch() throws Exception {
+        aggregator = new UplinkAggregator(sink, 1, 2000, 1, false);
+        add(1, 0);  // fills the queue, nothing publishes yet
+        add(1, 1);
+        assertEquals(1, aggregator.getDroppedFrames());
+        assertEquals(1, aggregator.getQueueDepth());
+
+        aggregator.start();
+        await(() -> sink.getBatches().size() == 1);
+        assertEquals("[1, 0]", Arrays.toString(sink.getBatches().get(0).get(0)));
+    }
+
+    @Test
+    public void fullQueueBlocksUntilSinkCatchesUp() throws Exception {
+        aggregator = new UplinkAggregator(sink, 1, 2000, 1, true);
+        add(1, 0);
+        Thread adder = new Thread(() -> {
+            try {
+                add(1, 1);
+            } catch (InterruptedException e) {
+                // test fails on frame count
+            }
+        });
+        adder.start();
+        adder.join(100);
+        assertTrue(adder.isAlive());
+
+        aggregator.start();
+        adder.join(5000);
+        await(() -> sink.getBatches().size() == 2);
+        assertEquals(0, aggregator.getDroppedFrames());
+    }
+
+    @Test
+    public void failedSinkCounted() throws Exception {
+        sink.setFailing(true);
+        aggregator = new UplinkAggregator(sink, 2, 2000, 4, true);
+        aggregator.start();
+        add(1, 0);
+        add(1, 1);
+
+        await(() -> aggregator.getFailedBatches() == 1);
+        assertEquals(2, aggregator.getDroppedFrames());
+        assertEquals(0, aggregator.getBatches());
+
+        sink.setFailing(false);
+        add(1, 2);
+        add(1, 3);
+        await(() -> aggregator.getBatches() == 1);
+        assertEquals(1, sink.getBatches().size());
+    }
+
+    private void add(int node, int seq) throws InterruptedException {
+        RxFrame frame = new RxFrame();
+        frame.set(new byte[]{(byte) node, (byte) seq}, 2, 1);
+        aggregator.add(frame);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package rf24j;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WarmStartTest {
+    private static final byte[] RX_ADDRESS = {1, 2, 3, 4, 5};
+    private static final byte[] TX_ADDRESS = {5, 4, 3, 2, 1};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RadioMedium medium;
+    private SimulatedPigpio pigpio;
+    private RegisterSnapshot profile;
+
+    @Before
+    public void setUp() throws Exception {
+        medium = new RadioMedium();
+        pigpio = new SimulatedPigpio(medium, 22, 8);
+        RF24 rf24 = SimulatedPigpio.radio(pigpio);
+        configure(rf24);
+        File file = folder.newFile("profile.bin");
+        rf24.snapshot(new RegisterSnapshot()).save(file);
+        profile = RegisterSnapshot.load(file);
+    }
+
+    @Test
+    public void unchangedChipKeepsFramesAndWritesNothing() throws Exception {
+        pigpio.inject(1, new byte[32], 32);
+        pigpio.resetStatistics();
+        RF24 rf24 = new RF24(pigpio);
+        assertTrue(rf24.init(22, 8, 0, profile));
+
+        // register map read once, no configuration written, no reset and no flush
+        assertEquals(28, pigpio.getSpiTransactions());
+        assertEquals(RadioState.RX, rf24.getState());
+        assertTrue(rf24.available());
+        assertSameConfiguration(profile, rf24.snapshot(new RegisterSnapshot()));
+    }
+
+    @Test
+    public void coldInitCostsMore() throws Exception {
+        pigpio.resetStatistics();
+        RF24 rf24 = new RF24(pigpio);
+        rf24.init(22, 8);
+        configure(rf24);
+
+        assertEquals(36, pigpio.getSpiTransactions());
+    }
+
+    @Test
+    public void changedRegisterIsRestoredAndFramesDropped() throws Exception {
+        RF24 other = new RF24(pigpio);
+        other.init(22, 8, 0, profile);
+        other.setChannel(10);
+        pigpio.inject(1, new byte[32], 32);
+
+        pigpio.resetStatistics();
+        RF24 rf24 = new RF24(pigpio);
+        assertTrue(rf24.init(22, 8, 0, profile));
+
+        assertEquals(76, rf24.getChannel());
+        assertFalse(rf24.available());  // received on another channel
+        assertSameConfiguration(profile, rf24.snapshot(new RegisterSnapshot()));
+    }
+
+    @Test
+    public void pipesKnownAfterWarmStartAndRecovery() throws Exception {
+        byte[] pipe0 = {9, 9, 9, 9, 9};
+        RF24 peer = SimulatedPigpio.radio(medium);
+        peer.setChannel(76);
+        peer.setDataRate(RF24.RF24_2MBPS);
+        peer.openReadingPipe(1, TX_ADDRESS);
+        peer.startListening();
+
+        RF24 rf24 = new RF24(pigpio);
+        rf24.init(22, 8, 0, profile);
+        rf24.openReadingPipe(0, pipe0);
+        rf24.startListening();
+        RegisterSnapshot listening = rf24.snapshot(new RegisterSnapshot());
+
+        rf24 = new RF24(pigpio);
+        assertTrue(rf24.init(22, 8, 0, listening));
+        assertTrue(rf24.isWritingPipe(TX_ADDRESS));
+        // acknowledgement comes to pipe 0, which has to be switched to TX_ADDR for the write
+        assertEquals(0, rf24.write(new byte[]{1}));
+        rf24.startListening();
+        assertEquals(Arrays.toString(pipe0), rxAddress(rf24, 0));
+
+        assertTrue(rf24.recover(listening));
+        assertEquals(0, rf24.write(new byte[]{2}));
+        rf24.startListening();
+        assertEquals(Arrays.toString(pipe0), rxAddress(rf24, 0));
+    }
+
+    private static String rxAddress(RF24 rf24, int pipe) throws Exception {
+        byte[] address = new byte[5];
+        rf24.snapshot(new RegisterSnapshot()).getRxAddress(pipe, address);
+        return Arrays.toString(address);
+    }
+
+    private static void configure(RF24 rf24) throws Exception {
+        rf24.setSpiDelay(0);
+        rf24.setChannel(76);
+        rf24.setDataRate(RF24.RF24_2MBPS);
+        rf24.openReadingPipe(1, RX_ADDRESS);
+        rf24.openWritingPipe(TX_ADDRESS);
+        rf24.startListening();
+    }
+
+    private static void assertSameConfiguration(RegisterSnapshot expected, RegisterSnapshot actual) {
+        for (int reg = RF24.CONFIG_REGISTER; reg <= RF24.FEATURE; reg++)
+            if (reg != RF24.STATUS_REGISTER && reg != RF24.OBSERVE_TX && reg != RF24.RPD && reg != RF24.FIFO_STATUS_REGISTER)
+                assertEquals("register " + reg, expected.getRegister(reg), actual.getRegister(reg));
+        byte[] a = new byte[5];
+        byte[] b = new byte[5];
+        for (int pipe = 0; pipe < 6; pipe++) {
+            assertEquals(expected.getRxAddress(pipe, a), actual.getRxAddress(pipe, b));
+            assertEquals("pipe " + pipe, Arrays.toString(a), Arrays.toString(b));
+        }
+        expected.getTxAddress(a);
+        actual.getTxAddress(b);
+        assertEquals(Arrays.toString(a), Arrays.toString(b));
+    }
+}